@@ -0,0 +1,171 @@
+package analysis;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nfa.NFAGraph;
+import nfa.transitionlabel.TransitionLabel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import regexcompiler.MyPattern;
+import analysis.AnalysisSettings.NFAConstruction;
+import analysis.AnalysisSettings.PriorityRemovalStrategy;
+
+/**
+ * Measures the graph operations of NFAAnalysisTools that dominate the running
+ * time of the analysis, on the NFAs of the patterns in the test files. Each
+ * benchmark invocation applies the operation to every NFA of the file, so the
+ * scores of different operations on the same file can be compared.
+ *
+ * Built and run with the benchmark profile:
+ *
+ * <pre>
+ * mvn -P benchmark package
+ * java -jar target/regex-static-analysis-1.0-SNAPSHOT-benchmarks.jar -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NFAAnalysisToolsBenchmark {
+
+	@Param({"tests/small.txt", "tests/regexlib-manual-processed.txt", "tests/snort-raw.txt"})
+	private String patternsFile;
+
+	@Param({"JAVA", "THOMPSON"})
+	private NFAConstruction construction;
+
+	/* only the first patterns of a file are used, so that the larger files do not take hours */
+	@Param({"200"})
+	private int maxPatterns;
+
+	/* larger NFAs are skipped, since the size of their products grows too fast */
+	@Param({"40"})
+	private int maxStates;
+
+	private NFAGraph[] nfaGraphs;
+
+	private NFAGraph[] flatGraphs;
+
+	private ArrayList<Set<TransitionLabel>> alphabets;
+
+	private NFAAnalyser analyser;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		ArrayList<NFAGraph> nfaGraphList = new ArrayList<NFAGraph>();
+		ArrayList<NFAGraph> flatGraphList = new ArrayList<NFAGraph>();
+		alphabets = new ArrayList<Set<TransitionLabel>>();
+		Pattern slashesRegex = Pattern.compile("^/(.*)/[a-zA-Z]*$");
+
+		BufferedReader patternsReader = new BufferedReader(new InputStreamReader(new FileInputStream(patternsFile), StandardCharsets.UTF_8));
+		try {
+			String pattern;
+			int counter = 0;
+			while ((pattern = patternsReader.readLine()) != null && counter < maxPatterns) {
+				counter++;
+				Matcher slashMatcher = slashesRegex.matcher(pattern);
+				if (slashMatcher.find()) {
+					pattern = slashMatcher.group(1);
+				}
+				NFAGraph nfaGraph;
+				try {
+					nfaGraph = MyPattern.toNFAGraph(pattern, construction);
+				} catch (Exception e) {
+					/* patterns with unsupported constructs are skipped, as by the analysis driver */
+					continue;
+				}
+				if (nfaGraph.vertexSet().size() > maxStates) {
+					continue;
+				}
+				NFAGraph flatGraph = NFAAnalyserFlattening.flattenNFA(nfaGraph);
+				Set<TransitionLabel> alphabet = NFAAnalysisTools.getAlphabet(flatGraph);
+				try {
+					NFAAnalysisTools.determinize(flatGraph, flatGraph.vertexSet(), alphabet);
+				} catch (StackOverflowError soe) {
+					/* splitting the overlapping edges of some determinized graphs recurses too deeply */
+					continue;
+				}
+				nfaGraphList.add(nfaGraph);
+				flatGraphList.add(flatGraph);
+				alphabets.add(alphabet);
+			}
+		} finally {
+			patternsReader.close();
+		}
+		if (nfaGraphList.isEmpty()) {
+			throw new RuntimeException("No NFAs to benchmark in " + patternsFile);
+		}
+		nfaGraphs = nfaGraphList.toArray(new NFAGraph[nfaGraphList.size()]);
+		flatGraphs = flatGraphList.toArray(new NFAGraph[flatGraphList.size()]);
+		analyser = new NFAAnalyserFlattening(PriorityRemovalStrategy.UNPRIORITISE);
+	}
+
+	@Benchmark
+	public void productConstructionAFA(Blackhole blackhole) throws InterruptedException {
+		for (NFAGraph m : flatGraphs) {
+			blackhole.consume(NFAAnalysisTools.productConstructionAFA(m));
+		}
+	}
+
+	@Benchmark
+	public void productConstructionAFAFA(Blackhole blackhole) throws InterruptedException {
+		for (NFAGraph m : flatGraphs) {
+			blackhole.consume(NFAAnalysisTools.productConstructionAFAFA(m));
+		}
+	}
+
+	@Benchmark
+	public void getStronglyConnectedComponents(Blackhole blackhole) throws InterruptedException {
+		for (NFAGraph m : flatGraphs) {
+			blackhole.consume(NFAAnalysisTools.getStronglyConnectedComponents(m));
+		}
+	}
+
+	@Benchmark
+	public void determinize(Blackhole blackhole) throws InterruptedException {
+		for (int i = 0; i < flatGraphs.length; i++) {
+			NFAGraph m = flatGraphs[i];
+			blackhole.consume(NFAAnalysisTools.determinize(m, m.vertexSet(), alphabets.get(i)));
+		}
+	}
+
+	@Benchmark
+	public void makeTrim(Blackhole blackhole) throws InterruptedException {
+		for (NFAGraph m : nfaGraphs) {
+			blackhole.consume(NFAAnalysisTools.makeTrim(m));
+		}
+	}
+
+	@Benchmark
+	public void createUnprioritisedNFAGraph(Blackhole blackhole) throws InterruptedException {
+		for (NFAGraph m : nfaGraphs) {
+			blackhole.consume(analyser.createUnprioritisedNFAGraph(m));
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package analysis;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import util.Constants;
+
+/**
+ * The limits the analysis of one regex runs under: a wall-clock deadline, a
+ * number of product states and a number of bytes allocated on the thread
+ * analysing it. The limits are
+ * checked at the points where the analyses check whether they were
+ * interrupted, so that an analysis that exceeds its budget stops on its own
+ * thread as if it was interrupted. Once a limit is exceeded, the budget stays
+ * exceeded.
+ */
+public class AnalysisBudget {
+
+	public static enum Limit {
+		DEADLINE,
+		PRODUCT_STATES,
+		ALLOCATED_BYTES
+	}
+
+	/* A limit that is not positive is disabled */
+	public static final int DISABLED = 0;
+
+	private static final long NANOSECONDS_IN_MILLISECOND = 1000000L;
+	private static final long BYTES_IN_MEGABYTE = 1024L * 1024L;
+
+	/* The clock and the allocation counter are only read on every so many checks, since some checks are in inner loops */
+	private static final int CHECKS_PER_MEASUREMENT = 64;
+
+	/* The budget of the analysis running on each thread */
+	private static final ThreadLocal<AnalysisBudget> currentBudgets = new ThreadLocal<AnalysisBudget>();
+
+	/* In the time of System.nanoTime(), only used if hasDeadline */
+	private final long deadline;
+	private final boolean hasDeadline;
+	private final long maxProductStates;
+	private final long maxAllocatedBytes;
+	/* The thread the analysis runs on, whose allocations are counted */
+	private final long threadId;
+	private final long allocatedBytesAtStart;
+
+	private long numProductStates = 0;
+	public long getNumProductStates() {
+		return numProductStates;
+	}
+
+	private int checksUntilMeasurement = 0;
+
+	/* null while the budget is not exceeded */
+	private Limit exceededLimit = null;
+	public Limit getExceededLimit() {
+		return exceededLimit;
+	}
+
+	/**
+	 * @param timeout
+	 *            The time the analysis may take from now, in milliseconds.
+	 * @param maxProductStates
+	 *            The number of states all the products built may have together.
+	 * @param maxAllocatedMb
+	 *            The number of megabytes the calling thread may allocate from
+	 *            now. Only the thread's own allocations are counted, garbage
+	 *            or not, so that the limit does not depend on other threads
+	 *            or on when the heap is collected. The limit is not enforced
+	 *            if the JVM does not count allocations per thread.
+	 */
+	public AnalysisBudget(long timeout, long maxProductStates, long maxAllocatedMb) {
+		this.hasDeadline = timeout > DISABLED;
+		this.deadline = System.nanoTime() + timeout * NANOSECONDS_IN_MILLISECOND;
+		this.maxProductStates = maxProductStates;
+		this.threadId = Thread.currentThread().getId();
+		long allocatedBytes = maxAllocatedMb > DISABLED ? threadAllocatedBytes(threadId) : -1;
+		if (allocatedBytes >= 0) {
+			this.maxAllocatedBytes = maxAllocatedMb * BYTES_IN_MEGABYTE;
+			this.allocatedBytesAtStart = allocatedBytes;
+		} else {
+			this.maxAllocatedBytes = DISABLED;
+			this.allocatedBytesAtStart = 0;
+		}
+	}
+
+	/**
+	 * @return A budget with the limits of the settings, starting now.
+	 */
+	public static AnalysisBudget fromSettings(AnalysisSettings settings) {
+		return new AnalysisBudget((long) settings.getTimeout() * Constants.MILLISECONDS_IN_SECOND, settings.getMaxProductStates(), settings.getMaxAllocatedMb());
+	}
+
+	/**
+	 * @param budget
+	 *            The budget of the analyses that run on the calling thread
+	 *            from now on, or null if they have none.
+	 */
+	public static void setCurrent(AnalysisBudget budget) {
+		if (budget == null) {
+			currentBudgets.remove();
+		} else {
+			currentBudgets.set(budget);
+		}
+	}
+
+	/**
+	 * @return The budget of the analysis running on the calling thread, or null if it has none.
+	 */
+	public static AnalysisBudget getCurrent() {
+		return currentBudgets.get();
+	}
+
+	/**
+	 * @return Whether the calling thread was interrupted or exceeded its budget.
+	 */
+	public static boolean isCurrentThreadStopped() {
+		if (Thread.currentThread().isInterrupted()) {
+			return true;
+		}
+		AnalysisBudget budget = currentBudgets.get();
+		return budget != null && budget.isExceeded();
+	}
+
+	public boolean isExceeded() {
+		if (exceededLimit == null && --checksUntilMeasurement < 0) {
+			checksUntilMeasurement = CHECKS_PER_MEASUREMENT;
+			if (hasDeadline && System.nanoTime() - deadline > 0) {
+				exceededLimit = Limit.DEADLINE;
+			} else if (maxAllocatedBytes > DISABLED && threadAllocatedBytes(threadId) - allocatedBytesAtStart > maxAllocatedBytes) {
+				exceededLimit = Limit.ALLOCATED_BYTES;
+			}
+		}
+		return exceededLimit != null;
+	}
+
+	/**
+	 * @return Whether the budget was exceeded by something else than the deadline.
+	 */
+	public boolean isExceededBeforeDeadline() {
+		return exceededLimit != null && exceededLimit != Limit.DEADLINE;
+	}
+
+	/**
+	 * Counts states added to a product. The budget is only found to be
+	 * exceeded at the next check.
+	 */
+	public void chargeProductStates(int numStates) {
+		numProductStates += numStates;
+		if (maxProductStates > DISABLED && numProductStates > maxProductStates && exceededLimit == null) {
+			exceededLimit = Limit.PRODUCT_STATES;
+		}
+	}
+
+	/**
+	 * @return The bytes allocated by the current thread so far, or -1 if the JVM does not count them.
+	 */
+	public static long currentThreadAllocatedBytes() {
+		return threadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long threadAllocatedBytes(long threadId) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId);
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,127 @@
+package analysis;
+
+import nfa.NFAGraph;
+
+/**
+ * Sizes and times measured while analysing one regex, written as one JSON
+ * record per regex. A measurement is left null, and so left out of the
+ * record, if the analysis did not get to it or took the results from a
+ * cache. The product sizes are summed over all the products explored in a
+ * phase, since each of them adds to the time spent.
+ */
+public class AnalysisMetrics {
+
+	private final int number;
+	public int getNumber() {
+		return number;
+	}
+
+	private final String pattern;
+	public String getPattern() {
+		return pattern;
+	}
+
+	public AnalysisMetrics(int number, String pattern) {
+		this.number = number;
+		this.pattern = pattern;
+	}
+
+	private String result;
+	public String getResult() {
+		return result;
+	}
+	public void setResult(String result) {
+		this.result = result;
+	}
+
+	/* Whether the results were read from the results store, without analysing the regex */
+	private Boolean fromStore;
+	public void setFromStore(boolean fromStore) {
+		this.fromStore = fromStore;
+	}
+
+	private Integer preprocessedLength;
+	public void setPreprocessedLength(int preprocessedLength) {
+		this.preprocessedLength = preprocessedLength;
+	}
+
+	private Integer nfaVertices;
+	private Integer nfaEdges;
+	public void recordNfa(NFAGraph m) {
+		nfaVertices = m.vertexSet().size();
+		nfaEdges = m.edgeSet().size();
+	}
+
+	/* The flattened or merged graph, depending on how the epsilon loops are removed */
+	private Integer analysisGraphVertices;
+	private Integer analysisGraphEdges;
+	public void recordAnalysisGraph(NFAGraph m) {
+		analysisGraphVertices = m.vertexSet().size();
+		analysisGraphEdges = m.edgeSet().size();
+	}
+
+	/* The graph the tests ran on after bisimilar states were merged, if they were */
+	private Integer reducedGraphVertices;
+	private Integer reducedGraphEdges;
+	public void recordReducedGraph(NFAGraph m) {
+		reducedGraphVertices = m.vertexSet().size();
+		reducedGraphEdges = m.edgeSet().size();
+	}
+
+	private Integer numSccs;
+	public void setNumSccs(int numSccs) {
+		this.numSccs = numSccs;
+	}
+
+	private Integer edaProductVertices;
+	private Integer edaProductEdges;
+	public void recordEdaProduct(LazyProductNFA pc) {
+		edaProductVertices = add(edaProductVertices, pc.getNumStates());
+		edaProductEdges = add(edaProductEdges, pc.getNumEdgesGenerated());
+	}
+
+	private Integer idaProductVertices;
+	private Integer idaProductEdges;
+	public void recordIdaProduct(LazyProductNFA pc) {
+		idaProductVertices = add(idaProductVertices, pc.getNumStates());
+		idaProductEdges = add(idaProductEdges, pc.getNumEdgesGenerated());
+	}
+
+	private Integer upNfaVertices;
+	private Integer upNfaEdges;
+	public void recordUpNfa(NFAGraph m) {
+		upNfaVertices = m.vertexSet().size();
+		upNfaEdges = m.edgeSet().size();
+	}
+
+	private Long nfaConstructionTime;
+	public void setNfaConstructionTime(long nfaConstructionTime) {
+		this.nfaConstructionTime = nfaConstructionTime;
+	}
+
+	private Long edaAnalysisTime;
+	public void setEdaAnalysisTime(long edaAnalysisTime) {
+		this.edaAnalysisTime = edaAnalysisTime;
+	}
+
+	private Long idaAnalysisTime;
+	public void setIdaAnalysisTime(long idaAnalysisTime) {
+		this.idaAnalysisTime = idaAnalysisTime;
+	}
+
+	private Long exploitStringTime;
+	public void setExploitStringTime(long exploitStringTime) {
+		this.exploitStringTime = exploitStringTime;
+	}
+
+	/* The bytes allocated on the heap by the thread that analysed the regex */
+	private Long allocatedBytes;
+	public void setAllocatedBytes(long allocatedBytes) {
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	private static Integer add(Integer total, int value) {
+		return total == null ? value : total + value;
+	}
+
+}
@@ -13,4 +13,19 @@ public abstract class AnalysisResults {
 		this.originalGraph = originalGraph;
 	}
 
+	/* Set once the results are shared between threads */
+	private volatile boolean isFrozen;
+	public boolean isFrozen() {
+		return isFrozen;
+	}
+
+	/**
+	 * Freezes the results and the graphs in them, before they are shared
+	 * between threads, so that they can only be read from then on.
+	 */
+	void freeze() {
+		isFrozen = true;
+		originalGraph.freeze();
+	}
+
 }
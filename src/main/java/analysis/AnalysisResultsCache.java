@@ -0,0 +1,92 @@
+package analysis;
+
+import nfa.NFAGraph;
+import util.LRUCache;
+
+/**
+ * Analysis results shared between analysers, so that patterns that are
+ * compiled to the same NFA are only analysed once. The results are keyed by the
+ * fingerprint of the NFA, so that equal NFA graph objects share results, and
+ * the least recently used results are evicted once the cache is full. The
+ * results are shared by all the threads using the cache, so they, and the
+ * graphs in them, are frozen when they are put in the cache.
+ */
+public class AnalysisResultsCache {
+
+	private final LRUCache<Key, EdaAnalysisResults> edaResults;
+	private final LRUCache<Key, IdaAnalysisResults> idaResults;
+
+	public AnalysisResultsCache(int capacity) {
+		edaResults = new LRUCache<Key, EdaAnalysisResults>(capacity);
+		idaResults = new LRUCache<Key, IdaAnalysisResults>(capacity);
+	}
+
+	EdaAnalysisResults getEdaAnalysisResults(Key key) {
+		return edaResults.get(key);
+	}
+
+	void putEdaAnalysisResults(Key key, EdaAnalysisResults resultsObject) {
+		resultsObject.freeze();
+		edaResults.put(key, resultsObject);
+	}
+
+	IdaAnalysisResults getIdaAnalysisResults(Key key) {
+		return idaResults.get(key);
+	}
+
+	void putIdaAnalysisResults(Key key, IdaAnalysisResults resultsObject) {
+		resultsObject.freeze();
+		idaResults.put(key, resultsObject);
+	}
+
+	public long getNumHits() {
+		return edaResults.getNumHits() + idaResults.getNumHits();
+	}
+
+	public long getNumLookups() {
+		return getNumHits() + edaResults.getNumMisses() + idaResults.getNumMisses();
+	}
+
+	/**
+	 * @return The fraction of lookups that were hits, or 0 if there were no lookups.
+	 */
+	public double getHitRate() {
+		long numLookups = getNumLookups();
+		if (numLookups == 0) {
+			return 0.0;
+		}
+		return (double) getNumHits() / numLookups;
+	}
+
+	/**
+	 * Identifies the results of an analyser with the given settings on an NFA
+	 * graph, by the fingerprint of the graph.
+	 */
+	static final class Key {
+		private final String analyserSettings;
+		private final NFAGraph.CacheKey graphKey;
+
+		Key(String analyserSettings, NFAGraph.CacheKey graphKey) {
+			this.analyserSettings = analyserSettings;
+			this.graphKey = graphKey;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return analyserSettings.equals(k.analyserSettings) && graphKey.equals(k.graphKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * analyserSettings.hashCode() + graphKey.hashCode();
+		}
+	}
+
+}
@@ -64,6 +64,23 @@ public class AnalysisSettings {
 		return shouldConstructIdaExploitString;
 	}
 
+	private final boolean shouldReduceBisimilarStates;
+	public boolean getShouldReduceBisimilarStates() {
+		return shouldReduceBisimilarStates;
+	}
+
+	/* The number of states the products built for a regex may have together, disabled if it is not positive */
+	private final int maxProductStates;
+	public int getMaxProductStates() {
+		return maxProductStates;
+	}
+
+	/* The megabytes the thread analysing a regex may allocate, garbage included, disabled if it is not positive */
+	private final int maxAllocatedMb;
+	public int getMaxAllocatedMb() {
+		return maxAllocatedMb;
+	}
+
 	private final int timeout;
 	public int getTimeout() {
 		return timeout;
@@ -77,6 +94,9 @@ public class AnalysisSettings {
 					boolean shouldConstructEdaExploitString,
 					boolean shouldTestEdaExploitString, 
 					boolean shouldConstructIdaExploitString,
+					boolean shouldReduceBisimilarStates,
+					int maxProductStates,
+					int maxAllocatedMb,
 					int timeout) {
 		this.nfaConstruction = nfaConstruction;
 		this.preprocessingType = preprocessingType;
@@ -86,6 +106,9 @@ public class AnalysisSettings {
 		this.shouldConstructEdaExploitString = shouldConstructEdaExploitString;
 		this.shouldTestEdaExploitString = shouldTestEdaExploitString;
 		this.shouldConstructIdaExploitString = shouldConstructIdaExploitString;
+		this.shouldReduceBisimilarStates = shouldReduceBisimilarStates;
+		this.maxProductStates = maxProductStates;
+		this.maxAllocatedMb = maxAllocatedMb;
 		this.timeout = timeout;
 	}
 	
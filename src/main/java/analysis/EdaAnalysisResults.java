@@ -13,6 +13,9 @@ abstract class EdaAnalysisResults extends AnalysisResults {
 		return priorityRemovalStrategy;
 	}
 	public void setPriorityRemovalStrategy(PriorityRemovalStrategy priorityRemovalStrategy) {
+		if (isFrozen()) {
+			throw new IllegalStateException("The results are frozen and cannot be changed.");
+		}
 		this.priorityRemovalStrategy = priorityRemovalStrategy;
 	}
 	
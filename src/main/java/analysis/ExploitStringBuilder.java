@@ -1,9 +1,15 @@
 package analysis;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import analysis.NFAAnalyser.IdaSpecialTransitionLabel;
 import analysis.NFAAnalyserInterface.EdaAnalysisResultsESCC;
@@ -16,6 +22,8 @@ import nfa.NFAEdge;
 import nfa.NFAVertexND;
 import nfa.transitionlabel.*;
 import nfa.transitionlabel.TransitionLabel.TransitionType;
+import util.RangeSet;
+import util.RangeSet.Range;
 
 public class ExploitStringBuilder implements ExploitStringBuilderInterface<EdaAnalysisResults, IdaAnalysisResults> {
 
@@ -103,122 +111,189 @@ public class ExploitStringBuilder implements ExploitStringBuilderInterface<EdaAn
 	 * @return The string built.
 	 */
 	public static String buildPrefixString(NFAGraph m, NFAVertexND finish) {
-		LinkedList<NFAEdge> edges = NFAAnalysisTools.shortestPathTo(m, finish);
+		LinkedList<NFAEdge> edges = m.getShortestPaths().pathTo(finish);
 
 		return buildStringFromEdges(edges);
 	}
 
+	/**
+	 * Builds a string that, read after the pump, makes the NFA reject.
+	 * 
+	 * @param n
+	 *            The graph representing the NFA.
+	 * @param start
+	 *            The state that shows EDA or IDA.
+	 * @return The string built.
+	 */
 	public static String buildSuffixString(NFAGraph n, NFAVertexND start) throws InterruptedException {
-		/* determining the alphabet */
-		//System.out.println("ExploitStringBuilder:Start");
-		HashSet<TransitionLabel> regexAlphabet = (HashSet<TransitionLabel>) NFAAnalysisTools.getAlphabet(n);
-		//System.out.println("ExploitStringBuilder:1");
-		/* constructing n' */
-		NFAGraph nAccent = n;
-		
+		RangeSet alphabetRanges = new RangeSet(TransitionLabel.MIN_16UNICODE, TransitionLabel.MAX_16UNICODE);
+		for (TransitionLabel tl : NFAAnalysisTools.getAlphabet(n)) {
+			alphabetRanges.union(characterClassRanges(tl));
+		}
 
-		//System.out.println("IN ExploitStringBuilder:buildSuffixString()");
-		//System.out.println(n);
-		//System.out.println("End");
-		/* determinizing */
-		NFAGraph dfa = NFAAnalysisTools.determinize(nAccent, n.vertexSet(), regexAlphabet);	
-		/* swapping final and nonfinal states */
-		//System.out.println("ExploitStringBuilder:2");
-		
-		for (NFAVertexND currentState : dfa.vertexSet()) {
-			if (dfa.isAcceptingState(currentState)) {
-				dfa.removeAcceptingState(currentState);
-			} else {
-				dfa.addAcceptingState(currentState);
+		/* A string over the alphabet that is rejected from every state, so also after any prefix and pump */
+		String suffix = shortestRejectedString(n, n.vertexSet(), alphabetRanges, false);
+		if (suffix != null) {
+			return suffix;
+		}
+
+		/* Otherwise, any character outside of the alphabet is rejected */
+		RangeSet notInAlphabet = RangeSet.complementOf(alphabetRanges);
+		if (notInAlphabet.contains('#')) {
+			return "#";
+		} else if (!notInAlphabet.isEmpty()) {
+			return "" + ((char) notInAlphabet.sampleRangeSet());
+		}
+
+		// XXX I'm not sure if this is correct.
+		// We search from the state where EDA/IDA occurs for a nonempty string it rejects,
+		// since for an empty suffix, the matcher might spit out part of the pump and use it to accept the string: (a.*)|(((ba)|.??)*a)
+		HashSet<NFAVertexND> startStates = NFAAnalysisTools.reachableWithEpsilon(n, start);
+		suffix = shortestRejectedString(n, startStates, CharacterClassTransitionLabel.predefinedRangeWildcard(), true);
+		if (suffix != null) {
+			return suffix;
+		}
+		throw new RuntimeException("Cannot build suffix!");
+	}
+
+	/**
+	 * Searches the subsets of states the NFA can be in, in breadth first
+	 * order, for the shortest string that leaves it in no accepting state.
+	 * Only the subsets reached before that string is found are built, rather
+	 * than the whole determinized NFA.
+	 * 
+	 * @param n
+	 *            The graph representing the NFA.
+	 * @param startStates
+	 *            The states to read the string from.
+	 * @param symbols
+	 *            The characters the string may contain.
+	 * @param nonEmpty
+	 *            Whether the empty string may not be returned.
+	 * @return The string found, or null if every string is accepted.
+	 */
+	private static String shortestRejectedString(NFAGraph n, Set<NFAVertexND> startStates, RangeSet symbols, boolean nonEmpty) throws InterruptedException {
+		/* numbering the states, so that subsets of them are bit sets */
+		ArrayList<NFAVertexND> states = new ArrayList<NFAVertexND>(n.vertexSet());
+		HashMap<NFAVertexND, Integer> stateNumbers = new HashMap<NFAVertexND, Integer>();
+		BitSet acceptingStates = new BitSet(states.size());
+		for (NFAVertexND v : states) {
+			int stateNumber = stateNumbers.size();
+			stateNumbers.put(v, stateNumber);
+			if (n.isAcceptingState(v)) {
+				acceptingStates.set(stateNumber);
 			}
 		}
-		//System.out.println("ExploitStringBuilder:3");
-		
-		if (dfa.getAcceptingStates().isEmpty()) {
-			
-			
-			Iterator<TransitionLabel> i0 = regexAlphabet.iterator();
-			TransitionLabel wholeAlphabet = i0.next();
-			while (i0.hasNext()) {
-				wholeAlphabet = wholeAlphabet.union(i0.next());
+		BitSet[] epsilonClosures = new BitSet[states.size()];
+
+		BitSet startSubset = new BitSet(states.size());
+		for (NFAVertexND v : startStates) {
+			startSubset.set(stateNumbers.get(v));
+		}
+		if (!nonEmpty && !startSubset.intersects(acceptingStates)) {
+			return "";
+		}
+
+		/* for every subset found, the subset it was reached from and the character it was reached with */
+		HashMap<BitSet, BitSet> previousSubsets = new HashMap<BitSet, BitSet>();
+		HashMap<BitSet, String> previousCharacters = new HashMap<BitSet, String>();
+		LinkedList<BitSet> queue = new LinkedList<BitSet>();
+		previousSubsets.put(startSubset, null);
+		queue.add(startSubset);
+		while (!queue.isEmpty()) {
+			if (NFAAnalysisTools.isInterrupted()) {
+				throw new InterruptedException();
 			}
-			
-			// if the alphabet matches our default character, find another character 
-			if (!wholeAlphabet.matches("#")) {
-				return "#";  
-			} else {	
-				
-				/* If there is any character in the 16UNICODE alphabet that isn't in the regex alpahbet, take this character */
-				HashSet<TransitionLabel> unicode16Alphabet = new HashSet<TransitionLabel>();
-				for (int i = 0; i < TransitionLabel.MAX_16UNICODE; i++) {
-					char currentChar = (char) i;
-					String currentString = "" + currentChar;
-					if (currentChar == '[') {
-						currentString = "\\" + currentChar;
-					} else if (currentChar == '\u03b5') {
-						currentString = "[\u03b5]";
-					}
-					if (!wholeAlphabet.matches(currentString)) {						
-						return "" + ((char) i);
+			BitSet currentSubset = queue.removeFirst();
+			for (Map.Entry<BitSet, RangeSet> kv : successorSubsets(n, states, stateNumbers, epsilonClosures, currentSubset, symbols).entrySet()) {
+				BitSet nextSubset = kv.getKey();
+				String nextCharacter = new CharacterClassTransitionLabel(kv.getValue()).getSymbol();
+				if (!nextSubset.intersects(acceptingStates)) {
+					/* the first rejecting subset found is reached by a shortest string, following its characters back to the start */
+					StringBuilder rejectedString = new StringBuilder(nextCharacter);
+					BitSet subset = currentSubset;
+					while (previousSubsets.get(subset) != null) {
+						rejectedString.insert(0, previousCharacters.get(subset));
+						subset = previousSubsets.get(subset);
 					}
+					return rejectedString.toString();
+				}
+				if (!previousSubsets.containsKey(nextSubset)) {
+					previousSubsets.put(nextSubset, currentSubset);
+					previousCharacters.put(nextSubset, nextCharacter);
+					queue.add(nextSubset);
 				}
+			}
+		}
+		return null;
+	}
 
-				/* Otherwise, determinize from the state where EDA/IDA took place */
-				unicode16Alphabet.add(CharacterClassTransitionLabel.wildcardLabel());
-				// XXX I'm not sure if this is correct.
-				// We determinize starting at the state where EDA/IDA occurs.
-				// Then we take the complement of this DFA
-				// and try to find a nonempty suffix, 
-				// since for an empty suffix, the matcher might spit out part of the pump and use it to accept the string: (a.*)|(((ba)|.??)*a)
-				HashSet<NFAVertexND> startStates = NFAAnalysisTools.reachableWithEpsilon(nAccent, start); 
-
-				NFAGraph dfa2 = NFAAnalysisTools.determinize(nAccent, startStates, unicode16Alphabet);
-				/* swapping final and nonfinal states */;
-				for (NFAVertexND currentState : dfa2.vertexSet()) {
-					if (dfa2.isAcceptingState(currentState)) {
-						dfa2.removeAcceptingState(currentState);
-					} else {
-						dfa2.addAcceptingState(currentState);
-						//System.out.println("Check: " + currentState);
+	/* The subsets reachable from a subset of states, each with the characters that reach it. Characters not on any transition reach the empty subset. */
+	private static LinkedHashMap<BitSet, RangeSet> successorSubsets(NFAGraph n, ArrayList<NFAVertexND> states, HashMap<NFAVertexND, Integer> stateNumbers, BitSet[] epsilonClosures, BitSet subset, RangeSet symbols) {
+		ArrayList<RangeSet> labelRanges = new ArrayList<RangeSet>();
+		ArrayList<Integer> targets = new ArrayList<Integer>();
+		/* the characters where the transitions that can be taken change */
+		TreeSet<Integer> bounds = new TreeSet<Integer>();
+		for (Range r : symbols) {
+			bounds.add(r.low);
+			bounds.add(r.high);
+		}
+		for (int state = subset.nextSetBit(0); state >= 0; state = subset.nextSetBit(state + 1)) {
+			for (NFAEdge e : n.outgoingEdgesOf(states.get(state))) {
+				if (!e.getIsEpsilonTransition()) {
+					RangeSet ranges = characterClassRanges(e.getTransitionLabel());
+					labelRanges.add(ranges);
+					targets.add(stateNumbers.get(e.getTargetVertex()));
+					for (Range r : ranges) {
+						bounds.add(r.low);
+						bounds.add(r.high);
 					}
 				}
+			}
+		}
 
-				if (!dfa2.getAcceptingStates().isEmpty()) {
-					Iterator<NFAVertexND> i1 = dfa2.getAcceptingStates().iterator();
-					while (i1.hasNext()) {
-					NFAVertexND finalState = i1.next();
-						//System.out.println(finalState);	
-		
-						LinkedList<NFAEdge> pathToFinal = NFAAnalysisTools.shortestPathTo(dfa2, finalState);
-						//for (NFAEdge e : pathToFinal) {
-						//	System.out.print(e.getSourceVertex() + "-" + e + "->" + e.getTargetVertex());
-						//}
-						//System.out.println();
-
-						if (!pathToFinal.isEmpty()) {
-							return buildStringFromEdges(pathToFinal);
-						}
+		LinkedHashMap<BitSet, RangeSet> successors = new LinkedHashMap<BitSet, RangeSet>();
+		Integer low = bounds.isEmpty() ? null : bounds.first();
+		while (low != null) {
+			Integer high = bounds.higher(low);
+			if (high == null) {
+				break;
+			}
+			if (symbols.contains(low)) {
+				BitSet successor = new BitSet(states.size());
+				for (int i = 0; i < labelRanges.size(); i++) {
+					if (labelRanges.get(i).contains(low)) {
+						successor.or(epsilonClosure(n, states, stateNumbers, epsilonClosures, targets.get(i)));
 					}
-		
-
-					throw new RuntimeException("Cannot build suffix! (Only ε suffixes.)");
-				} else {
-					throw new RuntimeException("Cannot build suffix!");
 				}
-				
-				
+				RangeSet successorSymbols = successors.get(successor);
+				if (successorSymbols == null) {
+					successorSymbols = new RangeSet(TransitionLabel.MIN_16UNICODE, TransitionLabel.MAX_16UNICODE);
+					successors.put(successor, successorSymbols);
+				}
+				successorSymbols.union(successorSymbols.createRange(low, high));
 			}
-			//return "#";
+			low = high;
 		}
-		
-		
-		Iterator<NFAVertexND> i0 = dfa.getAcceptingStates().iterator();
-		NFAVertexND finalState = i0.next();
-		
-		LinkedList<NFAEdge> pathToFinal = NFAAnalysisTools.shortestPathTo(dfa, finalState);
-		
-		//System.out.println("ExploitStringBuilder:End");
-		return buildStringFromEdges(pathToFinal);
+		return successors;
+	}
+
+	private static BitSet epsilonClosure(NFAGraph n, ArrayList<NFAVertexND> states, HashMap<NFAVertexND, Integer> stateNumbers, BitSet[] epsilonClosures, int state) {
+		if (epsilonClosures[state] == null) {
+			BitSet closure = new BitSet(states.size());
+			for (NFAVertexND v : NFAAnalysisTools.reachableWithEpsilon(n, states.get(state))) {
+				closure.set(stateNumbers.get(v));
+			}
+			epsilonClosures[state] = closure;
+		}
+		return epsilonClosures[state];
+	}
+
+	private static RangeSet characterClassRanges(TransitionLabel tl) {
+		if (!(tl instanceof CharacterClassTransitionLabel)) {
+			throw new IllegalArgumentException("Invalid TransitionLabel type: " + tl);
+		}
+		return ((CharacterClassTransitionLabel) tl).getRanges();
 	}
 
 	/**
@@ -405,8 +480,8 @@ public class ExploitStringBuilder implements ExploitStringBuilderInterface<EdaAn
 				}
 				
 			}
-			/* If nothing follows, the last "separator" was actually a valid suffix */
-			if (i0.hasNext()) {
+			/* If no special transition follows, the last "separator" was actually a valid suffix */
+			if (currentTransitionLabel instanceof IdaSpecialTransitionLabel) {
 				
 				separators[degreeCounter] = separatorBuilder.toString();
 				
@@ -0,0 +1,592 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import nfa.CompactNFAGraph;
+import nfa.NFAEdge;
+import nfa.NFAGraph;
+import nfa.NFAVertexND;
+import nfa.transitionlabel.MintermPartition;
+import nfa.transitionlabel.TransitionLabel;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
+import util.LongIntHashMap;
+
+/**
+ * An NFA whose states are numbered as they are discovered and whose outgoing
+ * edges are only generated the first time they are asked for. Chaining
+ * products of these with the Mohri filter yields the same states and
+ * transitions as the product constructions in NFAAnalysisTools, but only for
+ * the part of the product that an analysis actually visits.
+ */
+public abstract class LazyProductNFA {
+
+	/* The edges of each state, null until the state is expanded */
+	private final ArrayList<int[]> edgeTargets = new ArrayList<int[]>();
+	private final ArrayList<int[]> edgeLabels = new ArrayList<int[]>();
+	private final ArrayList<int[]> edgeOriginalWords = new ArrayList<int[]>();
+	private final ArrayList<int[]> edgeNumParallel = new ArrayList<int[]>();
+	private int numEdgesGenerated = 0;
+
+	/* Additional edges added by an analysis, such as the IDA back edges */
+	private final ArrayList<int[]> specialEdgeTargets = new ArrayList<int[]>();
+	private final ArrayList<Integer> numSpecialEdges = new ArrayList<Integer>();
+
+	/* The labels of the edges, interned by identity since equal labels are shared by the constructions */
+	private final ArrayList<TransitionLabel> labels = new ArrayList<TransitionLabel>();
+	private final IdentityHashMap<TransitionLabel, Integer> labelNumbers = new IdentityHashMap<TransitionLabel, Integer>();
+
+	public abstract int getInitialState();
+
+	/**
+	 * @return The number of states discovered so far.
+	 */
+	public abstract int getNumStates();
+
+	public abstract boolean isAcceptingState(int state);
+
+	public abstract int getNumDimensions();
+
+	/**
+	 * @return A new vertex equal to the vertex the eager product construction
+	 *         would have created for this state.
+	 */
+	public abstract NFAVertexND getState(int state);
+
+	/**
+	 * @return The (one dimensional) state of the operand NFA in the given
+	 *         dimension, counting from 1 as NFAVertexND does.
+	 */
+	public abstract NFAVertexND getStateByDimension(int state, int dimension);
+
+	/**
+	 * @return A partition of the alphabet such that every character class
+	 *         label of this NFA is a union of its minterms.
+	 */
+	public abstract MintermPartition getMintermPartition();
+
+	protected abstract void expand(int state, EdgeBuffer edges) throws InterruptedException;
+
+	private void ensureExpanded(int state) throws InterruptedException {
+		while (edgeTargets.size() <= state) {
+			edgeTargets.add(null);
+			edgeLabels.add(null);
+			edgeOriginalWords.add(null);
+			edgeNumParallel.add(null);
+		}
+		if (edgeTargets.get(state) == null) {
+			EdgeBuffer edges = new EdgeBuffer();
+			expand(state, edges);
+			edgeTargets.set(state, Arrays.copyOf(edges.targets, edges.size));
+			edgeLabels.set(state, Arrays.copyOf(edges.labels, edges.size));
+			edgeOriginalWords.set(state, Arrays.copyOf(edges.originalWords, edges.size));
+			edgeNumParallel.set(state, Arrays.copyOf(edges.numParallel, edges.size));
+			numEdgesGenerated += edges.size;
+		}
+	}
+
+	/**
+	 * @return The number of edges generated so far, not counting special edges.
+	 */
+	public int getNumEdgesGenerated() {
+		return numEdgesGenerated;
+	}
+
+	public int getNumEdges(int state) throws InterruptedException {
+		ensureExpanded(state);
+		return edgeTargets.get(state).length;
+	}
+
+	public int getEdgeTarget(int state, int edge) throws InterruptedException {
+		ensureExpanded(state);
+		return edgeTargets.get(state)[edge];
+	}
+
+	public int getEdgeLabel(int state, int edge) throws InterruptedException {
+		ensureExpanded(state);
+		return edgeLabels.get(state)[edge];
+	}
+
+	/**
+	 * @return The label the edge had before the filter replaced it, which is
+	 *         what the original words map holds in the eager construction.
+	 */
+	public int getEdgeOriginalWord(int state, int edge) throws InterruptedException {
+		ensureExpanded(state);
+		return edgeOriginalWords.get(state)[edge];
+	}
+
+	public int getEdgeNumParallel(int state, int edge) throws InterruptedException {
+		ensureExpanded(state);
+		return edgeNumParallel.get(state)[edge];
+	}
+
+	public TransitionLabel getLabel(int label) {
+		return labels.get(label);
+	}
+
+	protected int internLabel(TransitionLabel tl) {
+		Integer labelNumber = labelNumbers.get(tl);
+		if (labelNumber == null) {
+			labelNumber = labels.size();
+			labels.add(tl);
+			labelNumbers.put(tl, labelNumber);
+		}
+		return labelNumber;
+	}
+
+	public void addSpecialEdge(int source, int target) {
+		while (specialEdgeTargets.size() <= source) {
+			specialEdgeTargets.add(null);
+			numSpecialEdges.add(0);
+		}
+		int[] targets = specialEdgeTargets.get(source);
+		int numTargets = numSpecialEdges.get(source);
+		if (targets == null) {
+			targets = new int[1];
+		} else if (numTargets == targets.length) {
+			targets = Arrays.copyOf(targets, 2 * targets.length);
+		}
+		targets[numTargets] = target;
+		specialEdgeTargets.set(source, targets);
+		numSpecialEdges.set(source, numTargets + 1);
+	}
+
+	public int getNumSpecialEdges(int state) {
+		if (state >= numSpecialEdges.size()) {
+			return 0;
+		}
+		return numSpecialEdges.get(state);
+	}
+
+	public int getSpecialEdgeTarget(int state, int edge) {
+		return specialEdgeTargets.get(state)[edge];
+	}
+
+	/**
+	 * Builds the subgraph induced by some of the states, with the edges
+	 * between them. Special edges are labelled with the given label.
+	 *
+	 * @param states
+	 *            The states to include, which should all have been discovered.
+	 * @param specialLabel
+	 *            The label to use for special edges, or null to leave them out.
+	 * @param vertices
+	 *            Filled with the vertex created for each of the states, in the same order.
+	 * @return The subgraph, without an initial or accepting states.
+	 */
+	public NFAGraph toNFAGraph(int[] states, TransitionLabel specialLabel, NFAVertexND[] vertices) throws InterruptedException {
+		NFAGraph subgraph = new NFAGraph();
+		LongIntHashMap positions = new LongIntHashMap(states.length);
+		for (int i = 0; i < states.length; i++) {
+			vertices[i] = getState(states[i]);
+			positions.put(states[i], i);
+			subgraph.addVertex(vertices[i]);
+		}
+		for (int i = 0; i < states.length; i++) {
+			int source = states[i];
+			for (int e = 0; e < getNumEdges(source); e++) {
+				int targetPosition = positions.get(getEdgeTarget(source, e));
+				if (targetPosition != LongIntHashMap.NOT_FOUND) {
+					NFAEdge newEdge = new NFAEdge(vertices[i], vertices[targetPosition], getLabel(getEdgeLabel(source, e)));
+					newEdge.setNumParallel(getEdgeNumParallel(source, e));
+					subgraph.addEdge(newEdge);
+				}
+			}
+			if (specialLabel != null) {
+				for (int e = 0; e < getNumSpecialEdges(source); e++) {
+					int targetPosition = positions.get(getSpecialEdgeTarget(source, e));
+					if (targetPosition != LongIntHashMap.NOT_FOUND) {
+						subgraph.addEdge(new NFAEdge(vertices[i], vertices[targetPosition], specialLabel));
+					}
+				}
+			}
+		}
+		return subgraph;
+	}
+
+	protected static boolean isInterrupted() {
+		return AnalysisBudget.isCurrentThreadStopped();
+	}
+
+	/**
+	 * Collects the outgoing edges of a state while it is being expanded.
+	 */
+	protected static final class EdgeBuffer {
+		private int[] targets = new int[4];
+		private int[] labels = new int[4];
+		private int[] originalWords = new int[4];
+		private int[] numParallel = new int[4];
+		private int size = 0;
+
+		void add(int target, int label, int originalWord, int parallel) {
+			if (size == targets.length) {
+				targets = Arrays.copyOf(targets, 2 * size);
+				labels = Arrays.copyOf(labels, 2 * size);
+				originalWords = Arrays.copyOf(originalWords, 2 * size);
+				numParallel = Arrays.copyOf(numParallel, 2 * size);
+			}
+			targets[size] = target;
+			labels[size] = label;
+			originalWords[size] = originalWord;
+			numParallel[size] = parallel;
+			size++;
+		}
+	}
+
+	/**
+	 * An NFA graph used as an operand of a product.
+	 */
+	public static final class Operand extends LazyProductNFA {
+
+		private final CompactNFAGraph m;
+		/* The vertices of m, the states of the product are made of */
+		private final NFAVertexND[] states;
+		private final MintermPartition partition;
+
+		public Operand(NFAGraph m) {
+			this.m = CompactNFAGraph.fromNFAGraph(m);
+			this.states = CompactNFAGraph.statesOf(m);
+			ArrayList<TransitionLabel> labels = new ArrayList<TransitionLabel>();
+			for (int label = 0; label < this.m.getNumLabels(); label++) {
+				labels.add(this.m.getLabel(label));
+			}
+			this.partition = new MintermPartition(labels);
+		}
+
+		public CompactNFAGraph getCompactNFAGraph() {
+			return m;
+		}
+
+		@Override
+		public int getInitialState() {
+			return m.getInitialState();
+		}
+
+		@Override
+		public int getNumStates() {
+			return m.getNumStates();
+		}
+
+		@Override
+		public boolean isAcceptingState(int state) {
+			return m.isAcceptingState(state);
+		}
+
+		@Override
+		public int getNumDimensions() {
+			return 1;
+		}
+
+		@Override
+		public MintermPartition getMintermPartition() {
+			return partition;
+		}
+
+		@Override
+		public NFAVertexND getState(int state) {
+			return states[state].copy();
+		}
+
+		@Override
+		public NFAVertexND getStateByDimension(int state, int dimension) {
+			return states[state];
+		}
+
+		@Override
+		protected void expand(int state, EdgeBuffer edges) {
+			for (int e = m.getEdgesFrom(state); e < m.getEdgesTo(state); e++) {
+				int label = internLabel(m.getLabel(m.getEdgeLabel(e)));
+				edges.add(m.getEdgeTarget(e), label, label, m.getEdgeNumParallel(e));
+			}
+		}
+	}
+
+	/**
+	 * The product of a lazy NFA with an NFA graph, following the rules of
+	 * NFAAnalysisTools.productConstruction, including those for when the
+	 * second operand is the Mohri filter.
+	 */
+	public static final class Product extends LazyProductNFA {
+
+		private static final int NO_MATCH = 0;
+		private static final int MATCH = 1;
+		private static final int EMPTY_INTERSECTION = -2;
+
+		private final LazyProductNFA m1;
+		private final CompactNFAGraph m2;
+		private final NFAVertexND[] m2States;
+
+		private final LongIntHashMap stateNumbers = new LongIntHashMap();
+		private long[] stateKeys = new long[64];
+		private int numStates = 0;
+		private final int initialState;
+		/* The budget of the analysis the product is built for, or null if it has none */
+		private final AnalysisBudget budget;
+
+		/* Whether an edge of m2 matches a word and the intersections of words and labels only depend on the labels */
+		private final LongIntHashMap matchCache = new LongIntHashMap();
+		private final LongIntHashMap intersectionCache = new LongIntHashMap();
+
+		/* The character classes are matched and intersected as sets of minterms, the labels of m1 are added as they are discovered */
+		private final MintermPartition partition;
+		private final ArrayList<BitSet> m1LabelMinterms = new ArrayList<BitSet>();
+		private final BitSet[] m2LabelMinterms;
+		/* Equal intersections share one label */
+		private final HashMap<BitSet, TransitionLabel> mintermLabels = new HashMap<BitSet, TransitionLabel>();
+
+		public Product(LazyProductNFA m1, NFAGraph m2) {
+			this.m1 = m1;
+			this.m2 = CompactNFAGraph.fromNFAGraph(m2);
+			this.m2States = CompactNFAGraph.statesOf(m2);
+			this.budget = AnalysisBudget.getCurrent();
+			this.initialState = stateNumberOf(m1.getInitialState(), this.m2.getInitialState());
+
+			ArrayList<TransitionLabel> m2Labels = new ArrayList<TransitionLabel>();
+			for (int label = 0; label < this.m2.getNumLabels(); label++) {
+				m2Labels.add(this.m2.getLabel(label));
+			}
+			MintermPartition partition = m1.getMintermPartition();
+			for (TransitionLabel tl : m2Labels) {
+				if (!partition.isRepresentable(tl)) {
+					partition = partition.refine(m2Labels);
+					break;
+				}
+			}
+			this.partition = partition;
+			m2LabelMinterms = new BitSet[m2Labels.size()];
+			for (int label = 0; label < m2LabelMinterms.length; label++) {
+				m2LabelMinterms[label] = partition.getMinterms(m2Labels.get(label));
+			}
+		}
+
+		private int stateNumberOf(int m1State, int m2State) {
+			long key = ((long) m1State << 32) | (m2State & 0xffffffffL);
+			int stateNumber = stateNumbers.get(key);
+			if (stateNumber == LongIntHashMap.NOT_FOUND) {
+				stateNumber = numStates;
+				if (numStates == stateKeys.length) {
+					stateKeys = Arrays.copyOf(stateKeys, 2 * numStates);
+				}
+				stateKeys[numStates] = key;
+				stateNumbers.put(key, stateNumber);
+				numStates++;
+				if (budget != null) {
+					budget.chargeProductStates(1);
+				}
+			}
+			return stateNumber;
+		}
+
+		private int m1StateOf(int state) {
+			return (int) (stateKeys[state] >>> 32);
+		}
+
+		private int m2StateOf(int state) {
+			return (int) stateKeys[state];
+		}
+
+		@Override
+		public int getInitialState() {
+			return initialState;
+		}
+
+		@Override
+		public int getNumStates() {
+			return numStates;
+		}
+
+		@Override
+		public boolean isAcceptingState(int state) {
+			return m1.isAcceptingState(m1StateOf(state)) && m2.isAcceptingState(m2StateOf(state));
+		}
+
+		@Override
+		public int getNumDimensions() {
+			return m1.getNumDimensions() + 1;
+		}
+
+		@Override
+		public MintermPartition getMintermPartition() {
+			return partition;
+		}
+
+		@Override
+		public NFAVertexND getState(int state) {
+			return new NFAVertexND(m1.getState(m1StateOf(state)), m2States[m2StateOf(state)]);
+		}
+
+		@Override
+		public NFAVertexND getStateByDimension(int state, int dimension) {
+			if (dimension <= m1.getNumDimensions()) {
+				return m1.getStateByDimension(m1StateOf(state), dimension);
+			}
+			return m2States[m2StateOf(state)];
+		}
+
+		@Override
+		protected void expand(int state, EdgeBuffer edges) throws InterruptedException {
+			int m1SourceState = m1StateOf(state);
+			int m2SourceState = m2StateOf(state);
+			for (int m1Edge = 0; m1Edge < m1.getNumEdges(m1SourceState); m1Edge++) {
+				if (isInterrupted()) {
+					throw new InterruptedException();
+				}
+				int m1TargetState = m1.getEdgeTarget(m1SourceState, m1Edge);
+				int m1NumParallel = m1.getEdgeNumParallel(m1SourceState, m1Edge);
+				int word = m1.getEdgeLabel(m1SourceState, m1Edge);
+				int originalWord = m1.getEdgeOriginalWord(m1SourceState, m1Edge);
+
+				for (int m2Edge = m2.getEdgesFrom(m2SourceState); m2Edge < m2.getEdgesTo(m2SourceState); m2Edge++) {
+					boolean isFilterEdge = m2.getEdgeOutputLabel(m2Edge) != CompactNFAGraph.NO_LABEL;
+					if (!isTransitionFor(m2Edge, isFilterEdge, word)) {
+						continue;
+					}
+					boolean isEpsilonTransition = m2.isEpsilonEdge(m2Edge);
+
+					int label;
+					int newOriginalWord;
+					if (isFilterEdge && isEpsilonTransition) {
+						/* swap out the current character for the filter's output character, remembering the original */
+						label = internLabel(m2.getLabel(m2.getEdgeOutputLabel(m2Edge)));
+						newOriginalWord = internLabel(m1.getLabel(originalWord));
+					} else if (!isFilterEdge && !isEpsilonTransition) {
+						label = intersection(originalWord, m2.getEdgeLabel(m2Edge));
+						if (label == EMPTY_INTERSECTION) {
+							/* NFAGraph.addEdge ignores edges with empty labels */
+							continue;
+						}
+						newOriginalWord = label;
+					} else {
+						label = internLabel(m1.getLabel(originalWord));
+						newOriginalWord = label;
+					}
+					int target = stateNumberOf(m1TargetState, m2.getEdgeTarget(m2Edge));
+					edges.add(target, label, newOriginalWord, m1NumParallel * m2.getEdgeNumParallel(m2Edge));
+				}
+			}
+		}
+
+		private BitSet m1LabelMinterms(int m1Label) {
+			while (m1LabelMinterms.size() <= m1Label) {
+				m1LabelMinterms.add(partition.getMinterms(m1.getLabel(m1LabelMinterms.size())));
+			}
+			return m1LabelMinterms.get(m1Label);
+		}
+
+		private boolean isTransitionFor(int m2Edge, boolean isFilterEdge, int word) {
+			if (!isFilterEdge) {
+				BitSet wordMinterms = m1LabelMinterms(word);
+				BitSet m2Minterms = m2LabelMinterms[m2.getEdgeLabel(m2Edge)];
+				if (wordMinterms != null && m2Minterms != null) {
+					return wordMinterms.intersects(m2Minterms);
+				}
+			}
+			/* filter edges match differently from ordinary edges with the same label */
+			long key = ((long) word << 32) | (2 * m2.getEdgeLabel(m2Edge) + (isFilterEdge ? 1 : 0));
+			int matches = matchCache.get(key);
+			if (matches == LongIntHashMap.NOT_FOUND) {
+				matches = m2.isTransitionFor(m2Edge, m1.getLabel(word)) ? MATCH : NO_MATCH;
+				matchCache.put(key, matches);
+			}
+			return matches == MATCH;
+		}
+
+		private int intersection(int originalWord, int m2Label) {
+			long key = ((long) originalWord << 32) | m2Label;
+			int label = intersectionCache.get(key);
+			if (label == LongIntHashMap.NOT_FOUND) {
+				BitSet originalWordMinterms = m1LabelMinterms(originalWord);
+				if (originalWordMinterms == null) {
+					throw new UnsupportedOperationException("The intersection operation is invalid for epsilon transitions.");
+				}
+				BitSet intersectionMinterms = (BitSet) originalWordMinterms.clone();
+				intersectionMinterms.and(m2LabelMinterms[m2Label]);
+				if (intersectionMinterms.isEmpty()) {
+					label = EMPTY_INTERSECTION;
+				} else {
+					TransitionLabel intersection = mintermLabels.get(intersectionMinterms);
+					if (intersection == null) {
+						intersection = partition.toLabel(intersectionMinterms);
+						mintermLabels.put(intersectionMinterms, intersection);
+					}
+					label = internLabel(intersection);
+				}
+				intersectionCache.put(key, label);
+			}
+			return label;
+		}
+	}
+
+	/**
+	 * A lazy NFA modified as NFAAnalysisTools.prepareForFilter would modify
+	 * it: epsilon transitions are relabelled and every state gets a self loop.
+	 */
+	public static final class FilterPrepared extends LazyProductNFA {
+
+		private final LazyProductNFA m;
+		private final int modifyLabel;
+		private final int selfloopLabel;
+
+		public FilterPrepared(LazyProductNFA m, TransitionLabel modifyLabel, TransitionLabel selfloopLabel) {
+			this.m = m;
+			this.modifyLabel = internLabel(modifyLabel);
+			this.selfloopLabel = internLabel(selfloopLabel);
+		}
+
+		@Override
+		public int getInitialState() {
+			return m.getInitialState();
+		}
+
+		@Override
+		public int getNumStates() {
+			return m.getNumStates();
+		}
+
+		@Override
+		public boolean isAcceptingState(int state) {
+			return m.isAcceptingState(state);
+		}
+
+		@Override
+		public int getNumDimensions() {
+			return m.getNumDimensions();
+		}
+
+		@Override
+		public MintermPartition getMintermPartition() {
+			return m.getMintermPartition();
+		}
+
+		@Override
+		public NFAVertexND getState(int state) {
+			return m.getState(state);
+		}
+
+		@Override
+		public NFAVertexND getStateByDimension(int state, int dimension) {
+			return m.getStateByDimension(state, dimension);
+		}
+
+		@Override
+		protected void expand(int state, EdgeBuffer edges) throws InterruptedException {
+			for (int e = 0; e < m.getNumEdges(state); e++) {
+				TransitionLabel tl = m.getLabel(m.getEdgeLabel(state, e));
+				int label;
+				if (tl.getTransitionType() == TransitionType.EPSILON) {
+					label = modifyLabel;
+				} else {
+					label = internLabel(tl);
+				}
+				edges.add(m.getEdgeTarget(state, e), label, label, m.getEdgeNumParallel(state, e));
+			}
+			/* Adding the self loop */
+			edges.add(state, selfloopLabel, selfloopLabel, 1);
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package analysis;
+
+import java.util.Arrays;
+
+/**
+ * Enumerates the strongly connected components of the part of a lazy NFA
+ * reachable from its initial state, using an iterative version of Tarjan's
+ * algorithm. States are only expanded when the search reaches them, so a
+ * caller that stops after finding the component it is looking for never
+ * generates the rest of the NFA. Components are produced in reverse
+ * topological order and the special edges of the NFA are followed along with
+ * its ordinary edges.
+ */
+public class LazyStronglyConnectedComponents {
+
+	private static final int UNVISITED = -1;
+
+	private final LazyProductNFA m;
+
+	/* The discovery index and lowlink of each state, UNVISITED for states not reached yet */
+	private int[] index = new int[0];
+	private int[] lowlink = new int[0];
+	private boolean[] onStack = new boolean[0];
+	private int nextIndex = 0;
+
+	/* The stack of states whose component has not been completed yet */
+	private int[] sccStack = new int[16];
+	private int sccStackSize = 0;
+
+	/* The states on the current search path and the next edge to follow from each */
+	private int[] callStack = new int[16];
+	private int[] callStackEdge = new int[16];
+	private int callStackSize = 0;
+
+	private boolean started = false;
+
+	public LazyStronglyConnectedComponents(LazyProductNFA m) {
+		this.m = m;
+	}
+
+	/**
+	 * @return The states of the next strongly connected component, or null if
+	 *         all components have been produced.
+	 */
+	public int[] next() throws InterruptedException {
+		if (!started) {
+			started = true;
+			visit(m.getInitialState());
+		}
+		while (callStackSize > 0) {
+			if (NFAAnalysisTools.isInterrupted()) {
+				throw new InterruptedException();
+			}
+			int v = callStack[callStackSize - 1];
+			int edge = callStackEdge[callStackSize - 1];
+			int numEdges = m.getNumEdges(v);
+			if (edge < numEdges + m.getNumSpecialEdges(v)) {
+				callStackEdge[callStackSize - 1]++;
+				int w;
+				if (edge < numEdges) {
+					w = m.getEdgeTarget(v, edge);
+				} else {
+					w = m.getSpecialEdgeTarget(v, edge - numEdges);
+				}
+				ensureCapacity(w);
+				if (index[w] == UNVISITED) {
+					visit(w);
+				} else if (onStack[w]) {
+					lowlink[v] = Math.min(lowlink[v], index[w]);
+				}
+			} else {
+				/* all successors of v have been visited */
+				callStackSize--;
+				if (callStackSize > 0) {
+					int parent = callStack[callStackSize - 1];
+					lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+				}
+				if (lowlink[v] == index[v]) {
+					int sccStart = sccStackSize;
+					do {
+						sccStart--;
+						onStack[sccStack[sccStart]] = false;
+					} while (sccStack[sccStart] != v);
+					int[] scc = Arrays.copyOfRange(sccStack, sccStart, sccStackSize);
+					sccStackSize = sccStart;
+					return scc;
+				}
+			}
+		}
+		return null;
+	}
+
+	private void visit(int v) {
+		ensureCapacity(v);
+		index[v] = nextIndex;
+		lowlink[v] = nextIndex;
+		nextIndex++;
+		if (sccStackSize == sccStack.length) {
+			sccStack = Arrays.copyOf(sccStack, 2 * sccStackSize);
+		}
+		sccStack[sccStackSize++] = v;
+		onStack[v] = true;
+		if (callStackSize == callStack.length) {
+			callStack = Arrays.copyOf(callStack, 2 * callStackSize);
+			callStackEdge = Arrays.copyOf(callStackEdge, 2 * callStackSize);
+		}
+		callStack[callStackSize] = v;
+		callStackEdge[callStackSize] = 0;
+		callStackSize++;
+	}
+
+	private void ensureCapacity(int state) {
+		if (state >= index.length) {
+			int oldLength = index.length;
+			int newLength = Math.max(2 * oldLength, Math.max(state + 1, m.getNumStates()));
+			index = Arrays.copyOf(index, newLength);
+			Arrays.fill(index, oldLength, newLength, UNVISITED);
+			lowlink = Arrays.copyOf(lowlink, newLength);
+			onStack = Arrays.copyOf(onStack, newLength);
+		}
+	}
+
+}
@@ -21,6 +21,7 @@ import regexcompiler.MyPattern;
 
 import nfa.transitionlabel.TransitionLabel.TransitionType;
 
+import nfa.CompactNFAGraph;
 import nfa.NFAGraph;
 import nfa.NFAVertexND;
 import nfa.UPNFAState;
@@ -29,6 +30,8 @@ import nfa.transitionlabel.TransitionLabel;
 import nfa.transitionlabel.CharacterClassTransitionLabel;
 import nfa.transitionlabel.EpsilonTransitionLabel;
 
+import org.jgrapht.alg.connectivity.KosarajuStrongConnectivityInspector;
+
 public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	
 	private final int MAX_IDA_DEGREE = Integer.MAX_VALUE;
@@ -37,13 +40,45 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	
 	protected final ExploitStringBuilder exploitStringBuilder;
 	protected final PriorityRemovalStrategy priorityRemovalStrategy;
+	/* Results shared with other analysers, or null if nothing is shared */
+	protected final AnalysisResultsCache sharedResultsCache;
+	/* Whether bisimilar states are merged before the graphs are tested */
+	protected final boolean shouldReduceBisimilarStates;
 	public NFAAnalyser(PriorityRemovalStrategy priorityRemovalStrategy) {
+		this(priorityRemovalStrategy, null);
+	}
+
+	public NFAAnalyser(PriorityRemovalStrategy priorityRemovalStrategy, AnalysisResultsCache sharedResultsCache) {
+		this(priorityRemovalStrategy, sharedResultsCache, false);
+	}
+
+	public NFAAnalyser(PriorityRemovalStrategy priorityRemovalStrategy, AnalysisResultsCache sharedResultsCache, boolean shouldReduceBisimilarStates) {
 		this.exploitStringBuilder = new ExploitStringBuilder();
 		this.priorityRemovalStrategy = priorityRemovalStrategy;
+		this.sharedResultsCache = sharedResultsCache;
+		this.shouldReduceBisimilarStates = shouldReduceBisimilarStates;
+	}
+
+	/* Where the sizes of the graphs built are recorded, or null if they are not */
+	protected AnalysisMetrics metrics;
+
+	@Override
+	public void setMetrics(AnalysisMetrics metrics) {
+		this.metrics = metrics;
 	}
 
-	protected Map<NFAGraph, EdaAnalysisResults> edaResultsCache = new HashMap<NFAGraph, EdaAnalysisResults>();
-	protected Map<NFAGraph, IdaAnalysisResults> idaResultsCache = new HashMap<NFAGraph, IdaAnalysisResults>();
+	/* The budget of the following analyses, or null if they have none */
+	protected AnalysisBudget budget;
+
+	@Override
+	public void setBudget(AnalysisBudget budget) {
+		this.budget = budget;
+		AnalysisBudget.setCurrent(budget);
+	}
+
+	/* keyed by the fingerprint of the NFA, so that a lookup does not compare whole graphs */
+	protected Map<NFAGraph.CacheKey, EdaAnalysisResults> edaResultsCache = new HashMap<NFAGraph.CacheKey, EdaAnalysisResults>();
+	protected Map<NFAGraph.CacheKey, IdaAnalysisResults> idaResultsCache = new HashMap<NFAGraph.CacheKey, IdaAnalysisResults>();
 	
 	protected abstract EdaAnalysisResults calculateEdaAnalysisResults(NFAGraph originalM) throws InterruptedException;
 	
@@ -68,14 +103,18 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 			}
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
+			if (budget != null && budget.isExceededBeforeDeadline()) {
+				return AnalysisResultsType.BUDGET_EXCEEDED;
+			}
 			return AnalysisResultsType.TIMEOUT_IN_IDA;
 		}
 	}
 
 	@Override
 	public IdaAnalysisResults getIdaAnalysisResults(NFAGraph m) {
-		if (idaResultsCache.containsKey(m)) {
-			return idaResultsCache.get(m);
+		IdaAnalysisResults resultsObject = idaResultsCache.get(m.getCacheKey());
+		if (resultsObject != null) {
+			return resultsObject;
 		} else {
 			throw new IllegalStateException("No IDA Analysis results found!");
 		}
@@ -100,6 +139,9 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 			}
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
+			if (budget != null && budget.isExceededBeforeDeadline()) {
+				return AnalysisResultsType.BUDGET_EXCEEDED;
+			}
 			return AnalysisResultsType.TIMEOUT_IN_EDA;
 		}
 		
@@ -108,8 +150,9 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 
 	@Override
 	public EdaAnalysisResults getEdaAnalysisResults(NFAGraph m) {
-		if (edaResultsCache.containsKey(m)) {
-			return edaResultsCache.get(m);
+		EdaAnalysisResults resultsObject = edaResultsCache.get(m.getCacheKey());
+		if (resultsObject != null) {
+			return resultsObject;
 		} else {
 			throw new IllegalStateException("No EDA Analysis results found!");
 		}
@@ -118,7 +161,16 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 
 	protected AnalysisResults searchEdaCache(NFAGraph originalM) throws InterruptedException {
 		EdaAnalysisResults resultsObject;
-		if (!edaResultsCache.containsKey(originalM)) {
+		NFAGraph.CacheKey cacheKey = originalM.getCacheKey();
+		/* With a shared cache, equal NFAs analysed by any analyser are found there, otherwise only this analyser's results are searched */
+		AnalysisResultsCache.Key sharedKey = null;
+		if (sharedResultsCache != null) {
+			sharedKey = sharedResultsKey(cacheKey);
+			resultsObject = sharedResultsCache.getEdaAnalysisResults(sharedKey);
+		} else {
+			resultsObject = edaResultsCache.get(cacheKey);
+		}
+		if (resultsObject == null) {
 
 			resultsObject = calculateEdaAnalysisResults(originalM);
 			if (resultsObject.edaCase != EdaCases.NO_EDA) {
@@ -135,26 +187,37 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 				}
 			}
 
+			if (sharedResultsCache != null) {
+				sharedResultsCache.putEdaAnalysisResults(sharedKey, resultsObject);
+			}
+		}
+		if (!edaResultsCache.containsKey(cacheKey)) {
 			if (edaResultsCache.size() >= MAX_CACHE_SIZE) {
 				edaResultsCache.clear();
 			}
-			edaResultsCache.put(originalM, resultsObject);	
-		} else {
-			resultsObject = edaResultsCache.get(originalM);
+			edaResultsCache.put(cacheKey, resultsObject);
 		}
 		return resultsObject;
 	}
 	
 	protected AnalysisResults searchIdaCache(NFAGraph originalM) throws InterruptedException {
 		IdaAnalysisResults resultsObject;
+		NFAGraph.CacheKey cacheKey = originalM.getCacheKey();
 		
-		if (!edaResultsCache.containsKey(originalM)) {
+		if (!edaResultsCache.containsKey(cacheKey)) {
 			throw new IllegalStateException("An NFA must first be checked for EDA, before it can be checked for IDA.");
 		} else {
-			EdaAnalysisResults edaResultsObject = edaResultsCache.get(originalM);
+			EdaAnalysisResults edaResultsObject = edaResultsCache.get(cacheKey);
 
 			if (edaResultsObject.edaCase == EdaCases.NO_EDA) {
-				if (!idaResultsCache.containsKey(originalM)) {
+				AnalysisResultsCache.Key sharedKey = null;
+				if (sharedResultsCache != null) {
+					sharedKey = sharedResultsKey(cacheKey);
+					resultsObject = sharedResultsCache.getIdaAnalysisResults(sharedKey);
+				} else {
+					resultsObject = idaResultsCache.get(cacheKey);
+				}
+				if (resultsObject == null) {
 					EdaAnalysisResultsNoEda noEdaResults = (EdaAnalysisResultsNoEda) edaResultsObject;
 					/* If the analysis was unpriority based, immediately check for unprioritised IDA (since the NFA might have priority ignored EDA, which will cause the IDA analysis to fail) */
 					PriorityRemovalStrategy noEdaPriorityRemovalStrategy = noEdaResults.getPriorityRemovalStrategy();
@@ -174,12 +237,15 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 						throw new RuntimeException("Unknown priority strategy: " + noEdaPriorityRemovalStrategy);
 					}
 					
+					if (sharedResultsCache != null) {
+						sharedResultsCache.putIdaAnalysisResults(sharedKey, resultsObject);
+					}
+				}
+				if (!idaResultsCache.containsKey(cacheKey)) {
 					if (idaResultsCache.size() >= MAX_CACHE_SIZE) {
 						idaResultsCache.clear();
 					}
-					idaResultsCache.put(originalM, resultsObject);
-				} else {
-					resultsObject = idaResultsCache.get(originalM);
+					idaResultsCache.put(cacheKey, resultsObject);
 				}
 			} else {
 				throw new IllegalArgumentException("NFA contains EDA and cannot be tested for IDA.");
@@ -189,9 +255,14 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		return resultsObject;
 	}
 	
+	/* The results also depend on how the analyser removes epsilon loops and priorities */
+	private AnalysisResultsCache.Key sharedResultsKey(NFAGraph.CacheKey cacheKey) {
+		return new AnalysisResultsCache.Key(getClass().getSimpleName() + " " + priorityRemovalStrategy + " " + shouldReduceBisimilarStates, cacheKey);
+	}
+	
 	public ExploitString findEDAExploitString(NFAGraph originalM) throws InterruptedException {
-		if (edaResultsCache.containsKey(originalM)) {
-			EdaAnalysisResults resultsObject = edaResultsCache.get(originalM);
+		EdaAnalysisResults resultsObject = edaResultsCache.get(originalM.getCacheKey());
+		if (resultsObject != null) {
 			return exploitStringBuilder.buildEdaExploitString(resultsObject);
 		} else {
 			throw new NoAnalysisFoundException();
@@ -200,8 +271,8 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	}
 	
 	public ExploitString findIDAExploitString(NFAGraph originalM) throws InterruptedException {
-		if (idaResultsCache.containsKey(originalM)) {
-			IdaAnalysisResults resultsObject = idaResultsCache.get(originalM);
+		IdaAnalysisResults resultsObject = idaResultsCache.get(originalM.getCacheKey());
+		if (resultsObject != null) {
 			return exploitStringBuilder.buildIdaExploitString(resultsObject);
 		} else {
 			throw new NoAnalysisFoundException();
@@ -252,154 +323,176 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	}
 	
 	protected EdaAnalysisResults edaTestCaseFilter(NFAGraph originalM, NFAGraph merged) throws InterruptedException {
-		NFAGraph pc = NFAAnalysisTools.productConstructionAFA(merged);
-		
-		if (isInterrupted()) {
-			throw new InterruptedException();
+		/*
+		 * The product is explored on the fly, one strongly connected component
+		 * at a time, so the search can stop at the first component with a
+		 * witness instead of building the whole product first.
+		 */
+		LazyProductNFA pc = NFAAnalysisTools.lazyProductConstructionAFA(merged);
+		try {
+			return edaTestCaseFilter(originalM, pc);
+		} finally {
+			if (metrics != null) {
+				metrics.recordEdaProduct(pc);
+			}
 		}
+	}
+
+	private EdaAnalysisResults edaTestCaseFilter(NFAGraph originalM, LazyProductNFA pc) throws InterruptedException {
+		LazyStronglyConnectedComponents pcSCCs = new LazyStronglyConnectedComponents(pc);
 		
-		//pc = NFAAnalysisTools.makeTrim(pc);
-		if (isInterrupted()) {
-			throw new InterruptedException();
-		}
-		List<NFAGraph> pcSCCs = NFAAnalysisTools.getStronglyConnectedComponents(pc);
-		if (isInterrupted()) {
-			throw new InterruptedException();
-		}
-		for (NFAGraph pcSCC : pcSCCs) {
-			
-			for (NFAVertexND pfp : pcSCC.vertexSet()) {
+		int[] pcSCC;
+		while ((pcSCC = pcSCCs.next()) != null) {
+			int pfp = -1;
+			int qfq = -1;
+			for (int i = 0; i < pcSCC.length && (pfp == -1 || qfq == -1); i++) {
 				
 				if (isInterrupted()) {
 					throw new InterruptedException();
 				}
-				String p1 = pfp.getStateNumberByDimension(1);
-				String p2 = pfp.getStateNumberByDimension(3);
+				NFAVertexND p1 = pc.getStateByDimension(pcSCC[i], 1);
+				NFAVertexND p2 = pc.getStateByDimension(pcSCC[i], 3);
 				if (p1.equals(p2)) {
 					/* found (P, P) */
-
-					for (NFAVertexND qfq : pcSCC.vertexSet()) {
-						
-						if (isInterrupted()) {
-							throw new InterruptedException();
-						}
-						String q1 = qfq.getStateNumberByDimension(1);
-						String q2 = qfq.getStateNumberByDimension(3);
-						if (!q1.equals(q2)) {
-							/* found (P', P") where P' != P" */
-
-							/* building the exploit string */
-							// System.out.println("Case: Found (P', P\") P: " +
-							// pfp + " P\'P\": " + qfq);
-							//System.out.println("In NFAAnalyser:edaTestCaseFilter");
-							//System.out.println(originalM);
-							EdaAnalysisResultsFilter resultsObject = new EdaAnalysisResultsFilter(originalM, pcSCC, pfp, qfq);
-							//System.out.println("End");
-							return resultsObject;
-						}
+					if (pfp == -1) {
+						pfp = i;
 					}
+				} else if (qfq == -1) {
+					/* found (P', P") where P' != P" */
+					qfq = i;
 				}
 			}
+			if (pfp != -1 && qfq != -1) {
+				/* building the exploit string */
+				NFAVertexND[] sccVertices = new NFAVertexND[pcSCC.length];
+				NFAGraph pcSCCGraph = pc.toNFAGraph(pcSCC, null, sccVertices);
+				EdaAnalysisResultsFilter resultsObject = new EdaAnalysisResultsFilter(originalM, pcSCCGraph, sccVertices[pfp], sccVertices[qfq]);
+				return resultsObject;
+			}
 		}
 		return new EdaAnalysisResultsNoEda(originalM);
 	}
 	
 	protected IdaAnalysisResults idaTestCaseFilter(NFAGraph originalM, NFAGraph flat) throws InterruptedException {
-		//System.out.println(originalM);
-		//NFAGraph m1 = flat.copy();
-		//NFAGraph pc = NFAAnalysisTools.productConstructionAFAFA(m1);
-		NFAGraph pc = NFAAnalysisTools.productConstructionAFAFA(flat);
-		
-		//pc = NFAAnalysisTools.makeTrim(pc);
-		
-		
-		String[] filterStates = {"0", "1", "2"};
+		/*
+		 * The degree depends on all the (p, q) pairs found, so the whole
+		 * product has to be explored. It is generated lazily and the edges
+		 * from (p, q, q) to (p, p, q) are added as the states are discovered,
+		 * so neither the product nor a copy of it is built as an NFA graph.
+		 */
+		LazyProductNFA pc = NFAAnalysisTools.lazyProductConstructionAFAFA(flat);
+		try {
+			return idaTestCaseFilter(originalM, flat, pc);
+		} finally {
+			if (metrics != null) {
+				metrics.recordIdaProduct(pc);
+			}
+		}
+	}
 
-		/* Adding the edges from (p, q, q) to (p, p, q) */
-		NFAGraph pcWithBackEdges = pc.copy();
-		for (NFAVertexND sourcePCV : pc.vertexSet()) {
+	private IdaAnalysisResults idaTestCaseFilter(NFAGraph originalM, NFAGraph flat, LazyProductNFA pc) throws InterruptedException {
+		/* only the states of flat are numbered, its edges are not needed */
+		NFAVertexND[] flatStates = CompactNFAGraph.statesOf(flat);
+		HashMap<NFAVertexND, Integer> flatStateNumbers = CompactNFAGraph.stateNumbersOf(flatStates);
+
+		/* The states (p, q, q) and (p, p, q), p != q, found so far, indexed by (p, q) */
+		HashMap<Long, LinkedList<Integer>> pqqStates = new HashMap<Long, LinkedList<Integer>>();
+		HashMap<Long, LinkedList<Integer>> ppqStates = new HashMap<Long, LinkedList<Integer>>();
+		for (int pcState = 0; pcState < pc.getNumStates(); pcState++) {
 			if (isInterrupted()) {
 				throw new InterruptedException();
 			}
+			/* generating the edges of the state discovers its successors */
+			pc.getNumEdges(pcState);
 
-			String p1 = sourcePCV.getStateNumberByDimension(1);
-			String p2 = sourcePCV.getStateNumberByDimension(3);
-			String q = sourcePCV.getStateNumberByDimension(5);
-			
-			/* found (p, p, q), p != q */
-			if (p1.equals(p2) && !p1.equals(q)) {
-				/*
-				 * Since filter states don't matter we need to check to all
-				 * combinations
-				 */
-				for (String f1 : filterStates) {
-					if (isInterrupted()) {
-						throw new InterruptedException();
+			int p1 = flatStateNumbers.get(pc.getStateByDimension(pcState, 1));
+			int p2 = flatStateNumbers.get(pc.getStateByDimension(pcState, 3));
+			int q = flatStateNumbers.get(pc.getStateByDimension(pcState, 5));
+			if (p1 == q) {
+				continue;
+			}
+			/* Since filter states don't matter, all states with the same p and q are connected */
+			Long pq = pairKey(p1, q);
+			if (p1 == p2) {
+				/* found (p, p, q), adding the edges back from the (p, q, q) states found so far */
+				if (pqqStates.containsKey(pq)) {
+					for (int pqqState : pqqStates.get(pq)) {
+						pc.addSpecialEdge(pqqState, pcState);
 					}
-					for (String f2 : filterStates) {
-						if (isInterrupted()) {
-							throw new InterruptedException();
-						}
-						NFAVertexND targetPCV = new NFAVertexND(p1, f1, q, f2, q);
-						/* found (p, p, q) and (p, q, q) */
-						if (pc.containsVertex(targetPCV)) {
-							/* Adding the edge back from (p, q, q) to (p, p, q) */
-							NFAEdge newSpecialEdge = new NFAEdge(targetPCV, sourcePCV, new IdaSpecialTransitionLabel(null));
-							pcWithBackEdges.addEdge(newSpecialEdge);
-						}
+				}
+				addToIndex(ppqStates, pq, pcState);
+			} else if (p2 == q) {
+				/* found (p, q, q), adding the edges back to the (p, p, q) states found so far */
+				if (ppqStates.containsKey(pq)) {
+					for (int ppqState : ppqStates.get(pq)) {
+						pc.addSpecialEdge(pcState, ppqState);
 					}
 				}
+				addToIndex(pqqStates, pq, pcState);
 			}
-			
 		}
 		
 		boolean containsIda = false;
-		LinkedList<NFAGraph> sccs = NFAAnalysisTools.getStronglyConnectedComponents(pcWithBackEdges);
 		LinkedList<NFAVertexND> storedPs = new LinkedList<NFAVertexND>();
 		LinkedList<NFAVertexND> storedQs = new LinkedList<NFAVertexND>();
 		LinkedList<LinkedList<TransitionLabel>> storedSymbols = new LinkedList<LinkedList<TransitionLabel>>();
-		
-		for (NFAGraph scc : sccs) {
+		/* Every back edge between the same p and q gives the same path, so each pair is only stored once */
+		HashSet<Long> storedPairs = new HashSet<Long>();
+
+		LazyStronglyConnectedComponents sccs = new LazyStronglyConnectedComponents(pc);
+		int[] sccNumbers = new int[pc.getNumStates()];
+		int sccNumber = 0;
+		int[] scc;
+		while ((scc = sccs.next()) != null) {
 			if (isInterrupted()) {
 				throw new InterruptedException();
 			}
-			boolean containsSymbolTransition = false;
-			for (NFAEdge e : scc.edgeSet()) {
-				if (isInterrupted()) {
-					throw new InterruptedException();
-				}
-				TransitionLabel tl = e.getTransitionLabel();				
-				if (tl.getTransitionType() == TransitionType.SYMBOL) {
-					containsSymbolTransition = true;
-					break;
-				}
+			sccNumber++;
+			for (int pcState : scc) {
+				sccNumbers[pcState] = sccNumber;
 			}
-			if (containsSymbolTransition) {
-				for (NFAEdge e : scc.edgeSet()) {
+			boolean containsSymbolTransition = false;
+			for (int i = 0; i < scc.length && !containsSymbolTransition; i++) {
+				for (int e = 0; e < pc.getNumEdges(scc[i]); e++) {
 					if (isInterrupted()) {
 						throw new InterruptedException();
 					}
-					
-					TransitionLabel tl = e.getTransitionLabel();				
-					if (tl.getTransitionType() == TransitionType.OTHER) {
-						if (tl instanceof IdaSpecialTransitionLabel) {
-							NFAVertexND eSource = e.getSourceVertex();
-							NFAVertexND p = eSource.getStateByDimension(1);
-							NFAVertexND q = eSource.getStateByDimension(5);	
-							LinkedList<NFAEdge> pqPath = NFAAnalysisTools.shortestPathBetween(flat, p, q);
-							LinkedList<TransitionLabel> pqPathTransitionLabels = new LinkedList<TransitionLabel>();	
-							for (NFAEdge e2 : pqPath) {
-								TransitionLabel currentTransitionLabel = e2.getTransitionLabel();
-								if (currentTransitionLabel.getTransitionType() != TransitionType.EPSILON) {
-									pqPathTransitionLabels.add(currentTransitionLabel);
-								}
+					TransitionLabel tl = pc.getLabel(pc.getEdgeLabel(scc[i], e));
+					if (sccNumbers[pc.getEdgeTarget(scc[i], e)] == sccNumber && tl.getTransitionType() == TransitionType.SYMBOL) {
+						containsSymbolTransition = true;
+						break;
+					}
+				}
+			}
+			if (containsSymbolTransition) {
+				for (int pcState : scc) {
+					for (int e = 0; e < pc.getNumSpecialEdges(pcState); e++) {
+						if (isInterrupted()) {
+							throw new InterruptedException();
+						}
+						if (sccNumbers[pc.getSpecialEdgeTarget(pcState, e)] != sccNumber) {
+							continue;
+						}
+						int pNumber = flatStateNumbers.get(pc.getStateByDimension(pcState, 1));
+						int qNumber = flatStateNumbers.get(pc.getStateByDimension(pcState, 5));
+						if (!storedPairs.add(pairKey(pNumber, qNumber))) {
+							continue;
+						}
+						NFAVertexND p = flatStates[pNumber];
+						NFAVertexND q = flatStates[qNumber];
+						LinkedList<NFAEdge> pqPath = NFAAnalysisTools.shortestPathBetween(flat, p, q);
+						LinkedList<TransitionLabel> pqPathTransitionLabels = new LinkedList<TransitionLabel>();	
+						for (NFAEdge e2 : pqPath) {
+							TransitionLabel currentTransitionLabel = e2.getTransitionLabel();
+							if (currentTransitionLabel.getTransitionType() != TransitionType.EPSILON) {
+								pqPathTransitionLabels.add(currentTransitionLabel);
 							}
-							
-							storedPs.add(p);
-							storedQs.add(q);
-							storedSymbols.add(pqPathTransitionLabels);
-							containsIda = true;
 						}
+						
+						storedPs.add(p);
+						storedQs.add(q);
+						storedSymbols.add(pqPathTransitionLabels);
+						containsIda = true;
 					}
 				}
 			}
@@ -456,7 +549,7 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 
 			*/
 
-			NFAGraph degreeGraph = originalM.copy();
+			LinkedList<NFAEdge> specialEdges = new LinkedList<NFAEdge>();
 			Iterator<NFAVertexND> i0 = storedPs.iterator();
 			Iterator<NFAVertexND> i1 = storedQs.iterator();
 			Iterator<LinkedList<TransitionLabel>> i2 = storedSymbols.iterator();
@@ -466,15 +559,12 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 				NFAVertexND q = i1.next();
 				LinkedList<TransitionLabel> tls = i2.next();
 
-				degreeGraph.addEdge(new NFAEdge(p, q, new IdaSpecialTransitionLabel(tls)));				
+				specialEdges.add(new NFAEdge(p, q, new IdaSpecialTransitionLabel(tls)));
 			}
 
 			/* Calculating the degree */
-			NFAVertexND initialVertex = degreeGraph.getInitialState();
-			
-
 			LinkedList<NFAEdge> maxPath = new LinkedList<NFAEdge>();
-			int d = calculateD(degreeGraph, initialVertex, maxPath);
+			int d = calculateD(originalM, specialEdges, maxPath);
 			
 			
 			return new IdaAnalysisResultsIda(originalM, d, maxPath);
@@ -483,48 +573,143 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		}
 	}
 	
-	private int calculateD(NFAGraph originalM, NFAVertexND initialState, LinkedList<NFAEdge> maxPath) throws InterruptedException {
-		return calculateDDFS(originalM, initialState, 0, -1, new LinkedList<NFAEdge>(), maxPath, new HashSet<NFAEdge>());
+	private static long pairKey(int p, int q) {
+		return ((long) p << 32) | (q & 0xffffffffL);
+	}
+
+	private static void addToIndex(HashMap<Long, LinkedList<Integer>> index, Long key, int pcState) {
+		LinkedList<Integer> pcStates = index.get(key);
+		if (pcStates == null) {
+			pcStates = new LinkedList<Integer>();
+			index.put(key, pcStates);
+		}
+		pcStates.add(pcState);
 	}
 	
-	private int calculateDDFS(NFAGraph m, NFAVertexND currentVertex, int currentD, int maxD, LinkedList<NFAEdge> currentPath, LinkedList<NFAEdge> maxPath, HashSet<NFAEdge> traversed) throws InterruptedException {
-		/*
-		 * For an optimisation the set "traversed" can be removed completely,
-		 * since originalM will always be a DAG. At the moment it is included for
-		 * testing purposes.
-		 */
-		for (NFAEdge currentE : m.outgoingEdgesOf(currentVertex)) {
+	/**
+	 * Calculates the degree of ambiguity, that is the largest number of special
+	 * transitions on a path from the initial state. The special transitions
+	 * and the strongly connected components of the NFA form a DAG, so the
+	 * longest path is found in a single pass over its topological order.
+	 * 
+	 * @param m
+	 *            The NFA graph, without the special transitions.
+	 * @param specialEdges
+	 *            The special transitions, from the first to the second state of
+	 *            each IDA witness.
+	 * @param maxPath
+	 *            Filled with the edges of a path from the initial state through
+	 *            the special transitions of the longest path, ending with the last
+	 *            special transition. The special transitions are joined by
+	 *            shortest paths in the NFA, so the separators and pumps of the
+	 *            exploit string built from it are often shorter than those of a
+	 *            path found by enumerating all paths.
+	 * @return The degree.
+	 */
+	private int calculateD(NFAGraph m, LinkedList<NFAEdge> specialEdges, LinkedList<NFAEdge> maxPath) throws InterruptedException {
+		/* build the component graph, with one vertex for every strongly connected component */
+		KosarajuStrongConnectivityInspector<NFAVertexND, NFAEdge> sci = new KosarajuStrongConnectivityInspector<NFAVertexND, NFAEdge>(m);
+		List<Set<NFAVertexND>> sccs = sci.stronglyConnectedSets();
+		HashMap<NFAVertexND, NFAVertexND> sccMap = new HashMap<NFAVertexND, NFAVertexND>();
+		NFAGraph componentGraph = new NFAGraph();
+		int sccCounter = 0;
+		for (Set<NFAVertexND> scc : sccs) {
+			NFAVertexND sccVertex = new NFAVertexND("C" + sccCounter);
+			sccCounter++;
+			componentGraph.addVertex(sccVertex);
+			for (NFAVertexND v : scc) {
+				sccMap.put(v, sccVertex);
+			}
+		}
+		componentGraph.setInitialState(sccMap.get(m.getInitialState()));
 
+		EpsilonTransitionLabel componentLabel = new EpsilonTransitionLabel("ε1");
+		for (NFAEdge e : m.edgeSet()) {
 			if (isInterrupted()) {
 				throw new InterruptedException();
 			}
-			TransitionLabel tl = currentE.getTransitionLabel();
-			if (!traversed.contains(currentE)) {
-				traversed.add(currentE);
-				currentPath.add(currentE); /* all deeper paths will contain currentVertex */
-				if (tl instanceof IdaSpecialTransitionLabel) {
-					maxD = calculateDDFS(m, currentE.getTargetVertex(), currentD + 1, maxD, currentPath, maxPath, traversed);
-				} else {
-					maxD = calculateDDFS(m, currentE.getTargetVertex(), currentD, maxD, currentPath, maxPath, traversed);
+			NFAVertexND sourceScc = sccMap.get(e.getSourceVertex());
+			NFAVertexND targetScc = sccMap.get(e.getTargetVertex());
+			if (!sourceScc.equals(targetScc)) {
+				componentGraph.addEdge(new NFAEdge(sourceScc, targetScc, componentLabel));
+			}
+		}
+		/* the special transitions of the component graph, mapped to the special transitions between the states */
+		HashMap<NFAEdge, NFAEdge> specialEdgeMap = new HashMap<NFAEdge, NFAEdge>();
+		for (NFAEdge specialEdge : specialEdges) {
+			NFAVertexND sourceScc = sccMap.get(specialEdge.getSourceVertex());
+			NFAVertexND targetScc = sccMap.get(specialEdge.getTargetVertex());
+			if (sourceScc.equals(targetScc)) {
+				/* only possible if the NFA contains EDA, in which case the degree is not tested */
+				continue;
+			}
+			NFAEdge componentSpecialEdge = new NFAEdge(sourceScc, targetScc, specialEdge.getTransitionLabel());
+			componentGraph.addEdge(componentSpecialEdge);
+			specialEdgeMap.put(componentSpecialEdge, specialEdge);
+		}
+
+		/* longest path, counting only special transitions, in topological order */
+		HashMap<NFAVertexND, Integer> topologicalOrder = NFAAnalysisTools.topologicalSort(componentGraph);
+		NFAVertexND[] sortedSccs = new NFAVertexND[topologicalOrder.size()];
+		for (Map.Entry<NFAVertexND, Integer> entry : topologicalOrder.entrySet()) {
+			sortedSccs[entry.getValue()] = entry.getKey();
+		}
+		HashMap<NFAVertexND, Integer> longestPaths = new HashMap<NFAVertexND, Integer>();
+		HashMap<NFAVertexND, NFAEdge> longestPathEdges = new HashMap<NFAVertexND, NFAEdge>();
+		longestPaths.put(componentGraph.getInitialState(), 0);
+		NFAVertexND maxScc = componentGraph.getInitialState();
+		int maxD = 0;
+		for (NFAVertexND currentScc : sortedSccs) {
+			if (isInterrupted()) {
+				throw new InterruptedException();
+			}
+			Integer currentD = longestPaths.get(currentScc);
+			if (currentD == null) {
+				/* not reachable from the initial state */
+				continue;
+			}
+			if (currentD > maxD) {
+				maxD = currentD;
+				maxScc = currentScc;
+			}
+			for (NFAEdge e : componentGraph.outgoingEdgesOf(currentScc)) {
+				int targetD = currentD;
+				if (e.getTransitionLabel() instanceof IdaSpecialTransitionLabel) {
+					targetD++;
+				}
+				Integer previousTargetD = longestPaths.get(e.getTargetVertex());
+				if (previousTargetD == null || targetD > previousTargetD) {
+					longestPaths.put(e.getTargetVertex(), targetD);
+					longestPathEdges.put(e.getTargetVertex(), e);
 				}
-				currentPath.remove(currentE); /* since the list is passed as reference we need to remove this from the path */
-				traversed.remove(currentE);
-			} else {
-				/* We can make this assumption if we work with the component graph, but as we have seen, the component graph is not sufficient when calculating th exploit string explicitly. */
-				//throw new RuntimeException("Graph is not supposed to have cycles...");
 			}
+		}
 
+		/* the special transitions on the longest path, in order */
+		LinkedList<NFAEdge> pathSpecialEdges = new LinkedList<NFAEdge>();
+		NFAVertexND currentScc = maxScc;
+		while (longestPathEdges.containsKey(currentScc)) {
+			NFAEdge e = longestPathEdges.get(currentScc);
+			if (specialEdgeMap.containsKey(e)) {
+				pathSpecialEdges.addFirst(specialEdgeMap.get(e));
+			}
+			currentScc = e.getSourceVertex();
 		}
-		int newMax;
-		if (currentD > maxD) {
-			maxPath.clear();
-			maxPath.addAll(currentPath);
-			newMax =  currentD;
-		} else {
-			newMax =  maxD;
+
+		/* connect the special transitions with paths in the NFA */
+		maxPath.clear();
+		NFAVertexND currentVertex = m.getInitialState();
+		for (NFAEdge specialEdge : pathSpecialEdges) {
+			if (isInterrupted()) {
+				throw new InterruptedException();
+			}
+			if (!currentVertex.equals(specialEdge.getSourceVertex())) {
+				maxPath.addAll(NFAAnalysisTools.shortestPathBetween(m, currentVertex, specialEdge.getSourceVertex()));
+			}
+			maxPath.add(specialEdge);
+			currentVertex = specialEdge.getTargetVertex();
 		}
-		
-		return newMax;
+		return maxD;
 	}
 		
 	/* Assume NFA has no epsilon loops, only one start and one accept and every state has either epsilon transitions, or one symbol transition from it */
@@ -546,6 +731,10 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		
 		HashMap<NFAVertexND, UPNFAState> statesMap = new HashMap<NFAVertexND, UPNFAState>();
 		NFAGraph converted = NFAAnalysisTools.convertUpNFAToNFAGraph(trimmedUPNFA, statesMap);
+		if (metrics != null) {
+			metrics.recordUpNfa(converted);
+		}
+		converted = reduceIfEnabled(converted);
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
@@ -589,6 +778,10 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 
 		HashMap<NFAVertexND, UPNFAState> statesMap = new HashMap<NFAVertexND, UPNFAState>();
 		NFAGraph converted = NFAAnalysisTools.convertUpNFAToNFAGraph(trimmedUPNFA, statesMap);
+		if (metrics != null) {
+			metrics.recordUpNfa(converted);
+		}
+		converted = reduceIfEnabled(converted);
 		IdaAnalysisResults resultsObject = new IdaAnalysisResultsNoIda(m);
 		
 		/* Testing for multiple paths in PC */
@@ -597,6 +790,18 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		return resultsObject;
 	}
 	
+	/* Only called on graphs whose epsilon priorities no longer matter to the tests */
+	protected NFAGraph reduceIfEnabled(NFAGraph m) throws InterruptedException {
+		if (!shouldReduceBisimilarStates) {
+			return m;
+		}
+		NFAGraph reduced = NFAAnalysisTools.reduceBisimilarStates(m);
+		if (metrics != null) {
+			metrics.recordReducedGraph(reduced);
+		}
+		return reduced;
+	}
+
 	protected NFAGraph createUnprioritisedNFAGraph(NFAGraph m) throws InterruptedException {
 		NFAGraph resultUPNFA = new NFAGraph();
 		int i = 0;
@@ -880,7 +1085,7 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	}
 	
 	protected boolean isInterrupted() {
-		return Thread.currentThread().isInterrupted();
+		return AnalysisBudget.isCurrentThreadStopped();
 	}
 	
 	/* Assume NFA has no epsilon loops, only one start and one accept and every state has either epsilon transitions, or one symbol transition from it */
@@ -935,6 +1140,11 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 			return false;
 		}
 
+		@Override
+		public boolean matches(int symbol) {
+			return false;
+		}
+
 		@Override
 		public boolean matches(TransitionLabel tl) {
 			return false;
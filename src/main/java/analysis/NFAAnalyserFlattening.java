@@ -25,20 +25,35 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		super(priorityRemovalStrategy);
 	}
 
+	public NFAAnalyserFlattening(PriorityRemovalStrategy priorityRemovalStrategy, AnalysisResultsCache sharedResultsCache) {
+		super(priorityRemovalStrategy, sharedResultsCache);
+	}
+
+	public NFAAnalyserFlattening(PriorityRemovalStrategy priorityRemovalStrategy, AnalysisResultsCache sharedResultsCache, boolean shouldReduceBisimilarStates) {
+		super(priorityRemovalStrategy, sharedResultsCache, shouldReduceBisimilarStates);
+	}
+
 	@Override
 	protected EdaAnalysisResults calculateEdaAnalysisResults(NFAGraph originalM) throws InterruptedException {
 		NFAGraph flatGraph = flattenNFA(originalM);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(flatGraph);
+		}
 		
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
 		//flatGraph = NFAAnalysisTools.makeTrim(flatGraph);
+		flatGraph = reduceIfEnabled(flatGraph);
 
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
-		
+
 		LinkedList<NFAGraph> sccsInFlat = NFAAnalysisTools.getStronglyConnectedComponents(flatGraph);
+		if (metrics != null) {
+			metrics.setNumSccs(sccsInFlat.size());
+		}
 
 		if (isInterrupted()) {
 			throw new InterruptedException();
@@ -67,6 +82,9 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 	@Override
 	protected EdaAnalysisResults calculateEdaUnprioritisedAnalysisResults(NFAGraph originalM) throws InterruptedException {	
 		NFAGraph flatGraph = flattenNFA(originalM);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(flatGraph);
+		}
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
@@ -85,11 +103,15 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 			throws InterruptedException {
 
 		NFAGraph flatGraph = flattenNFA(originalM);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(flatGraph);
+		}
 
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
 		//flatGraph = NFAAnalysisTools.makeTrim(flatGraph);
+		flatGraph = reduceIfEnabled(flatGraph);
 
 		if (isInterrupted()) {
 			throw new InterruptedException();
@@ -108,6 +130,9 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 	@Override
 	protected IdaAnalysisResults calculateIdaUnprioritisedAnalysisResults(NFAGraph originalM) throws InterruptedException {
 		NFAGraph flatGraph = flattenNFA(originalM);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(flatGraph);
+		}
 
 		if (isInterrupted()) {
 			throw new InterruptedException();
@@ -131,7 +156,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		NFAGraph flatGraph = new NFAGraph();
 		/* Adding the vertices */
 		for (NFAVertexND v : m.vertexSet()) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (NFAAnalysisTools.isInterrupted()) {
 				throw new InterruptedException();
 			}
 			flatGraph.addVertex(v);
@@ -139,7 +164,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 
 		flatGraph.setInitialState(m.getInitialState());
 		for (NFAVertexND v : m.getAcceptingStates()) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (NFAAnalysisTools.isInterrupted()) {
 				throw new InterruptedException();
 			}
 			flatGraph.addAcceptingState(v);
@@ -147,7 +172,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 
 		/* Adding the non-epsilon edges */
 		for (NFAEdge e : m.edgeSet()) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (NFAAnalysisTools.isInterrupted()) {
 				throw new InterruptedException();
 			}
 			if (!e.getIsEpsilonTransition()) {
@@ -156,12 +181,12 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		}
 
 		for (NFAVertexND source : m.vertexSet()) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (NFAAnalysisTools.isInterrupted()) {
 				throw new InterruptedException();
 			}
 			HashMap<NFAVertexND, Integer> numWalksMap = numWalksFrom(m, source);
 			for (Map.Entry<NFAVertexND, Integer> kv : numWalksMap.entrySet()) {
-				if (Thread.currentThread().isInterrupted()) {
+				if (NFAAnalysisTools.isInterrupted()) {
 					throw new InterruptedException();
 				}
 				NFAVertexND destination = kv.getKey();
@@ -191,7 +216,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 
 		/* Adding the non-epsilon edges and their vertices */
 		for (NFAEdge e : m.edgeSet()) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (NFAAnalysisTools.isInterrupted()) {
 				throw new InterruptedException();
 			}
 			if (!e.getIsEpsilonTransition()) {
@@ -222,7 +247,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 
 		/* Adding the accepting states */
 		for (NFAVertexND v : m.getAcceptingStates()) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (NFAAnalysisTools.isInterrupted()) {
 				throw new InterruptedException();
 			}
 			if (!flatGraph.containsVertex(v)) {
@@ -232,13 +257,13 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		}
 
 		for (NFAVertexND sourceState : searchFromVertices) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (NFAAnalysisTools.isInterrupted()) {
 				throw new InterruptedException();
 			}
 			LinkedList<NFAVertexND> reachableFromSource = dfsFlatten(m,	sourceState);
 			int priorityCounter = 1;
 			for (NFAVertexND targetState : reachableFromSource) {
-				if (Thread.currentThread().isInterrupted()) {
+				if (NFAAnalysisTools.isInterrupted()) {
 					throw new InterruptedException();
 				}
 				if (!sourceState.equals(targetState)) {
@@ -263,7 +288,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 	 * symbol transitions from each state
 	 */
 	private static void dfsFlatten(NFAGraph m, NFAVertexND currentVertex, HashSet<NFAEdge> visitedEdges, LinkedList<NFAVertexND> endVertices) throws InterruptedException {
-		if (Thread.currentThread().isInterrupted()) {
+		if (NFAAnalysisTools.isInterrupted()) {
 			throw new InterruptedException();
 		}
 
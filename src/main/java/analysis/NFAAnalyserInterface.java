@@ -14,6 +14,7 @@ public interface NFAAnalyserInterface {
 		NO_IDA,
 		TIMEOUT_IN_EDA,
 		TIMEOUT_IN_IDA,
+		BUDGET_EXCEEDED,
 		ANALYSIS_FAILED
 		
 	}
@@ -51,6 +52,12 @@ public interface NFAAnalyserInterface {
 			this.parallelEdge = parallelEdge;
 		}
 
+		@Override
+		void freeze() {
+			super.freeze();
+			mergedScc.freeze();
+		}
+
 	}
 	
 	static final class EdaAnalysisResultsESCC extends EdaAnalysisResults {
@@ -77,6 +84,12 @@ public interface NFAAnalyserInterface {
 			this.entranceEdge = startEdge;
 			this.exitEdge = endEdge;
 		}
+
+		@Override
+		void freeze() {
+			super.freeze();
+			originalScc.freeze();
+		}
 	}
 	
 	static final class EdaAnalysisResultsFilter extends EdaAnalysisResults {		
@@ -100,6 +113,12 @@ public interface NFAAnalyserInterface {
 			this.startState = startState;
 			this.endState = endState;
 		}
+
+		@Override
+		void freeze() {
+			super.freeze();
+			pcScc.freeze();
+		}
 	}
 	
 	static final class IdaAnalysisResultsNoIda extends IdaAnalysisResults {
@@ -138,5 +157,19 @@ public interface NFAAnalyserInterface {
 	
 	public ExploitString findIDAExploitString(NFAGraph m) throws InterruptedException;
 
+	/**
+	 * @param metrics
+	 *            Where to record the sizes of the graphs built by the
+	 *            following analyses, or null to stop recording them.
+	 */
+	public void setMetrics(AnalysisMetrics metrics);
+
+	/**
+	 * @param budget
+	 *            The budget the following analyses run under on the calling
+	 *            thread, or null if they have none.
+	 */
+	public void setBudget(AnalysisBudget budget);
+
 
 }
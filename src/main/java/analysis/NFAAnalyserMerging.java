@@ -27,6 +27,14 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 		super(priorityRemovalStrategy);
 	}
 
+	public NFAAnalyserMerging(PriorityRemovalStrategy priorityRemovalStrategy, AnalysisResultsCache sharedResultsCache) {
+		super(priorityRemovalStrategy, sharedResultsCache);
+	}
+
+	public NFAAnalyserMerging(PriorityRemovalStrategy priorityRemovalStrategy, AnalysisResultsCache sharedResultsCache, boolean shouldReduceBisimilarStates) {
+		super(priorityRemovalStrategy, sharedResultsCache, shouldReduceBisimilarStates);
+	}
+
 	private EdaAnalysisResults testCaseESCC(NFAGraph originalM, LinkedList<NFAGraph> sccsInOriginal, Map<NFAVertexND, NFAGraph> esccs) throws InterruptedException {
 
 		/* mapping SCCs to the ESCC's in them */
@@ -176,8 +184,13 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
+		merged = reduceIfEnabled(merged);
 		
 		LinkedList<NFAGraph> sccsInMerged = NFAAnalysisTools.getStronglyConnectedComponents(merged);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(merged);
+			metrics.setNumSccs(sccsInMerged.size());
+		}
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
@@ -215,6 +228,9 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 	protected EdaAnalysisResults calculateEdaUnprioritisedAnalysisResults(NFAGraph originalM) throws InterruptedException {
 		NFAGraph merged = originalM.copy();
 		NFAAnalysisTools.mergeStronglyConnectedComponents(merged, true);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(merged);
+		}
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
@@ -235,15 +251,19 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 	protected IdaAnalysisResults calculateIdaAnalysisResults(NFAGraph originalM) throws InterruptedException {
 		NFAGraph merged = originalM.copy();
 		NFAAnalysisTools.mergeStronglyConnectedComponents(merged, true);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(merged);
+		}
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
 		
 		//merged = NFAAnalysisTools.makeTrim(merged);
+		merged = reduceIfEnabled(merged);
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
-		
+
 		IdaAnalysisResults toReturn = new IdaAnalysisResultsNoIda(originalM);
 		toReturn.setPriorityRemovalStrategy(PriorityRemovalStrategy.IGNORE);
 
@@ -258,6 +278,9 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 	protected IdaAnalysisResults calculateIdaUnprioritisedAnalysisResults(NFAGraph originalM) throws InterruptedException {
 		NFAGraph merged = originalM.copy();
 		NFAAnalysisTools.mergeStronglyConnectedComponents(merged, true);
+		if (metrics != null) {
+			metrics.recordAnalysisGraph(merged);
+		}
 		if (isInterrupted()) {
 			throw new InterruptedException();
 		}
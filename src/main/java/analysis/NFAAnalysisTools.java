@@ -1,18 +1,23 @@
 package analysis;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeMap;
 
 import org.jgrapht.Graph;
 import org.jgrapht.alg.connectivity.KosarajuStrongConnectivityInspector;
 
+import nfa.CompactNFAGraph;
 import nfa.NFAGraph;
 import nfa.NFAVertexND;
 import nfa.UPNFAState;
@@ -21,6 +26,9 @@ import nfa.FilterEdge;
 import nfa.transitionlabel.TransitionLabel;
 import nfa.transitionlabel.CharacterClassTransitionLabel;
 import nfa.transitionlabel.EmptyTransitionLabelException;
+import nfa.transitionlabel.MintermPartition;
+import nfa.transitionlabel.TransitionLabelParserRecursive;
+import util.LongIntHashMap;
 
 
 public class NFAAnalysisTools {
@@ -140,93 +148,248 @@ public class NFAAnalysisTools {
 		return afafa;
 	}
 
+	/**
+	 * Sets up the product construction of a graph using the Mohri filter
+	 * without building it. The states and transitions are the same as those
+	 * of productConstructionAFA, but are only generated as they are visited.
+	 *
+	 * @param m
+	 *            The NFA to get the product construction of.
+	 * @return The lazy NFA representing the product construction.
+	 */
+	public static LazyProductNFA lazyProductConstructionAFA(NFAGraph m) {
+		NFAGraph m2 = m.copy();
+		NFAAnalysisTools.prepareForFilter(m2, "ε1", "ε2");
+		LazyProductNFA m1 = new LazyProductNFA.FilterPrepared(new LazyProductNFA.Operand(m), parseLabel("ε2"), parseLabel("ε1"));
+		LazyProductNFA af = new LazyProductNFA.Product(m1, NFAAnalysisTools.createFilter());
+		return new LazyProductNFA.Product(af, m2);
+	}
+
+	/**
+	 * Sets up the same product as productConstructionAFAFA without building
+	 * it, so that its states and transitions are only generated as they are
+	 * visited.
+	 *
+	 * @param m
+	 *            The NFA to get the product construction of.
+	 * @return The lazy NFA representing the product construction.
+	 */
+	public static LazyProductNFA lazyProductConstructionAFAFA(NFAGraph m) {
+		NFAGraph m2 = m.copy();
+		NFAGraph f = NFAAnalysisTools.createFilter();
+		NFAAnalysisTools.prepareForFilter(m2, "ε1", "ε2");
+		LazyProductNFA m1 = new LazyProductNFA.FilterPrepared(new LazyProductNFA.Operand(m), parseLabel("ε2"), parseLabel("ε1"));
+		LazyProductNFA af = new LazyProductNFA.Product(m1, f);
+		LazyProductNFA afa = new LazyProductNFA.Product(af, m2);
+		/*
+		 * Changing the existing epsilon transitions and adding the epsilon self
+		 * loops
+		 */
+		LazyProductNFA preparedAfa = new LazyProductNFA.FilterPrepared(afa, parseLabel("ε2"), parseLabel("ε1"));
+		LazyProductNFA afaf = new LazyProductNFA.Product(preparedAfa, f);
+		return new LazyProductNFA.Product(afaf, m2);
+	}
+
+	private static TransitionLabel parseLabel(String transitionLabelString) {
+		return new TransitionLabelParserRecursive(transitionLabelString).parseTransitionLabel();
+	}
+
 	public static NFAGraph productConstruction(NFAGraph m1, NFAGraph m2, HashMap<NFAEdge, TransitionLabel> originalWords) throws InterruptedException {
+		/* The original word of every edge of m1, looked up once instead of for every product state */
+		NFAEdge[] m1Edges = CompactNFAGraph.edgesOf(m1);
+		TransitionLabel[] m1OriginalWords = new TransitionLabel[m1Edges.length];
+		for (int e = 0; e < m1Edges.length; e++) {
+			m1OriginalWords[e] = originalWords.get(m1Edges[e]);
+		}
+		return productConstruction(CompactNFAGraph.fromNFAGraph(m1), CompactNFAGraph.statesOf(m1), m1OriginalWords, CompactNFAGraph.fromNFAGraph(m2), CompactNFAGraph.statesOf(m2), originalWords);
+	}
+
+	/**
+	 * Calculates the product construction of two NFAs, given in their compact
+	 * representations, so that the states and labels can be looked up by
+	 * number instead of by hashing vertices and comparing labels. The vertices
+	 * of the NFAs are only needed for the vertices of the product.
+	 *
+	 * @param m1OriginalWords
+	 *            The original word of each edge of m1, or null for the edges
+	 *            whose original word is their label.
+	 */
+	private static NFAGraph productConstruction(CompactNFAGraph m1, NFAVertexND[] m1States, TransitionLabel[] m1OriginalWords, CompactNFAGraph m2, NFAVertexND[] m2States, HashMap<NFAEdge, TransitionLabel> originalWords) throws InterruptedException {
 		NFAGraph productConstruction = new NFAGraph();
 
-		NFAVertexND m1SourceState, m2SourceState;
-		m1SourceState = m1.getInitialState();
-		m2SourceState = m2.getInitialState();
+		int[] m1OriginalWordNumbers = new int[m1.getNumEdges()];
+		HashMap<TransitionLabel, Integer> originalWordNumbers = new HashMap<TransitionLabel, Integer>();
+		for (int e = 0; e < m1.getNumEdges(); e++) {
+			TransitionLabel originalWord = m1OriginalWords[e];
+			if (originalWord == null) {
+				originalWord = m1.getLabel(m1.getEdgeLabel(e));
+			}
+			Integer originalWordNumber = originalWordNumbers.get(originalWord);
+			if (originalWordNumber == null) {
+				originalWordNumber = originalWordNumbers.size();
+				originalWordNumbers.put(originalWord, originalWordNumber);
+			}
+			m1OriginalWords[e] = originalWord;
+			m1OriginalWordNumbers[e] = originalWordNumber;
+		}
+		/* The character classes are matched and intersected as sets of the minterms of all the labels of the product */
+		ArrayList<TransitionLabel> productLabels = new ArrayList<TransitionLabel>(originalWordNumbers.keySet());
+		for (int label = 0; label < m1.getNumLabels(); label++) {
+			productLabels.add(m1.getLabel(label));
+		}
+		for (int label = 0; label < m2.getNumLabels(); label++) {
+			productLabels.add(m2.getLabel(label));
+		}
+		MintermPartition partition = new MintermPartition(productLabels);
+		BitSet[] m1LabelMinterms = labelMinterms(m1, partition);
+		BitSet[] m2LabelMinterms = labelMinterms(m2, partition);
+		BitSet[] originalWordMinterms = new BitSet[originalWordNumbers.size()];
+		for (Map.Entry<TransitionLabel, Integer> originalWordNumber : originalWordNumbers.entrySet()) {
+			originalWordMinterms[originalWordNumber.getValue()] = partition.getMinterms(originalWordNumber.getKey());
+		}
+		/* Equal intersections share one label */
+		HashMap<BitSet, TransitionLabel> mintermLabels = new HashMap<BitSet, TransitionLabel>();
+		/* Whether an edge of m2 is a transition for a word only depends on the labels, so the results are cached */
+		byte[] matchCache = null;
+		long matchCacheSize = 2L * m2.getNumLabels() * m1.getNumLabels();
+		if (matchCacheSize <= MAX_MATCH_CACHE_SIZE) {
+			matchCache = new byte[(int) matchCacheSize];
+		}
+		HashMap<Long, TransitionLabel> intersections = new HashMap<Long, TransitionLabel>();
 
-		int m1Dimensions = m1SourceState.getNumDimensions();
-		int m2Dimensions = m2SourceState.getNumDimensions();
-		NFAVertexND firstVertex = new NFAVertexND(m1SourceState, m2SourceState);
+		int m1SourceState = m1.getInitialState();
+		int m2SourceState = m2.getInitialState();
+		NFAVertexND firstVertex = new NFAVertexND(m1States[m1SourceState], m2States[m2SourceState]);
 
-		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>();
+		/*
+		 * The product states are numbered in the order they are discovered,
+		 * which is also the order they are visited in. Each state is
+		 * identified by its pair of state numbers packed into a long, so
+		 * finding out whether a state was seen before does not require
+		 * building and hashing a vertex.
+		 */
+		LongIntHashMap productStateNumbers = new LongIntHashMap();
+		ArrayList<NFAVertexND> productStates = new ArrayList<NFAVertexND>();
+		long[] productStateKeys = new long[INITIAL_PRODUCT_STATES_CAPACITY];
 		/* Adding the initial state */
-		toVisit.add(firstVertex);
+		productStateKeys[0] = packProductState(m1SourceState, m2SourceState);
+		productStateNumbers.put(productStateKeys[0], 0);
+		productStates.add(firstVertex);
 		productConstruction.addVertex(firstVertex);
+		AnalysisBudget budget = AnalysisBudget.getCurrent();
+		if (budget != null) {
+			budget.chargeProductStates(1);
+		}
 
 		productConstruction.setInitialState(firstVertex);
-		while (!toVisit.isEmpty()) {
-			if (Thread.currentThread().isInterrupted()) {
+		int nextToVisit = 0;
+		while (nextToVisit < productStates.size()) {
+			if (isInterrupted()) {
 				throw new InterruptedException();
 			}
-			NFAVertexND sourceVertex = toVisit.poll();
-			m1SourceState = sourceVertex.getStateByDimensionRange(1, 1 + m1Dimensions);
-			m2SourceState = sourceVertex.getStateByDimensionRange(1 + m1Dimensions, 1 + m1Dimensions + m2Dimensions);
+			long sourceKey = productStateKeys[nextToVisit];
+			NFAVertexND sourceVertex = productStates.get(nextToVisit);
+			nextToVisit++;
+			m1SourceState = (int) (sourceKey >>> 32);
+			m2SourceState = (int) sourceKey;
 			/* see if the current vertex is accepting */
 			if (m1.isAcceptingState(m1SourceState) && m2.isAcceptingState(m2SourceState)) {
 				productConstruction.addAcceptingState(sourceVertex);
 			}
 			
-			for (NFAEdge currentM1Edge : m1.outgoingEdgesOf(m1SourceState)) {
-				if (Thread.currentThread().isInterrupted()) {
+			for (int currentM1Edge = m1.getEdgesFrom(m1SourceState); currentM1Edge < m1.getEdgesTo(m1SourceState); currentM1Edge++) {
+				if (isInterrupted()) {
 					throw new InterruptedException();
 				}
 
-				int m1NumParallel = currentM1Edge.getNumParallel();
+				int m1NumParallel = m1.getEdgeNumParallel(currentM1Edge);
 
-				NFAVertexND m1TargetState = currentM1Edge.getTargetVertex();
-				TransitionLabel word = currentM1Edge.getTransitionLabel();
+				int m1TargetState = m1.getEdgeTarget(currentM1Edge);
+				int wordNumber = m1.getEdgeLabel(currentM1Edge);
+				TransitionLabel word = m1.getLabel(wordNumber);
 				
-				TransitionLabel originalWord = word;
-				if (originalWords.containsKey(currentM1Edge)) {
-					/* This edge changed the word, find it's original value */
-					originalWord = originalWords.get(currentM1Edge);
-				}
+				TransitionLabel originalWord = m1OriginalWords[currentM1Edge];
 				
-				for (NFAEdge currentM2Edge : m2.outgoingEdgesOf(m2SourceState)) {
-					if (Thread.currentThread().isInterrupted()) {
+				for (int currentM2Edge = m2.getEdgesFrom(m2SourceState); currentM2Edge < m2.getEdgesTo(m2SourceState); currentM2Edge++) {
+					if (isInterrupted()) {
 						throw new InterruptedException();
 					}
-					if (!currentM2Edge.isTransitionFor(word)) {
+					boolean isFilterEdge = m2.getEdgeOutputLabel(currentM2Edge) != CompactNFAGraph.NO_LABEL;
+					BitSet wordMinterms = m1LabelMinterms[wordNumber];
+					BitSet m2Minterms = m2LabelMinterms[m2.getEdgeLabel(currentM2Edge)];
+					if (!isFilterEdge && wordMinterms != null && m2Minterms != null) {
+						if (!wordMinterms.intersects(m2Minterms)) {
+							/* current edge can't handle word */
+							continue;
+						}
+					} else if (!isTransitionFor(m2, currentM2Edge, isFilterEdge, word, wordNumber, m1.getNumLabels(), matchCache)) {
 						/* current edge can't handle word */
 						continue;
 					}
 					
 					
-					int m2NumParallel = currentM2Edge.getNumParallel();
-					NFAVertexND m2TargetState = currentM2Edge.getTargetVertex();
+					int m2NumParallel = m2.getEdgeNumParallel(currentM2Edge);
+					int m2TargetState = m2.getEdgeTarget(currentM2Edge);
 
-					NFAVertexND targetVertex = new NFAVertexND(m1TargetState, m2TargetState);
+					long targetKey = packProductState(m1TargetState, m2TargetState);
+					int targetNumber = productStateNumbers.get(targetKey);
+					NFAVertexND targetVertex;
 					/* ensure each state is only visited once */
-					if (!productConstruction.containsVertex(targetVertex)) {
-						toVisit.add(targetVertex);
+					if (targetNumber == LongIntHashMap.NOT_FOUND) {
+						targetNumber = productStates.size();
+						targetVertex = new NFAVertexND(m1States[m1TargetState], m2States[m2TargetState]);
+						if (targetNumber == productStateKeys.length) {
+							productStateKeys = Arrays.copyOf(productStateKeys, 2 * productStateKeys.length);
+						}
+						productStateKeys[targetNumber] = targetKey;
+						productStateNumbers.put(targetKey, targetNumber);
+						productStates.add(targetVertex);
 						productConstruction.addVertex(targetVertex);
+						if (budget != null) {
+							budget.chargeProductStates(1);
+						}
+					} else {
+						targetVertex = productStates.get(targetNumber);
 					}
 					
 					NFAEdge newEdge = new NFAEdge(sourceVertex, targetVertex, originalWord);
 					
-					if (isFilterEdge(currentM2Edge)) {
+					if (isFilterEdge) {
 						/*
 						 * swap out the current character for the filter's
 						 * output character
 						 */
-						FilterEdge fEdge = (FilterEdge) currentM2Edge;
-						if (fEdge.getIsEpsilonTransition()) {
+						if (m2.isEpsilonEdge(currentM2Edge)) {
 							/*
 							 * Storing the original name of the edge in the
 							 * outgoing transition character
 							 */
-							newEdge.setTransitionLabel(fEdge.getOutGoingTransitionCharacter());
+							newEdge.setTransitionLabel(m2.getLabel(m2.getEdgeOutputLabel(currentM2Edge)));
 							originalWords.put(newEdge, originalWord);
 						}
 					} else {
 						
-						if (!currentM2Edge.getIsEpsilonTransition()) {
+						if (!m2.isEpsilonEdge(currentM2Edge)) {
 							
-							TransitionLabel tl2 = currentM2Edge.getTransitionLabel();
-							TransitionLabel intersection = originalWord.intersection(tl2);
+							int m2LabelNumber = m2.getEdgeLabel(currentM2Edge);
+							long intersectionKey = ((long) m1OriginalWordNumbers[currentM1Edge] << 32) | m2LabelNumber;
+							TransitionLabel intersection = intersections.get(intersectionKey);
+							if (intersection == null) {
+								BitSet intersectionMinterms = originalWordMinterms[m1OriginalWordNumbers[currentM1Edge]];
+								if (intersectionMinterms == null) {
+									/* epsilon transition labels cannot be intersected */
+									intersection = originalWord.intersection(m2.getLabel(m2LabelNumber));
+								} else {
+									intersectionMinterms = (BitSet) intersectionMinterms.clone();
+									intersectionMinterms.and(m2LabelMinterms[m2LabelNumber]);
+									intersection = mintermLabels.get(intersectionMinterms);
+									if (intersection == null) {
+										intersection = partition.toLabel(intersectionMinterms);
+										mintermLabels.put(intersectionMinterms, intersection);
+									}
+								}
+								intersections.put(intersectionKey, intersection);
+							}
 							newEdge.setTransitionLabel(intersection);
 						}
 					}
@@ -240,6 +403,48 @@ public class NFAAnalysisTools {
 		return productConstruction;
 	}
 
+	private static final int INITIAL_PRODUCT_STATES_CAPACITY = 64;
+
+	/**
+	 * Packs the state numbers of the two NFAs in a product state into one long.
+	 * Since the first NFA may itself be a product, the 3-way and 5-way
+	 * products used by the filter tests still only need one long per state.
+	 */
+	private static long packProductState(int m1State, int m2State) {
+		return ((long) m1State << 32) | (m2State & 0xffffffffL);
+	}
+
+	/**
+	 * @return The minterms of each label of the NFA, indexed by label number, with null for the epsilon transition labels.
+	 */
+	private static BitSet[] labelMinterms(CompactNFAGraph m, MintermPartition partition) {
+		BitSet[] labelMinterms = new BitSet[m.getNumLabels()];
+		for (int label = 0; label < m.getNumLabels(); label++) {
+			labelMinterms[label] = partition.getMinterms(m.getLabel(label));
+		}
+		return labelMinterms;
+	}
+
+	private static final long MAX_MATCH_CACHE_SIZE = 1 << 24;
+
+	private static final byte MATCH_UNKNOWN = 0;
+	private static final byte MATCH_TRUE = 1;
+	private static final byte MATCH_FALSE = 2;
+
+	private static boolean isTransitionFor(CompactNFAGraph m2, int m2Edge, boolean isFilterEdge, TransitionLabel word, int wordNumber, int numWords, byte[] matchCache) {
+		if (matchCache == null) {
+			return m2.isTransitionFor(m2Edge, word);
+		}
+		/* filter edges match differently from ordinary edges with the same label */
+		int labelClass = 2 * m2.getEdgeLabel(m2Edge) + (isFilterEdge ? 1 : 0);
+		int cacheIndex = labelClass * numWords + wordNumber;
+		if (matchCache[cacheIndex] == MATCH_UNKNOWN) {
+			boolean matches = m2.isTransitionFor(m2Edge, word);
+			matchCache[cacheIndex] = matches ? MATCH_TRUE : MATCH_FALSE;
+		}
+		return matchCache[cacheIndex] == MATCH_TRUE;
+	}
+
 	/* Trims away states not reachable form start */
 	public static NFAGraph makeTrimFromStart(NFAGraph m)  throws InterruptedException {
 		NFAGraph trimmed = m.copy();
@@ -284,7 +489,7 @@ public class NFAAnalysisTools {
 			usefulStates.add(acceptingState);
 		}
 		for (NFAVertexND currentVertex : vSet) {
-			if (Thread.currentThread().isInterrupted()) {
+			if (isInterrupted()) {
 				throw new InterruptedException();
 			}
 			
@@ -518,8 +723,145 @@ public class NFAAnalysisTools {
 		
 		return resultGraph;
 	}
-	
-	
+
+	/**
+	 * Merges the states of an NFA graph that are weighted bisimilar: states
+	 * that agree on acceptance and, for every transition label and every class
+	 * of bisimilar states, have the same number of transitions (counting
+	 * parallel edges) to the class. The merged states have the same number of
+	 * walks for every word as the states they replace, so the multiple walks
+	 * the EDA and IDA tests look for, including the parallel edges, are kept.
+	 * All epsilon labels are treated as equal, since their priorities are
+	 * ignored by the tests.
+	 *
+	 * @param m
+	 *            The NFA graph to reduce.
+	 * @return The reduced graph, with the first state of each class (or the
+	 *         initial state) standing in for the class, or m itself if no
+	 *         states are bisimilar.
+	 * @throws InterruptedException
+	 */
+	public static NFAGraph reduceBisimilarStates(NFAGraph m) throws InterruptedException {
+		ArrayList<NFAVertexND> vertices = new ArrayList<NFAVertexND>(m.vertexSet());
+		int numVertices = vertices.size();
+		HashMap<NFAVertexND, Integer> vertexNumbers = new HashMap<NFAVertexND, Integer>();
+		for (int i = 0; i < numVertices; i++) {
+			vertexNumbers.put(vertices.get(i), i);
+		}
+
+		/* The label of every outgoing edge as a number, with 0 for epsilon labels */
+		HashMap<TransitionLabel, Integer> labelNumbers = new HashMap<TransitionLabel, Integer>();
+		int[][] edgeLabels = new int[numVertices][];
+		int[][] edgeTargets = new int[numVertices][];
+		int[][] edgeWeights = new int[numVertices][];
+		for (int i = 0; i < numVertices; i++) {
+			Set<NFAEdge> outgoingEdges = m.outgoingEdgesOf(vertices.get(i));
+			edgeLabels[i] = new int[outgoingEdges.size()];
+			edgeTargets[i] = new int[outgoingEdges.size()];
+			edgeWeights[i] = new int[outgoingEdges.size()];
+			int edgeNumber = 0;
+			for (NFAEdge e : outgoingEdges) {
+				if (e.getIsEpsilonTransition()) {
+					edgeLabels[i][edgeNumber] = 0;
+				} else {
+					Integer labelNumber = labelNumbers.get(e.getTransitionLabel());
+					if (labelNumber == null) {
+						labelNumber = labelNumbers.size() + 1;
+						labelNumbers.put(e.getTransitionLabel(), labelNumber);
+					}
+					edgeLabels[i][edgeNumber] = labelNumber;
+				}
+				edgeTargets[i][edgeNumber] = vertexNumbers.get(e.getTargetVertex());
+				edgeWeights[i][edgeNumber] = e.getNumParallel();
+				edgeNumber++;
+			}
+		}
+
+		/* Refine the partition into accepting and other states until the signatures of the states in a class agree */
+		int[] classes = new int[numVertices];
+		for (int i = 0; i < numVertices; i++) {
+			classes[i] = m.isAcceptingState(vertices.get(i)) ? 1 : 0;
+		}
+		int numClasses = -1;
+		while (true) {
+			if (isInterrupted()) {
+				throw new InterruptedException();
+			}
+			HashMap<List<Long>, Integer> signatureClasses = new HashMap<List<Long>, Integer>();
+			int[] newClasses = new int[numVertices];
+			for (int i = 0; i < numVertices; i++) {
+				/* the number of transitions to each class, by label */
+				TreeMap<Long, Long> weights = new TreeMap<Long, Long>();
+				for (int j = 0; j < edgeLabels[i].length; j++) {
+					long labelClass = (long) edgeLabels[i][j] * numVertices + classes[edgeTargets[i][j]];
+					Long weight = weights.get(labelClass);
+					weights.put(labelClass, (weight == null ? 0 : weight) + edgeWeights[i][j]);
+				}
+				ArrayList<Long> signature = new ArrayList<Long>(2 * weights.size() + 1);
+				signature.add((long) classes[i]);
+				for (Map.Entry<Long, Long> weight : weights.entrySet()) {
+					signature.add(weight.getKey());
+					signature.add(weight.getValue());
+				}
+				Integer newClass = signatureClasses.get(signature);
+				if (newClass == null) {
+					newClass = signatureClasses.size();
+					signatureClasses.put(signature, newClass);
+				}
+				newClasses[i] = newClass;
+			}
+			classes = newClasses;
+			if (signatureClasses.size() == numClasses) {
+				break;
+			}
+			numClasses = signatureClasses.size();
+		}
+		if (numClasses == numVertices) {
+			return m;
+		}
+
+		int initialState = vertexNumbers.get(m.getInitialState());
+		int[] representatives = new int[numClasses];
+		Arrays.fill(representatives, -1);
+		representatives[classes[initialState]] = initialState;
+		for (int i = 0; i < numVertices; i++) {
+			if (representatives[classes[i]] == -1) {
+				representatives[classes[i]] = i;
+			}
+		}
+		NFAGraph reduced = new NFAGraph();
+		for (int i = 0; i < numVertices; i++) {
+			NFAVertexND v = vertices.get(i);
+			if (representatives[classes[i]] == i) {
+				reduced.addVertex(v);
+				if (m.isAcceptingState(v)) {
+					reduced.addAcceptingState(v);
+				}
+			}
+		}
+		reduced.setInitialState(vertices.get(initialState));
+		for (NFAVertexND v : reduced.vertexSet()) {
+			if (isInterrupted()) {
+				throw new InterruptedException();
+			}
+			/* edges with the same label to states of the same class become one edge, with all their parallel edges */
+			LinkedHashMap<NFAEdge, Integer> mergedEdges = new LinkedHashMap<NFAEdge, Integer>();
+			for (NFAEdge e : m.outgoingEdgesOf(v)) {
+				NFAVertexND target = vertices.get(representatives[classes[vertexNumbers.get(e.getTargetVertex())]]);
+				NFAEdge mergedEdge = new NFAEdge(v, target, e.getTransitionLabel());
+				Integer weight = mergedEdges.get(mergedEdge);
+				mergedEdges.put(mergedEdge, (weight == null ? 0 : weight) + e.getNumParallel());
+			}
+			for (Map.Entry<NFAEdge, Integer> mergedEdge : mergedEdges.entrySet()) {
+				NFAEdge newEdge = mergedEdge.getKey();
+				newEdge.setNumParallel(mergedEdge.getValue());
+				reduced.addEdge(newEdge);
+			}
+		}
+		return reduced;
+	}
+
+
 
 	/**
 	 * Constructs a list of NFA graphs each representing a strongly connected
@@ -780,37 +1122,8 @@ public class NFAAnalysisTools {
 	}
 
 	public static LinkedList<NFAEdge> shortestPathBetween(NFAGraph m, NFAVertexND start, NFAVertexND finish) {
-
-		HashMap<NFAVertexND, LinkedList<NFAEdge>> pathToMap = new HashMap<NFAVertexND, LinkedList<NFAEdge>>();
-		HashSet<NFAEdge> traversed = new HashSet<NFAEdge>();
-
-		LinkedList<NFAVertexND> queue = new LinkedList<NFAVertexND>();
-		NFAVertexND firstVertex = start;
-		LinkedList<NFAEdge> emptyPath = new LinkedList<NFAEdge>();
-		queue.add(firstVertex);
-		pathToMap.put(firstVertex, emptyPath);
-		
-		while (!queue.isEmpty()) {
-			NFAVertexND currentVertex = queue.removeLast();
-			LinkedList<NFAEdge> currentPath = pathToMap.get(currentVertex);
-			if (currentVertex.equals(finish)) {
-				return currentPath;
-			}	
-			for (NFAEdge e : m.outgoingEdgesOf(currentVertex)) {
-				if (!traversed.contains(e)) {
-					traversed.add(e);
-
-					NFAVertexND target = e.getTargetVertex();
-					LinkedList<NFAEdge> newPath = new LinkedList<NFAEdge>(currentPath);
-					newPath.add(e);
-					pathToMap.put(target, newPath);
-
-					queue.addFirst(target);
-				}
-			}
-		}
-
-		return null;
+		/* the search trees are kept with the graph, so repeated queries do not search it again */
+		return m.getShortestPaths().pathBetween(start, finish);
 	}
 	
 	public static HashSet<NFAVertexND> reachableWithEpsilon(NFAGraph n, NFAVertexND v) {
@@ -837,266 +1150,8 @@ public class NFAAnalysisTools {
 	}
 	
 	public static NFAGraph determinize(NFAGraph input, Set<NFAVertexND> reachableFromStart, Set<TransitionLabel> alphabet) throws InterruptedException {
-		NFAGraph dfa = new NFAGraph();
-		
 		/* http://www.cse.unsw.edu.au/~rvg/pub/nfadfa.pdf */
-		//NFAVertexND startState = input.getInitialState();
-		//HashSet<Integer> reachableFromStart = reachableWithEpsilon(input, startState);
-		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>();		
-		
-		LinkedList<NFAVertexND> sortedReachableFromStart = new LinkedList<NFAVertexND>(reachableFromStart);
-		Collections.sort(sortedReachableFromStart);
-		StringBuilder labelBuilder = new StringBuilder();
-		Iterator<NFAVertexND> i0 = sortedReachableFromStart.iterator();
-		while (i0.hasNext()) {
-			if (isInterrupted()) {
-				throw new InterruptedException();
-			}
-			NFAVertexND startState = i0.next();
-			List<String> subStates = startState.getStates();
-			if (subStates.size() == 1) {
-				String currentLabel = subStates.iterator().next();
-				labelBuilder.append(currentLabel);
-				
-			} else {
-				Iterator<String> i1 = subStates.iterator();
-				labelBuilder.append("(");
-				while (i1.hasNext()) {
-					String currentLabel = i1.next();
-					labelBuilder.append(currentLabel);
-					if (i1.hasNext()) {
-						labelBuilder.append(", ");
-					}
-				}
-				labelBuilder.append(")");
-
-			}
-			if (i0.hasNext()) {
-				labelBuilder.append(", ");
-			}
-			
-		}
-		
-		
-		/* note dfa states are not multidimensional */
-		NFAVertexND dfaStartState = new NFAVertexND(labelBuilder.toString());
-		toVisit.add(dfaStartState);
-		HashMap<NFAVertexND, Set<NFAVertexND>> dfaStateToSubStatesMap = new HashMap<NFAVertexND, Set<NFAVertexND>>();
-		dfaStateToSubStatesMap.put(dfaStartState, reachableFromStart);
-		
-		dfa.addVertex(dfaStartState);
-		dfa.setInitialState(dfaStartState);
-		for (NFAVertexND i : reachableFromStart) {
-			if (isInterrupted()) {
-				throw new InterruptedException();
-			}
-			if (input.isAcceptingState(i)) {
-				dfa.addAcceptingState(dfaStartState);
-			}
-			
-		}
-		
-		NFAVertexND emptyState = new NFAVertexND(0);
-		
-		
-		while (!toVisit.isEmpty()) {
-			if (isInterrupted()) {
-				throw new InterruptedException();
-			}
-			
-			NFAVertexND P = toVisit.removeLast();
-			/* with the label in TransitionLabel, P can get to the states in HashSet<NFAvertexND> */
-			HashMap<TransitionLabel, HashSet<NFAVertexND>> newStates = new HashMap<TransitionLabel, HashSet<NFAVertexND>>();
-			Set<NFAVertexND> subStates = dfaStateToSubStatesMap.get(P);
-			for (NFAVertexND currentSubState : subStates) {
-				if (isInterrupted()) {
-					throw new InterruptedException();
-				}
-				for (NFAEdge e : input.outgoingEdgesOf(currentSubState)) {
-					if (isInterrupted()) {
-						throw new InterruptedException();
-					}
-					if (!e.getIsEpsilonTransition()) {
-						TransitionLabel label = e.getTransitionLabel();
-						NFAVertexND targetState = e.getTargetVertex();
-						//HashSet<NFAVertexND> newState = newStates.getOrDefault(label, new HashSet<NFAVertexND>());
-						HashSet<NFAVertexND> newState;
-						if (newStates.containsKey(label)) {
-							newState = newStates.get(label);
-						} else {
-							newState = new HashSet<NFAVertexND>();
-						}
-
-
-						if (!newState.contains(targetState)) {
-							newState.add(targetState);
-						}
-						
-						/* If there isn't another outgoing label exactly like this one, check for other overlapping labels */
-						if (!newStates.containsKey(label)) {
-							/* Copying entries, to avoid concurrent modification errors */
-							Set<Map.Entry<TransitionLabel, HashSet<NFAVertexND>>> entries = new HashSet<Map.Entry<TransitionLabel, HashSet<NFAVertexND>>>(newStates.entrySet());
-							for (Map.Entry<TransitionLabel, HashSet<NFAVertexND>> kv : entries) {
-								if (isInterrupted()) {
-									throw new InterruptedException();
-								}
-								TransitionLabel tl1 = kv.getKey();
-							
-								TransitionLabel intersection = tl1.intersection(label);
-								if (!intersection.isEmpty()) {
-									//System.out.println(tl1 + " " + symbol + " " + intersection);
-									/* the transition labels over lap. For a DFA we need to 
-									 * ensure that all character class labels are disjoint.
-									 * We can do this by ensuring the original class (tl1Copy) without the intersecting part of 
-									 * the new class (symbol) goes to the original states
-									 * the new class (symbol) without the intersecting part of the orignal class (tl1Copy) 
-									 * goes to the new states.
-									 * the intersection goes to both the classes.
-									 *  */
-									
-									HashSet<NFAVertexND> tmpVertices =  newStates.remove(kv.getKey());
-									TransitionLabel uniqueTl1 = tl1.intersection(label.complement());
-									if (!uniqueTl1.isEmpty()) {
-										//System.out.println("1: " + uniqueTl1 + " " + tmpVertices);
-										newStates.put(uniqueTl1, tmpVertices);
-									}									
-									
-								
-									HashSet<NFAVertexND> unionStates = new HashSet<NFAVertexND>(tmpVertices);
-									unionStates.addAll(newState);
-									//System.out.println("2: " + intersection + " " + unionStates);
-									/* We know intersection is not empty */
-									newStates.put(intersection, unionStates);
-									label = label.intersection(tl1.complement());
-								}
-							
-							}
-						}
-						if (!label.isEmpty()) {
-							//System.out.println("3: " + symbol + " " + newState);
-							newStates.put(label, newState);
-						}
-						
-					}
-				}
-			}
-			//System.out.println(P + "\t\t" + newStates);
-			/* Finding all the ranges in the alphabet not accounted for */
-			for (TransitionLabel s : alphabet) {
-				if (isInterrupted()) {
-					throw new InterruptedException();
-				}
-				TransitionLabel toEmptyState = s;
-				/* for each range accounted for, remove it from the current alphabet range */
-				for (TransitionLabel tl : newStates.keySet()) {
-					if (isInterrupted()) {
-						throw new InterruptedException();
-					}
-					toEmptyState = toEmptyState.intersection(tl.complement());
-					if (toEmptyState.isEmpty()) {
-						break;
-					}
-				}
-				if (!toEmptyState.isEmpty()) {
-					//System.out.println("check: " + toEmptyState);
-					//System.out.println(toEmptyState);
-					if (!dfa.containsVertex(emptyState)) {
-						dfa.addVertex(emptyState);
-						for (TransitionLabel s2 : alphabet) {
-							
-							dfa.addEdge(new NFAEdge(emptyState, emptyState, s2));
-						}
-					}
-					dfa.addEdge(new NFAEdge(P, emptyState, toEmptyState));
-				}
-			}
-			
-			/*for (TransitionLabel s : alphabet) {
-				if (!newStates.containsKey(s)) {
-					if (!dfa.containsVertex(emptyState)) {
-						dfa.addVertex(emptyState);
-						for (TransitionLabel s2 : alphabet) {
-							dfa.addEdge(new NFAEdge(emptyState, emptyState, s2));
-						}
-					}
-					dfa.addEdge(new NFAEdge(P, emptyState, s));
-				}
-			}*/
-			
-			for (Map.Entry<TransitionLabel, HashSet<NFAVertexND>> kv : newStates.entrySet()) {
-				if (isInterrupted()) {
-					throw new InterruptedException();
-				}
-				TransitionLabel label = kv.getKey();
-				HashSet<NFAVertexND> reachableViaSymbolEpsilon = new HashSet<NFAVertexND>();
-				
-				for (NFAVertexND v : kv.getValue()) {
-					if (isInterrupted()) {
-						throw new InterruptedException();
-					}
-					reachableViaSymbolEpsilon.add(v);
-					HashSet<NFAVertexND> reachableViaEpsilon = reachableWithEpsilon(input, v);
-					reachableViaSymbolEpsilon.addAll(reachableViaEpsilon);
-				}
-				/* we sort the sub states, so that states with the same sub states are equal (since order matters in the PC, but not here) */
-				LinkedList<NFAVertexND> sortedReachableViaSymbolEpsilon = new LinkedList<NFAVertexND>(reachableViaSymbolEpsilon);
-				Collections.sort(sortedReachableViaSymbolEpsilon);
-				
-				labelBuilder = new StringBuilder();
-				Iterator<NFAVertexND> i1 = sortedReachableViaSymbolEpsilon.iterator();
-				while (i1.hasNext()) {
-					if (isInterrupted()) {
-						throw new InterruptedException();
-					}
-					NFAVertexND currentSubState = i1.next();
-					List<String> labelSubStates = currentSubState.getStates();
-					if (labelSubStates.size() == 1) {
-						String currentLabel = labelSubStates.iterator().next();
-						labelBuilder.append(currentLabel);
-						
-					} else {
-						/* TODO determinizing a multidimensional NFA is untested */
-						Iterator<String> i2 = labelSubStates.iterator();
-						labelBuilder.append("(");
-						while (i2.hasNext()) {
-							if (isInterrupted()) {
-								throw new InterruptedException();
-							}
-							String currentLabel = i2.next();
-							labelBuilder.append(currentLabel);
-							if (i2.hasNext()) {
-								labelBuilder.append(", ");
-							}
-						}
-						labelBuilder.append(")");
-
-					}
-					if (i1.hasNext()) {
-						labelBuilder.append(", ");
-					}
-					
-				}
-
-				
-				NFAVertexND stateToAdd = new NFAVertexND(labelBuilder.toString()); /* << build a label from sortedReachableViaSymbolEpsilon and store in map from stateToAdd to sortedReachableViaSymbolEpsilon */
-				dfaStateToSubStatesMap.put(stateToAdd, reachableViaSymbolEpsilon);
-				if (!dfa.containsVertex(stateToAdd)) {
-					toVisit.add(stateToAdd);
-					dfa.addVertex(stateToAdd);
-					for (NFAVertexND i : reachableViaSymbolEpsilon) {
-						if (input.isAcceptingState(i)) {
-							dfa.addAcceptingState(stateToAdd);
-						}
-						
-					}
-				}
-				//System.out.println(P + " " + " " + stateToAdd + " " + symbol);
-				dfa.addEdge(new NFAEdge(P, stateToAdd, label));				
-			}
-		}
-		
-		//System.out.println(dfa);
-		return dfa;
+		return new SubsetConstruction(input, alphabet).determinize(reachableFromStart);
 	}
 	
 	public static NFAGraph dfaIntersection(NFAGraph m1, NFAGraph m2) {
@@ -1194,12 +1249,17 @@ public class NFAAnalysisTools {
 		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>();
 		HashMap<NFAVertexND, Integer> oldNewMap = new HashMap<NFAVertexND, Integer>();
 		int orderCounter = 0;
-		toVisit.addLast(m.getInitialState());
+		/* start from every vertex without incoming edges, not only the initial state, so that unreachable vertices are ordered as well */
+		for (NFAVertexND v : m.vertexSet()) {
+			if (m.inDegreeOf(v) == 0) {
+				toVisit.addLast(v);
+			}
+		}
 
 		while (!toVisit.isEmpty()) {
 			NFAVertexND n = toVisit.removeLast();
 			oldNewMap.put(n, orderCounter++);
-			for (NFAEdge e : originalM.outgoingEdgesOf(n)) {
+			for (NFAEdge e : new ArrayList<NFAEdge>(m.outgoingEdgesOf(n))) {
 				NFAVertexND targetVertex = e.getTargetVertex();
 				m.removeEdge(e);
 				if (m.inDegreeOf(targetVertex) == 0) {
@@ -1214,8 +1274,9 @@ public class NFAAnalysisTools {
 		return oldNewMap;
 	}
 	
+	/* Whether the thread was interrupted or the analysis running on it exceeded its budget */
 	protected static boolean isInterrupted() {
-		return Thread.currentThread().isInterrupted();
+		return AnalysisBudget.isCurrentThreadStopped();
 	}
 
 }
@@ -0,0 +1,211 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import nfa.NFAEdge;
+import nfa.NFAGraph;
+import nfa.NFAVertexND;
+import nfa.transitionlabel.MintermPartition;
+import nfa.transitionlabel.TransitionLabel;
+import util.SubsetInterner;
+
+/**
+ * The subset construction over the states of an NFA numbered from 0. Subsets
+ * of states are bit sets of longs, interned so that every subset found is
+ * hashed once and compared word by word, and the DFA states are numbered
+ * densely in the order their subsets are found. The labels are represented
+ * as sets of the minterms of the labels of the NFA and the alphabet, so that
+ * the labels of the DFA are disjoint without splitting overlapping labels.
+ * The empty subset is the state the DFA goes to on the symbols of the
+ * alphabet no state of a subset has a transition for.
+ */
+public class SubsetConstruction {
+
+	private final NFAGraph input;
+
+	private final ArrayList<NFAVertexND> states;
+	private final HashMap<NFAVertexND, Integer> stateNumbers;
+	private final int numWords;
+	private final long[] acceptingStates;
+
+	/* The epsilon closure of each state, null until it is first needed */
+	private final long[][] epsilonClosures;
+
+	/* The symbol transitions from each state, as their targets and minterms */
+	private final int[][] edgeTargets;
+	private final BitSet[][] edgeMinterms;
+
+	private final MintermPartition partition;
+	private final BitSet alphabetMinterms;
+
+	public SubsetConstruction(NFAGraph input, Set<TransitionLabel> alphabet) {
+		this.input = input;
+		states = new ArrayList<NFAVertexND>(input.vertexSet());
+		stateNumbers = new HashMap<NFAVertexND, Integer>();
+		numWords = SubsetInterner.wordsFor(states.size());
+		acceptingStates = new long[numWords];
+		for (NFAVertexND v : states) {
+			int stateNumber = stateNumbers.size();
+			stateNumbers.put(v, stateNumber);
+			if (input.isAcceptingState(v)) {
+				acceptingStates[stateNumber >>> 6] |= 1L << stateNumber;
+			}
+		}
+		epsilonClosures = new long[states.size()][];
+
+		Set<TransitionLabel> labels = NFAAnalysisTools.getAlphabet(input);
+		labels.addAll(alphabet);
+		partition = new MintermPartition(labels);
+		HashMap<TransitionLabel, BitSet> labelMinterms = new HashMap<TransitionLabel, BitSet>();
+		for (TransitionLabel tl : labels) {
+			labelMinterms.put(tl, partition.getMinterms(tl));
+		}
+		alphabetMinterms = new BitSet(partition.getNumMinterms());
+		for (TransitionLabel tl : alphabet) {
+			alphabetMinterms.or(labelMinterms.get(tl));
+		}
+
+		edgeTargets = new int[states.size()][];
+		edgeMinterms = new BitSet[states.size()][];
+		for (int state = 0; state < states.size(); state++) {
+			ArrayList<NFAEdge> symbolEdges = new ArrayList<NFAEdge>();
+			for (NFAEdge e : input.outgoingEdgesOf(states.get(state))) {
+				if (!e.getIsEpsilonTransition()) {
+					symbolEdges.add(e);
+				}
+			}
+			edgeTargets[state] = new int[symbolEdges.size()];
+			edgeMinterms[state] = new BitSet[symbolEdges.size()];
+			for (int i = 0; i < symbolEdges.size(); i++) {
+				edgeTargets[state][i] = stateNumbers.get(symbolEdges.get(i).getTargetVertex());
+				edgeMinterms[state][i] = labelMinterms.get(symbolEdges.get(i).getTransitionLabel());
+			}
+		}
+	}
+
+	/**
+	 * Builds the DFA of the subsets reachable from the start states. The
+	 * start states are taken as they are, the states reached with a symbol
+	 * are closed under epsilon transitions.
+	 *
+	 * @param startStates
+	 *            The states of the initial subset.
+	 * @return The DFA, with state i named qi.
+	 * @throws InterruptedException
+	 */
+	public NFAGraph determinize(Set<NFAVertexND> startStates) throws InterruptedException {
+		SubsetInterner subsets = new SubsetInterner(states.size());
+		NFAGraph dfa = new NFAGraph();
+		ArrayList<NFAVertexND> dfaStates = new ArrayList<NFAVertexND>();
+
+		long[] startSubset = new long[numWords];
+		for (NFAVertexND v : startStates) {
+			int stateNumber = stateNumbers.get(v);
+			startSubset[stateNumber >>> 6] |= 1L << stateNumber;
+		}
+		addDfaState(dfa, dfaStates, subsets, subsets.intern(startSubset));
+		dfa.setInitialState(dfaStates.get(0));
+
+		/* the states each minterm leads to from the current subset, cleared after each subset */
+		long[][] mintermTargets = new long[partition.getNumMinterms()][];
+		BitSet usedMinterms = new BitSet(partition.getNumMinterms());
+		long[] emptySubset = new long[numWords];
+		/* the subsets are numbered in the order they are found, so every subset is expanded by counting up to the number of subsets */
+		for (int P = 0; P < subsets.size(); P++) {
+			if (NFAAnalysisTools.isInterrupted()) {
+				throw new InterruptedException();
+			}
+			for (int state = subsets.nextElement(P, 0); state >= 0; state = subsets.nextElement(P, state + 1)) {
+				for (int i = 0; i < edgeTargets[state].length; i++) {
+					long[] closure = epsilonClosure(edgeTargets[state][i]);
+					BitSet minterms = edgeMinterms[state][i];
+					for (int minterm = minterms.nextSetBit(0); minterm >= 0; minterm = minterms.nextSetBit(minterm + 1)) {
+						long[] targets = mintermTargets[minterm];
+						if (targets == null) {
+							targets = new long[numWords];
+							mintermTargets[minterm] = targets;
+						}
+						for (int word = 0; word < numWords; word++) {
+							targets[word] |= closure[word];
+						}
+						usedMinterms.set(minterm);
+					}
+				}
+			}
+
+			/* joining the minterms that lead to the same subset into one label */
+			LinkedHashMap<Integer, BitSet> targetMinterms = new LinkedHashMap<Integer, BitSet>();
+			for (int minterm = usedMinterms.nextSetBit(0); minterm >= 0; minterm = usedMinterms.nextSetBit(minterm + 1)) {
+				int target = subsets.intern(mintermTargets[minterm]);
+				mintermsTo(targetMinterms, target).set(minterm);
+				mintermTargets[minterm] = null;
+			}
+			BitSet toEmptySubset = (BitSet) alphabetMinterms.clone();
+			toEmptySubset.andNot(usedMinterms);
+			usedMinterms.clear();
+			if (!toEmptySubset.isEmpty()) {
+				mintermsTo(targetMinterms, subsets.intern(emptySubset)).or(toEmptySubset);
+			}
+
+			for (Map.Entry<Integer, BitSet> kv : targetMinterms.entrySet()) {
+				int target = kv.getKey();
+				if (target == dfaStates.size()) {
+					addDfaState(dfa, dfaStates, subsets, target);
+				}
+				dfa.addEdge(new NFAEdge(dfaStates.get(P), dfaStates.get(target), partition.toLabel(kv.getValue())));
+			}
+		}
+		return dfa;
+	}
+
+	private static BitSet mintermsTo(LinkedHashMap<Integer, BitSet> targetMinterms, int target) {
+		BitSet minterms = targetMinterms.get(target);
+		if (minterms == null) {
+			minterms = new BitSet();
+			targetMinterms.put(target, minterms);
+		}
+		return minterms;
+	}
+
+	private void addDfaState(NFAGraph dfa, ArrayList<NFAVertexND> dfaStates, SubsetInterner subsets, int subsetNumber) {
+		/* note dfa states are not multidimensional */
+		NFAVertexND dfaState = new NFAVertexND("q" + subsetNumber);
+		dfaStates.add(dfaState);
+		dfa.addVertex(dfaState);
+		if (subsets.intersects(subsetNumber, acceptingStates)) {
+			dfa.addAcceptingState(dfaState);
+		}
+	}
+
+	/* The state and the states reachable from it with epsilon transitions */
+	private long[] epsilonClosure(int state) {
+		long[] closure = epsilonClosures[state];
+		if (closure == null) {
+			closure = new long[numWords];
+			int[] toVisit = new int[states.size()];
+			int numToVisit = 0;
+			closure[state >>> 6] |= 1L << state;
+			toVisit[numToVisit++] = state;
+			while (numToVisit > 0) {
+				int current = toVisit[--numToVisit];
+				for (NFAEdge e : input.outgoingEdgesOf(states.get(current))) {
+					if (e.getIsEpsilonTransition()) {
+						int target = stateNumbers.get(e.getTargetVertex());
+						if ((closure[target >>> 6] & (1L << target)) == 0) {
+							closure[target >>> 6] |= 1L << target;
+							toVisit[numToVisit++] = target;
+						}
+					}
+				}
+			}
+			epsilonClosures[state] = closure;
+		}
+		return closure;
+	}
+
+}
@@ -0,0 +1,439 @@
+package analysis.driver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import analysis.AnalysisMetrics;
+import analysis.AnalysisResultsCache;
+import analysis.AnalysisSettings;
+import analysis.NFAAnalyserInterface;
+import analysis.driver.AnalysisDriverStdOut.AnalysisCounters;
+import analysis.driver.AnalysisDriverStdOut.AnalysisVerdict;
+
+import util.InterfaceSettings;
+import util.InterfaceSettings.InputType;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Analyses the regexes in worker processes, so that a regex that exhausts the
+ * heap or crashes the JVM only takes down the worker analysing it. The regexes
+ * are split into shards that the workers take in turn. A worker sends the
+ * result of each regex back as soon as it is analysed, and the rest of the
+ * shard of a worker that dies is handed out again, to the worker started in
+ * its place or to another worker. A worker that does not answer in time is
+ * killed as if it had died. A regex that takes down MAX_ATTEMPTS workers is
+ * reported as skipped, and so is the rest of a shard for which no worker could
+ * be started.
+ *
+ * The coordinator keeps the results store, the metrics file and the counters,
+ * so that the output is the same as when the regexes are analysed in one
+ * process. The workers are the same program started with the worker flag, and
+ * talk to the coordinator with JSON lines on their standard input and output:
+ * first a WorkerSetup, then a WorkResult for every WorkRequest.
+ */
+public class AnalysisCoordinator {
+
+	private static final boolean DEBUG = false;
+
+	private static final int MAX_ATTEMPTS = 2;
+
+	/* More shards than workers, so that the workers finishing first take over the shards left */
+	private static final int SHARDS_PER_WORKER = 4;
+
+	/*
+	 * The analysis stops itself at the timeout, but building the NFA and
+	 * testing the exploit string with the matcher do not check it, so a worker
+	 * that has not answered after this many timeouts is taken to hang and is
+	 * killed.
+	 */
+	private static final int TIMEOUTS_PER_REQUEST = 10;
+	private static final int MIN_REQUEST_TIMEOUT_SECONDS = 60;
+
+	/**
+	 * Analyses the patterns read from the reader in worker processes and prints
+	 * the results in input order.
+	 * @return The number of patterns read.
+	 */
+	static int performShardedAnalysis(BufferedReader regexesReader, Pattern slashesRegex, final AnalysisCounters counters, InterfaceSettings interfaceSettings, AnalysisSettings analysisSettings) throws IOException {
+		final ArrayList<String> patterns = new ArrayList<String>();
+		String pattern;
+		while ((pattern = regexesReader.readLine()) != null) {
+			patterns.add(AnalysisDriverStdOut.stripSlashes(pattern, slashesRegex));
+		}
+
+		/* The output of each pattern, with the line with its number, or null if its verdict is in the store */
+		final ArrayList<CompletableFuture<String>> outputs = new ArrayList<CompletableFuture<String>>();
+		ArrayList<Integer> toAnalyse = new ArrayList<Integer>();
+		for (int i = 0; i < patterns.size(); i++) {
+			if (AnalysisDriverStdOut.hasStoredResult(patterns.get(i))) {
+				outputs.add(null);
+			} else {
+				outputs.add(new CompletableFuture<String>());
+				toAnalyse.add(i);
+			}
+		}
+
+		int numWorkers = Math.min(interfaceSettings.getNumWorkers(), toAnalyse.size());
+		final LinkedBlockingDeque<List<Integer>> shards = new LinkedBlockingDeque<List<Integer>>();
+		if (numWorkers > 0) {
+			int shardSize = (toAnalyse.size() + numWorkers * SHARDS_PER_WORKER - 1) / (numWorkers * SHARDS_PER_WORKER);
+			for (int from = 0; from < toAnalyse.size(); from += shardSize) {
+				shards.add(new ArrayList<Integer>(toAnalyse.subList(from, Math.min(from + shardSize, toAnalyse.size()))));
+			}
+		}
+
+		/* The workers get the settings of the coordinator, but leave the store and the metrics file to it */
+		InterfaceSettings workerInterfaceSettings = new InterfaceSettings(InputType.FILE_INPUT, interfaceSettings.getIsVerbose(), 1, interfaceSettings.getCacheSize());
+		final WorkerSetup setup = new WorkerSetup(workerInterfaceSettings, analysisSettings, interfaceSettings.getMetricsOutFile() != null);
+		final HashMap<Integer, Integer> attempts = new HashMap<Integer, Integer>();
+		/* null if the timeout is disabled, in which case the workers are waited for as long as they take */
+		final ScheduledExecutorService watchdog;
+		final long requestTimeoutMillis;
+		if (analysisSettings.getTimeout() > 0) {
+			watchdog = Executors.newSingleThreadScheduledExecutor();
+			requestTimeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(TIMEOUTS_PER_REQUEST * analysisSettings.getTimeout(), MIN_REQUEST_TIMEOUT_SECONDS));
+		} else {
+			watchdog = null;
+			requestTimeoutMillis = 0;
+		}
+		ExecutorService workerThreads = Executors.newFixedThreadPool(Math.max(numWorkers, 1));
+		try {
+			for (int i = 0; i < numWorkers; i++) {
+				workerThreads.execute(new Runnable() {
+					@Override
+					public void run() {
+						runWorker(setup, watchdog, requestTimeoutMillis, shards, patterns, outputs, attempts, counters);
+					}
+				});
+			}
+			for (int i = 0; i < patterns.size(); i++) {
+				if (outputs.get(i) == null) {
+					/* printed here, since the exploit string is tested with the matcher again while the workers go on */
+					AnalysisDriverStdOut.printPatternHeader(i + 1, patterns.get(i), System.out);
+					AnalysisDriverStdOut.printStoredResult(i + 1, patterns.get(i), System.out, counters);
+					continue;
+				}
+				try {
+					System.out.print(outputs.get(i).get());
+				} catch (ExecutionException ee) {
+					if (DEBUG) {
+						ee.printStackTrace();
+					}
+					System.out.println((i + 1) + ": SKIPPED: " + ee.getCause());
+					counters.recordSkipped();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for analysis results.");
+				}
+			}
+		} finally {
+			workerThreads.shutdownNow();
+			if (watchdog != null) {
+				watchdog.shutdownNow();
+			}
+		}
+		return patterns.size();
+	}
+
+	/**
+	 * Takes shards until there are none left, analysing them in a worker
+	 * process that is started again whenever it dies. Only the patterns of the
+	 * shard taken are given up on when something goes wrong, the other
+	 * workers go on with theirs.
+	 */
+	private static void runWorker(WorkerSetup setup, ScheduledExecutorService watchdog, long requestTimeoutMillis, LinkedBlockingDeque<List<Integer>> shards,
+			ArrayList<String> patterns, ArrayList<CompletableFuture<String>> outputs, HashMap<Integer, Integer> attempts, AnalysisCounters counters) {
+		Gson gson = new Gson();
+		WorkerProcess worker = null;
+		try {
+			List<Integer> shard;
+			while ((shard = shards.pollFirst()) != null) {
+				int done = 0;
+				try {
+					if (worker == null) {
+						worker = new WorkerProcess(gson.toJson(setup), watchdog, requestTimeoutMillis);
+					}
+				} catch (IOException ioe) {
+					skipRest(shard, done, outputs, ioe);
+					continue;
+				}
+				try {
+					while (done < shard.size()) {
+						int i = shard.get(done);
+						String resultLine = worker.request(gson.toJson(new WorkRequest(i + 1, patterns.get(i))));
+						if (resultLine == null) {
+							throw new IOException("The worker closed its output.");
+						}
+						WorkResult result;
+						try {
+							result = gson.fromJson(resultLine, WorkResult.class);
+						} catch (JsonSyntaxException jse) {
+							/* the JVM prints to the output itself when it is about to exit, for instance on running out of memory */
+							throw new IOException("The worker answered with: " + resultLine);
+						}
+						counters.add(result.counters);
+						/* counted now, so it is not skipped as well if what follows fails */
+						done++;
+						outputs.get(i).complete(header(i + 1, patterns.get(i)) + result.output);
+						AnalysisDriverStdOut.writeMetrics(result.metrics, result.verdict != null ? result.verdict.getResultsType() : null);
+						AnalysisDriverStdOut.storeResult(patterns.get(i), result.verdict);
+					}
+				} catch (IOException ioe) {
+					/* the worker died, or was killed for not answering, while analysing the pattern it was sent last */
+					boolean answeredInTime = !worker.isKilledByWatchdog();
+					int exitValue = worker.destroy();
+					worker = null;
+					int i = shard.get(done);
+					int numAttempts;
+					synchronized (attempts) {
+						numAttempts = attempts.containsKey(i) ? attempts.get(i) + 1 : 1;
+						attempts.put(i, numAttempts);
+					}
+					if (numAttempts >= MAX_ATTEMPTS) {
+						counters.recordSkipped();
+						String reason;
+						if (answeredInTime) {
+							reason = "the worker analysing it exited with status " + exitValue;
+						} else {
+							reason = "the worker analysing it did not answer within " + TimeUnit.MILLISECONDS.toSeconds(requestTimeoutMillis) + "s";
+						}
+						outputs.get(i).complete(header(i + 1, patterns.get(i)) + "SKIPPED: " + reason + System.lineSeparator());
+						done++;
+					}
+					if (done < shard.size()) {
+						shards.addFirst(new ArrayList<Integer>(shard.subList(done, shard.size())));
+					}
+				} catch (RuntimeException re) {
+					/* the worker might be left half way through an answer, so it is not used again */
+					worker.destroy();
+					worker = null;
+					skipRest(shard, done, outputs, re);
+				}
+			}
+		} finally {
+			if (worker != null) {
+				worker.close();
+			}
+		}
+	}
+
+	/* The patterns are printed as skipped, and counted, when their outputs are printed */
+	private static void skipRest(List<Integer> shard, int done, ArrayList<CompletableFuture<String>> outputs, Exception cause) {
+		for (int j = done; j < shard.size(); j++) {
+			outputs.get(shard.get(j)).completeExceptionally(cause);
+		}
+	}
+
+	private static String header(int number, String pattern) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(buffer);
+		AnalysisDriverStdOut.printPatternHeader(number, pattern, out);
+		out.flush();
+		return buffer.toString();
+	}
+
+	/**
+	 * Analyses the patterns sent by the coordinator on standard input, until
+	 * the coordinator closes it.
+	 */
+	public static void serveAsWorker() {
+		Gson gson = new Gson();
+		/* standard output carries the results, so anything else printed goes to standard error */
+		PrintStream resultsOut = System.out;
+		System.setOut(System.err);
+		try {
+			BufferedReader requestReader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			BufferedWriter resultWriter = new BufferedWriter(new OutputStreamWriter(resultsOut, StandardCharsets.UTF_8));
+			String setupLine = requestReader.readLine();
+			if (setupLine == null) {
+				return;
+			}
+			WorkerSetup setup = gson.fromJson(setupLine, WorkerSetup.class);
+			AnalysisDriverStdOut.configure(setup.interfaceSettings, setup.analysisSettings);
+			NFAAnalyserInterface analyser = AnalysisDriverStdOut.getCorrectNFAAnalyser(setup.analysisSettings.getEpsilonLoopRemovalStrategy());
+			String requestLine;
+			while ((requestLine = requestReader.readLine()) != null) {
+				WorkRequest request = gson.fromJson(requestLine, WorkRequest.class);
+				AnalysisCounters patternCounters = new AnalysisCounters();
+				AnalysisMetrics metrics = null;
+				if (setup.shouldRecordMetrics) {
+					metrics = new AnalysisMetrics(request.number, request.pattern);
+				}
+				AnalysisResultsCache cache = AnalysisDriverStdOut.getSharedResultsCache();
+				long numHitsBefore = cache != null ? cache.getNumHits() : 0;
+				long numLookupsBefore = cache != null ? cache.getNumLookups() : 0;
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				PrintStream out = new PrintStream(buffer);
+				AnalysisVerdict verdict = AnalysisDriverStdOut.printAnalysis(request.number, request.pattern, analyser, out, patternCounters, metrics);
+				out.flush();
+				if (cache != null) {
+					patternCounters.recordCacheLookups(cache.getNumHits() - numHitsBefore, cache.getNumLookups() - numLookupsBefore);
+				}
+				resultWriter.write(gson.toJson(new WorkResult(buffer.toString(), verdict, patternCounters, metrics)));
+				resultWriter.newLine();
+				resultWriter.flush();
+			}
+		} catch (IOException ioe) {
+			System.err.println("Lost the connection to the coordinator: " + ioe.getMessage());
+		}
+	}
+
+	/**
+	 * A worker JVM started with the class path and heap settings of this one.
+	 */
+	private static class WorkerProcess {
+
+		private final Process process;
+		private final BufferedWriter requestWriter;
+		private final BufferedReader resultReader;
+
+		/* null if requests are not timed */
+		private final ScheduledExecutorService watchdog;
+		private final long requestTimeoutMillis;
+
+		private volatile boolean isKilledByWatchdog = false;
+		boolean isKilledByWatchdog() {
+			return isKilledByWatchdog;
+		}
+
+		WorkerProcess(String setupLine, ScheduledExecutorService watchdog, long requestTimeoutMillis) throws IOException {
+			this.watchdog = watchdog;
+			this.requestTimeoutMillis = requestTimeoutMillis;
+			ArrayList<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			for (String jvmArgument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+				/* only the memory and VM options, an agent such as a debugger would clash between the processes */
+				if (jvmArgument.startsWith("-X")) {
+					command.add(jvmArgument);
+				}
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add("driver.Main");
+			command.add("--worker");
+			ProcessBuilder processBuilder = new ProcessBuilder(command);
+			processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			process = processBuilder.start();
+			requestWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+			resultReader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+			requestWriter.write(setupLine);
+			requestWriter.newLine();
+			requestWriter.flush();
+		}
+
+		/**
+		 * @return The line the worker answered with, or null if it exited or
+		 *         was killed for not answering in time.
+		 */
+		String request(String requestLine) throws IOException {
+			ScheduledFuture<?> kill = null;
+			if (watchdog != null) {
+				kill = watchdog.schedule(new Runnable() {
+					@Override
+					public void run() {
+						isKilledByWatchdog = true;
+						process.destroyForcibly();
+					}
+				}, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			try {
+				requestWriter.write(requestLine);
+				requestWriter.newLine();
+				requestWriter.flush();
+				return resultReader.readLine();
+			} finally {
+				if (kill != null) {
+					kill.cancel(false);
+				}
+			}
+		}
+
+		/* Closing standard input lets the worker finish */
+		void close() {
+			try {
+				requestWriter.close();
+			} catch (IOException ioe) {
+
+			}
+		}
+
+		/**
+		 * @return The exit value of the worker.
+		 */
+		int destroy() {
+			process.destroyForcibly();
+			try {
+				return process.waitFor();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return -1;
+			}
+		}
+	}
+
+	private static class WorkerSetup {
+
+		private final InterfaceSettings interfaceSettings;
+		private final AnalysisSettings analysisSettings;
+		private final boolean shouldRecordMetrics;
+
+		WorkerSetup(InterfaceSettings interfaceSettings, AnalysisSettings analysisSettings, boolean shouldRecordMetrics) {
+			this.interfaceSettings = interfaceSettings;
+			this.analysisSettings = analysisSettings;
+			this.shouldRecordMetrics = shouldRecordMetrics;
+		}
+	}
+
+	private static class WorkRequest {
+
+		private final int number;
+		private final String pattern;
+
+		WorkRequest(int number, String pattern) {
+			this.number = number;
+			this.pattern = pattern;
+		}
+	}
+
+	private static class WorkResult {
+
+		/* What is printed for the pattern, apart from the line with its number */
+		private final String output;
+		/* null if the pattern was skipped */
+		private final AnalysisVerdict verdict;
+		/* The counters of this pattern alone */
+		private final AnalysisCounters counters;
+		/* null if no metrics are recorded */
+		private final AnalysisMetrics metrics;
+
+		WorkResult(String output, AnalysisVerdict verdict, AnalysisCounters counters, AnalysisMetrics metrics) {
+			this.output = output;
+			this.verdict = verdict;
+			this.counters = counters;
+			this.metrics = metrics;
+		}
+	}
+
+}
@@ -0,0 +1,296 @@
+package analysis.driver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import analysis.AnalysisResultsCache;
+import analysis.AnalysisSettings;
+import analysis.ExploitString;
+import analysis.NFAAnalyserInterface;
+import analysis.NFAAnalyserInterface.AnalysisResultsType;
+import analysis.NFAAnalyserInterface.IdaAnalysisResultsIda;
+import analysis.driver.AnalysisDriverStdOut.AnalysisRunner;
+
+import util.InterfaceSettings;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * Analyses the regexes sent to it over a loopback socket, so that the JVM, the
+ * analysers and the results cache stay warm between requests. Each line sent on a
+ * connection is a JSON request with a pattern and optionally the analysis settings
+ * that differ from the settings the daemon was started with, for example
+ *
+ * <pre>
+ * {"pattern": "(a|a)*b", "settings": {"timeout": 5, "shouldTestIDA": false}}
+ * </pre>
+ *
+ * The settings are named as the fields of AnalysisSettings. Each request is
+ * answered with one line holding a JSON Response. The exploit strings are not
+ * tested with the Java matcher, since that takes a worker for seconds.
+ */
+public class AnalysisDaemon {
+
+	private static final boolean DEBUG = false;
+
+	private final AnalysisSettings defaultSettings;
+	private final AnalysisResultsCache sharedResultsCache;
+	private final ExecutorService workerPool;
+	/* The analysers are not thread safe, so each worker keeps its own for each way of removing epsilon loops and priorities */
+	private final ThreadLocal<HashMap<String, NFAAnalyserInterface>> workerAnalysers;
+	private final Gson gson;
+
+	private AnalysisDaemon(InterfaceSettings interfaceSettings, AnalysisSettings defaultSettings) {
+		this.defaultSettings = defaultSettings;
+		if (interfaceSettings.getCacheSize() > 0) {
+			sharedResultsCache = new AnalysisResultsCache(interfaceSettings.getCacheSize());
+		} else {
+			sharedResultsCache = null;
+		}
+		workerPool = Executors.newFixedThreadPool(interfaceSettings.getNumThreads());
+		workerAnalysers = new ThreadLocal<HashMap<String, NFAAnalyserInterface>>() {
+			@Override
+			protected HashMap<String, NFAAnalyserInterface> initialValue() {
+				return new HashMap<String, NFAAnalyserInterface>();
+			}
+		};
+		gson = new Gson();
+	}
+
+	/**
+	 * Listens on the port of the loopback address until the process is stopped.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @param defaultSettings The settings of the requests that do not set them.
+	 */
+	public static void serve(int port, InterfaceSettings interfaceSettings, AnalysisSettings defaultSettings) {
+		AnalysisDaemon daemon = new AnalysisDaemon(interfaceSettings, defaultSettings);
+		/* connections wait for the next request most of the time, so they do not take up workers */
+		ExecutorService connectionPool = Executors.newCachedThreadPool();
+		ServerSocket serverSocket = null;
+		try {
+			serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+			System.out.println("Listening on " + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort());
+			while (true) {
+				final Socket socket = serverSocket.accept();
+				connectionPool.execute(daemon.new ConnectionHandler(socket));
+			}
+		} catch (IOException ioe) {
+			System.err.println("Could not listen on port " + port + ": " + ioe.getMessage());
+			System.exit(0);
+		} finally {
+			connectionPool.shutdownNow();
+			daemon.workerPool.shutdownNow();
+			if (serverSocket != null) {
+				try {
+					serverSocket.close();
+				} catch (IOException ioe) {
+
+				}
+			}
+		}
+	}
+
+	private class ConnectionHandler implements Runnable {
+
+		private final Socket socket;
+
+		private ConnectionHandler(Socket socket) {
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			try {
+				BufferedReader requestReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				BufferedWriter responseWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+				String requestLine;
+				while ((requestLine = requestReader.readLine()) != null) {
+					if (requestLine.trim().isEmpty()) {
+						continue;
+					}
+					responseWriter.write(gson.toJson(handleRequest(requestLine)));
+					responseWriter.newLine();
+					responseWriter.flush();
+				}
+			} catch (IOException ioe) {
+				if (DEBUG) {
+					ioe.printStackTrace();
+				}
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException ioe) {
+
+				}
+			}
+		}
+	}
+
+	private Response handleRequest(String requestLine) {
+		Request request;
+		AnalysisSettings settings;
+		try {
+			request = gson.fromJson(requestLine, Request.class);
+			if (request == null || request.getPattern() == null) {
+				return Response.error(null, "Request without a pattern.");
+			}
+			settings = mergeSettings(request.getSettings());
+		} catch (JsonParseException jpe) {
+			return Response.error(null, "Invalid request: " + jpe.getMessage());
+		}
+		final String pattern = request.getPattern();
+		final AnalysisSettings finalSettings = settings;
+		try {
+			return workerPool.submit(new Callable<Response>() {
+				@Override
+				public Response call() {
+					return analyse(pattern, finalSettings);
+				}
+			}).get();
+		} catch (ExecutionException ee) {
+			if (DEBUG) {
+				ee.printStackTrace();
+			}
+			return Response.error(pattern, "" + ee.getCause());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return Response.error(pattern, "Interrupted while waiting for analysis results.");
+		}
+	}
+
+	/* Overrides the default settings with the settings given in the request */
+	private AnalysisSettings mergeSettings(JsonObject requestSettings) {
+		if (requestSettings == null) {
+			return defaultSettings;
+		}
+		JsonObject mergedSettings = gson.toJsonTree(defaultSettings).getAsJsonObject();
+		for (Map.Entry<String, JsonElement> setting : requestSettings.entrySet()) {
+			if (!mergedSettings.has(setting.getKey())) {
+				throw new JsonParseException("Unknown setting: " + setting.getKey());
+			}
+			mergedSettings.add(setting.getKey(), setting.getValue());
+		}
+		AnalysisSettings settings = gson.fromJson(mergedSettings, AnalysisSettings.class);
+		/* Gson reads the names of unknown constants as null */
+		if (settings.getNFAConstruction() == null || settings.getPreprocessingType() == null
+				|| settings.getEpsilonLoopRemovalStrategy() == null || settings.getPriorityRemovalStrategy() == null) {
+			throw new JsonParseException("Unknown setting value in: " + requestSettings);
+		}
+		return settings;
+	}
+
+	/* Runs on a worker thread */
+	private Response analyse(String pattern, AnalysisSettings settings) {
+		long startTime = System.currentTimeMillis();
+		String finalPattern;
+		try {
+			finalPattern = AnalysisDriverStdOut.preprocessToFinalPattern(pattern, settings.getPreprocessingType());
+		} catch (Exception e) {
+			if (DEBUG) {
+				e.printStackTrace();
+			}
+			return Response.error(pattern, e.getMessage());
+		}
+		String analyserKey = settings.getEpsilonLoopRemovalStrategy() + " " + settings.getPriorityRemovalStrategy() + " " + settings.getShouldReduceBisimilarStates();
+		HashMap<String, NFAAnalyserInterface> analysers = workerAnalysers.get();
+		NFAAnalyserInterface analyser = analysers.get(analyserKey);
+		if (analyser == null) {
+			analyser = AnalysisDriverStdOut.createNFAAnalyser(settings.getEpsilonLoopRemovalStrategy(), settings.getPriorityRemovalStrategy(), settings.getShouldReduceBisimilarStates(), sharedResultsCache);
+			analysers.put(analyserKey, analyser);
+		}
+		AnalysisRunner ar = new AnalysisRunner(finalPattern, analyser, settings, null);
+		AnalysisDriverStdOut.runOnCurrentThread(ar);
+
+		Response response = new Response(pattern, ar.getAnalysisResultsType().toString());
+		if (ar.getAnalysisResultsType() == AnalysisResultsType.IDA) {
+			response.degree = ((IdaAnalysisResultsIda) ar.getAnalysisResults()).getDegree();
+		}
+		response.exploitString = ar.getExploitString();
+		response.analysisTime = System.currentTimeMillis() - startTime;
+		return response;
+	}
+
+	public static class Request {
+
+		private final String pattern;
+		public String getPattern() {
+			return pattern;
+		}
+
+		/* null if the default settings of the daemon are used */
+		private final JsonObject settings;
+		public JsonObject getSettings() {
+			return settings;
+		}
+
+		public Request(String pattern, JsonObject settings) {
+			this.pattern = pattern;
+			this.settings = settings;
+		}
+	}
+
+	public static class Response {
+
+		private final String pattern;
+		public String getPattern() {
+			return pattern;
+		}
+
+		/* The name of the AnalysisResultsType, or SKIPPED if the request could not be analysed */
+		private final String result;
+		public String getResult() {
+			return result;
+		}
+
+		/* Set for IDA only */
+		private Integer degree;
+		public Integer getDegree() {
+			return degree;
+		}
+
+		/* null if it was not constructed */
+		private ExploitString exploitString;
+		public ExploitString getExploitString() {
+			return exploitString;
+		}
+
+		private Long analysisTime;
+		public Long getAnalysisTime() {
+			return analysisTime;
+		}
+
+		/* Why the request was skipped */
+		private String error;
+		public String getError() {
+			return error;
+		}
+
+		private Response(String pattern, String result) {
+			this.pattern = pattern;
+			this.result = result;
+		}
+
+		private static Response error(String pattern, String error) {
+			Response response = new Response(pattern, "SKIPPED");
+			response.error = error;
+			return response;
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package analysis.driver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import analysis.AnalysisSettings;
+import analysis.driver.AnalysisDaemon.Request;
+import analysis.driver.AnalysisDaemon.Response;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Sends the regexes to a running AnalysisDaemon and prints its results in the
+ * format of the non-verbose analysis. The process exits with status 1 if any of
+ * the regexes is vulnerable and 2 if the daemon could not be reached, so that it
+ * can be used in hooks.
+ */
+public class AnalysisDaemonClient {
+
+	private static final int EXIT_VULNERABLE = 1;
+	private static final int EXIT_ERROR = 2;
+
+	public static void performAnalysis(BufferedReader regexesReader, int port, boolean isVerbose, AnalysisSettings analysisSettings) {
+		Gson gson = new Gson();
+		JsonObject settings = gson.toJsonTree(analysisSettings).getAsJsonObject();
+		Pattern slashesRegex = Pattern.compile("^/(.*)/[a-zA-Z]*$");
+		boolean foundVulnerable = false;
+		Socket socket = null;
+		try {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			BufferedWriter requestWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			BufferedReader responseReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			int counter = 0;
+			String pattern;
+			while ((pattern = regexesReader.readLine()) != null) {
+				counter++;
+				pattern = AnalysisDriverStdOut.stripSlashes(pattern, slashesRegex);
+				requestWriter.write(gson.toJson(new Request(pattern, settings)));
+				requestWriter.newLine();
+				requestWriter.flush();
+				String responseLine = responseReader.readLine();
+				if (responseLine == null) {
+					throw new IOException("The daemon closed the connection.");
+				}
+				Response response = gson.fromJson(responseLine, Response.class);
+				System.out.println(counter + ": " + pattern);
+				System.out.println(resultLine(response));
+				if (isVerbose && response.getExploitString() != null) {
+					System.out.println("\tExploit string as JSON:\t" + gson.toJson(response.getExploitString()));
+				}
+				if (response.getResult().equals("EDA") || response.getResult().equals("IDA")) {
+					foundVulnerable = true;
+				}
+			}
+		} catch (IOException ioe) {
+			System.err.println("Could not get results from the daemon on port " + port + ": " + ioe.getMessage());
+			System.exit(EXIT_ERROR);
+		} finally {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException ioe) {
+
+				}
+			}
+		}
+		if (foundVulnerable) {
+			System.exit(EXIT_VULNERABLE);
+		}
+	}
+
+	private static String resultLine(Response response) {
+		String result = response.getResult();
+		if (result.equals("IDA")) {
+			return "IDA_" + response.getDegree();
+		} else if (result.equals("NO_EDA")) {
+			return "NO EDA";
+		} else if (result.equals("NO_IDA")) {
+			return "NO IDA";
+		} else if (result.equals("TIMEOUT_IN_EDA")) {
+			return "TIMEOUT in EDA";
+		} else if (result.equals("TIMEOUT_IN_IDA")) {
+			return "TIMEOUT in IDA";
+		} else if (result.equals("BUDGET_EXCEEDED")) {
+			return "BUDGET EXCEEDED";
+		} else if (result.equals("SKIPPED") && response.getError() != null) {
+			return "SKIPPED: " + response.getError();
+		} else if (result.equals("ANALYSIS_FAILED")) {
+			return "SKIPPED";
+		}
+		return result;
+	}
+
+}
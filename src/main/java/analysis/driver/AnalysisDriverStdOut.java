@@ -1,14 +1,29 @@
 package analysis.driver;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import analysis.*;
 import analysis.NFAAnalyserInterface.AnalysisResultsType;
 import analysis.NFAAnalyserInterface.IdaAnalysisResultsIda;
+import analysis.driver.AnalysisResultStore.StoredResult;
 import analysis.AnalysisSettings.PreprocessingType;
 import analysis.AnalysisSettings.PriorityRemovalStrategy;
 import analysis.AnalysisSettings.EpsilonLoopRemovalStrategy;
@@ -21,7 +36,6 @@ import preprocessor.Preprocessor;
 import preprocessor.PreciseSubstitutionPreprocessor;
 import preprocessor.NonpreciseSubstitutionPreprocessor;
 
-import util.Constants;
 import util.InterfaceSettings;
 import util.InterfaceSettings.InputType;
 import util.InterruptibleMatchingString;
@@ -38,8 +52,20 @@ public class AnalysisDriverStdOut {
 	/* Interface Settings */
 	private static InputType inputType;
 	private static boolean isVerbose;
+	private static int numThreads;
+	private static int numWorkers;
+	private static AnalysisResultsCache sharedResultsCache;
+	static AnalysisResultsCache getSharedResultsCache() {
+		return sharedResultsCache;
+	}
+	private static AnalysisResultStore resultStore;
+	/* The settings that change the results or what is printed for them */
+	private static String resultStoreSettings;
+	/* Where the metrics of each pattern are written, null if they are not */
+	private static BufferedWriter metricsWriter;
 
 	/* Analysis Settings */
+	private static AnalysisSettings settings;
 	private static NFAConstruction nfaConstruction;
 	private static PreprocessingType preprocessingType;
 	private static EpsilonLoopRemovalStrategy epsilonLoopRemovalStrategy;
@@ -48,38 +74,20 @@ public class AnalysisDriverStdOut {
 	private static boolean shouldConstructEdaExploitString;
 	private static boolean shouldTestEdaExploitString;
 	private static boolean shouldConstructIdaExploitString;
+	private static boolean shouldReduceBisimilarStates;
+	private static int maxProductStates;
+	private static int maxAllocatedMb;
 	private static int timeout;
 	private static boolean timeoutEnabled;
 
-	public static void performAnalysis(BufferedReader regexesReader, InterfaceSettings interfaceSettings, AnalysisSettings analysisSettings) {
-		inputType = interfaceSettings.getInputType();
-		isVerbose = interfaceSettings.getIsVerbose();	
+	/* Batch mode */
+	private static final int MAX_PENDING_PER_THREAD = 4;
 
-		nfaConstruction = analysisSettings.getNFAConstruction();
-		preprocessingType = analysisSettings.getPreprocessingType();
-		epsilonLoopRemovalStrategy = analysisSettings.getEpsilonLoopRemovalStrategy();
-		priorityRemovalStrategy = analysisSettings.getPriorityRemovalStrategy();
-		shouldTestIDA = analysisSettings.getShouldTestIDA();
-		shouldConstructEdaExploitString = analysisSettings.getShouldConstructEdaExploitString();
-		shouldTestEdaExploitString = analysisSettings.getShouldTestExploitString();
-		shouldConstructIdaExploitString = analysisSettings.getShouldConstructIdaExploitString();
-		timeout = analysisSettings.getTimeout();
-		if (timeout > 0) {
-			timeoutEnabled = true;
-		}
+	public static void performAnalysis(BufferedReader regexesReader, InterfaceSettings interfaceSettings, AnalysisSettings analysisSettings) {
+		configure(interfaceSettings, analysisSettings);
 
 		int counter = 0;
-		int numAnalysed = 0;
-		int numVulnerable = 0;
-		int numEda = 0;
-		int numIda = 0;
-		int numSafe = 0;
-		LinkedList<Integer> edaVulnerableNumbers = new LinkedList<Integer>();
-		LinkedList<Integer> idaVulnerableNumbers = new LinkedList<Integer>();
-		int numSkipped = 0;
-		int numTimeout = 0;
-		int numTimeoutInEda = 0;
-		int numTimeoutInIda = 0;
+		AnalysisCounters counters = new AnalysisCounters();
 
 
 		/* Printing settings */
@@ -87,6 +95,27 @@ public class AnalysisDriverStdOut {
 			System.out.println("---Interface settings:---");
 			System.out.println("Input type:\t\t\t" + inputType);
 			System.out.println("Is Verbose:\t\t\t" + isVerbose);
+			System.out.println("Threads:\t\t\t" + numThreads);
+			if (numWorkers > 0) {
+				System.out.println("Workers:\t\t\t" + numWorkers);
+			} else {
+				System.out.println("Workers:\t\t\tDISABLED");
+			}
+			if (sharedResultsCache != null) {
+				System.out.println("Cache size:\t\t\t" + interfaceSettings.getCacheSize());
+			} else {
+				System.out.println("Cache size:\t\t\tDISABLED");
+			}
+			if (resultStore != null) {
+				System.out.println("Results store:\t\t\t" + interfaceSettings.getResultStoreDirectory());
+			} else {
+				System.out.println("Results store:\t\t\tDISABLED");
+			}
+			if (metricsWriter != null) {
+				System.out.println("Metrics out:\t\t\t" + interfaceSettings.getMetricsOutFile());
+			} else {
+				System.out.println("Metrics out:\t\t\tDISABLED");
+			}
 			System.out.println("---Analysis settings:---");
 			System.out.println("NFA Construction:\t\t" + nfaConstruction);
 			System.out.println("Preprocessing type:\t\t" + preprocessingType);
@@ -96,6 +125,17 @@ public class AnalysisDriverStdOut {
 			System.out.println("Construct EDA exploit strings:\t" + shouldConstructEdaExploitString);
 			System.out.println("Testing EDA exploit strings:\t" + shouldTestEdaExploitString);
 			System.out.println("Construct IDA exploit strings:\t" + shouldConstructIdaExploitString);
+			System.out.println("Reduce bisimilar states:\t" + shouldReduceBisimilarStates);
+			if (maxProductStates > 0) {
+				System.out.println("Max product states:\t\t" + maxProductStates);
+			} else {
+				System.out.println("Max product states:\t\tDISABLED");
+			}
+			if (maxAllocatedMb > 0) {
+				System.out.println("Max allocated:\t\t\t" + maxAllocatedMb + "MB");
+			} else {
+				System.out.println("Max allocated:\t\t\tDISABLED");
+			}
 			if (timeout > 0) {
 				System.out.println("Timeout:\t\t\t" + timeout + "s");
 			} else {
@@ -104,220 +144,26 @@ public class AnalysisDriverStdOut {
 			System.out.println("------------------------");
 		}
 
-		NFAAnalyserInterface analyser = getCorrectNFAAnalyser(epsilonLoopRemovalStrategy);
-		
 		Pattern slashesRegex = Pattern.compile("^/(.*)/[a-zA-Z]*$");
-		if (isVerbose && inputType == InputType.USER_INPUT) {
+		if (isVerbose && inputType == InputType.USER_INPUT && numThreads <= 1 && numWorkers == 0) {
 			System.out.println("Enter a regular expression to analyze:");
 		}
 		String pattern;
 		try {
 			long startTime = System.currentTimeMillis();
-			while ((pattern = regexesReader.readLine()) != null) {
-				/* To allow for the convention of writing regular expressions as / ... /, we simply take that in ... */
-				Matcher slashMatcher = slashesRegex.matcher(pattern);
-				if (slashMatcher.find()) {
-					pattern = slashMatcher.group(1);
-				}
-				if (isVerbose) {
-					System.out.println((counter + 1) + ". pattern = \"" + pattern + "\"");
-				} else {
-					System.out.println((counter + 1) + ": " + pattern);
-				}
-
-				try {
-					
-					String finalPattern = preprocessToFinalPattern(pattern);
-					if (isVerbose && !pattern.equals(finalPattern)) {
-						System.out.println("preprocessed pattern = \"" + finalPattern + "\"");
-					}
-					
-					AnalysisRunner ar = new AnalysisRunner(finalPattern, analyser);					
-					
-					final Thread AnalysisRunnerThread = new Thread(ar);
-					Thread sleepThread = new Thread() {
-						public void run() {
-							try {
-								if (timeoutEnabled) {
-									Thread.sleep(timeout * Constants.MILLISECONDS_IN_SECOND);
-									AnalysisRunnerThread.interrupt();
-								}
-							} catch (InterruptedException e) {
-								Thread.currentThread().interrupt();
-							}
-						}
-					};
-					
-					AnalysisRunnerThread.start();
-					sleepThread.start();
-					AnalysisRunnerThread.join();
-					sleepThread.interrupt();
-					
-					NFAGraph analysisGraph;
-					AnalysisResultsType results = ar.getAnalysisResultsType();
-					switch (results) {
-					case EDA:
-						analysisGraph = ar.getAnalysisGraph();
-						boolean constructedEdaExploitString = ar.constructedExploitString();
-						ExploitString edaExploitString = null;
-						String edaExploitStringStr = null;
-
-						if (constructedEdaExploitString) {
-							edaExploitString = ar.getExploitString();
-							edaExploitStringStr = edaExploitString.toString();
-						} else if (!shouldConstructEdaExploitString) {
-							edaExploitStringStr = "**Not Constructed**";
-						} else {
-							edaExploitStringStr = "**TIMEOUT**";
-						}
-				
-						if (isVerbose) {
-							/* We only construct the exploit string if the user asks for it */
-							System.out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
-							System.out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
-							System.out.println("Contains EDA with: " + edaExploitStringStr);
-							if (constructedEdaExploitString) {
-                System.out.println("\tEDA exploit string as JSON:\t" + new Gson().toJson(edaExploitString));
-								System.out.println("\tPrefix:\t\"" + edaExploitString.getPrefixVisual() + "\"");
-								System.out.println("\tPump:\t\"" + edaExploitString.getPumpByDegreeVisual(0) + "\"");
-								System.out.println("\tSuffix:\t\"" + edaExploitString.getSuffixVisual() + "\"");
-							}
-              else {
-                System.out.println("\tDid not construct EDA exploit string");
-              }
-							System.out.println("Total analysis time: " + ar.getTotalAnalysisTime());
-						} else {
-							System.out.print("EDA ");
-						}
-						if (shouldTestEdaExploitString) {
-							if (constructedEdaExploitString) {
-								testWithMatcher(edaExploitString, pattern);
-							} else {
-								System.out.println("NO_EXPLOIT_STRING_CONSTRUCTED");
-							}
-						} else {
-							System.out.println();
-						}
-						numVulnerable++;
-						numEda++;
-						edaVulnerableNumbers.add(counter + 1);
-						numAnalysed++;
-						break;
-					case NO_EDA:
-						if (isVerbose) {
-							System.out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
-							System.out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
-							System.out.println("Does not contain EDA");
-							System.out.println("Total analysis time: " + ar.getTotalAnalysisTime());
-						} else {
-							System.out.println("NO EDA");
-						}
-						numSafe++;
-						numAnalysed++;
-						break;
-					case IDA:	
-						IdaAnalysisResultsIda idaAnalysisResults = (IdaAnalysisResultsIda) ar.getAnalysisResults();
-						analysisGraph = ar.getAnalysisGraph();
-						//System.out.println("IDA:1");
-						//ExploitString idaResult = analyser.findIDAExploitString(analysisGraph);
-						boolean constructedIdaExploitString = ar.constructedExploitString();
-						ExploitString idaExploitString = null;
-						String idaExploitStringStr = null;
-						int degree = idaAnalysisResults.getDegree();
-						String idaDegreeString = "" + degree;
-						if (constructedIdaExploitString) {
-							idaExploitString = ar.getExploitString();
-							idaExploitStringStr = idaExploitString.toString();
-						} else if (!shouldConstructIdaExploitString) {
-							idaExploitStringStr = "** Not Constructed **";
-						} else {
-							idaExploitStringStr = "**TIMEOUT**";
-						}
+			if (numWorkers > 0) {
+				counter = AnalysisCoordinator.performShardedAnalysis(regexesReader, slashesRegex, counters, interfaceSettings, analysisSettings);
+			} else if (numThreads > 1) {
+				counter = performBatchAnalysis(regexesReader, slashesRegex, counters);
+			} else {
+				NFAAnalyserInterface analyser = getCorrectNFAAnalyser(epsilonLoopRemovalStrategy);
+				while ((pattern = regexesReader.readLine()) != null) {
+					analysePattern(counter + 1, stripSlashes(pattern, slashesRegex), analyser, System.out, counters);
+					counter++;
 
-						//System.out.println("IDA:2");
-						if (isVerbose) {
-							System.out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
-							System.out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
-							System.out.println("Does not contain EDA");
-							System.out.println("IDA analysis performed in: " + ar.getIdaAnalysisTime() + "ms");
-							System.out.println("Contains IDA, degree " + idaDegreeString + ", with: " + idaExploitStringStr);
-							if (constructedIdaExploitString) {
-                System.out.println("\tIDA exploit string as JSON:\t" + new Gson().toJson(idaExploitString));
-								for (int i = 0; i < degree; i++) {
-									if (i == 0) {
-										System.out.println("\tPrefix:\t\t\"" + idaExploitString.getSeparatorByDegreeVisual(i) + "\"");
-									} else {
-										System.out.println("\tSeparator " + i + ":\t\"" + idaExploitString.getSeparatorByDegreeVisual(i) + "\"");
-									}								
-									System.out.println("\tPump " + i + ":\t\t\"" + idaExploitString.getPumpByDegreeVisual(i) + "\"");
-								}
-								System.out.println("\tSuffix:\t\t\"" + idaExploitString.getSuffixVisual() + "\"");
-							}
-              else {
-                System.out.println("\tDid not construct IDA exploit string");
-              }
-							System.out.println("Total analysis time: " + ar.getTotalAnalysisTime());
-						} else {
-							System.out.println("IDA_" + idaDegreeString);
-							//System.out.println("IDA");
-						}
-						numVulnerable++;
-						numIda++;
-						idaVulnerableNumbers.add(counter + 1);
-						numAnalysed++;
-						break;
-					case NO_IDA:
-						if (isVerbose) {
-							System.out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
-							System.out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
-							System.out.println("Does not contain EDA");
-							System.out.println("IDA analysis performed in: " + ar.getIdaAnalysisTime() + "ms");
-							System.out.println("Does not contain IDA");
-							System.out.println("Total analysis time: " + ar.getTotalAnalysisTime());
-						} else {
-							System.out.println("NO IDA");
-						}
-						numSafe++;
-						numAnalysed++;
-						break;
-					case TIMEOUT_IN_EDA:
-						System.out.println("TIMEOUT in EDA");
-						numTimeout++;
-						numTimeoutInEda++;
-						break;
-					case TIMEOUT_IN_IDA:
-						System.out.println("TIMEOUT in IDA");
-						numTimeout++;
-						numTimeoutInIda++;
-						break;
-					case ANALYSIS_FAILED:
-						System.out.println("SKIPPED");
-						numSkipped++;
-						break;
-					}
-				} catch (PatternSyntaxException pse){
-					if (DEBUG) {
-						pse.printStackTrace();
-					}			
-					System.out.println((counter + 1) + ": SKIPPED: " + pse.getDescription());
-					numSkipped++;
-				} catch (Exception e) {
-						if (DEBUG) {
-							e.printStackTrace();
-						}
-						System.out.println((counter + 1) + ": SKIPPED: " + e.getMessage());
-						numSkipped++;
-				} catch (OutOfMemoryError oome) {
-					if (DEBUG) {
-						oome.printStackTrace();
+					if (isVerbose && inputType == InputType.USER_INPUT) {
+						System.out.println("Enter a regular expression to analyze:");
 					}
-					System.out.println((counter + 1) + ": SKIPPED: " + oome.getMessage());
-					numSkipped++;
-				}
-				counter++;
-
-				if (isVerbose && inputType == InputType.USER_INPUT) {
-					System.out.println("Enter a regular expression to analyze:");
 				}
 			}
 
@@ -327,41 +173,428 @@ public class AnalysisDriverStdOut {
 				System.out.println("Construction: " + nfaConstruction);
 				System.out.println("ε-loop removing strategy: " + epsilonLoopRemovalStrategy);
 			}
-			System.out.println("Analysed:\t" + numAnalysed + "/" + counter);
-			System.out.println("\tSafe:\t\t" + numSafe + "/" + counter);
-			System.out.println("\tVulnerable:\t" + numVulnerable + "/" + counter);
-			System.out.println("\t\tEDA:\t\t" + numEda + "/" + counter);
+			System.out.println("Analysed:\t" + counters.getNumAnalysed() + "/" + counter);
+			System.out.println("\tSafe:\t\t" + counters.getNumSafe() + "/" + counter);
+			System.out.println("\tVulnerable:\t" + counters.getNumVulnerable() + "/" + counter);
+			System.out.println("\t\tEDA:\t\t" + counters.getNumEda() + "/" + counter);
 			if (shouldTestIDA) {
-				System.out.println("\t\tIDA:\t\t" + numIda + "/" + counter);
+				System.out.println("\t\tIDA:\t\t" + counters.getNumIda() + "/" + counter);
 			}
-			System.out.println("\tVulnerable EDA:\t" + edaVulnerableNumbers);
+			System.out.println("\tVulnerable EDA:\t" + counters.getEdaVulnerableNumbers());
 			if (shouldTestIDA) {
-				System.out.println("\tVulnerable IDA:\t" + idaVulnerableNumbers);
+				System.out.println("\tVulnerable IDA:\t" + counters.getIdaVulnerableNumbers());
 			}
-			System.out.println("Skipped:\t" + numSkipped + "/" + counter);
-			System.out.println("Timeout:\t" + numTimeout + "/" + counter);
-			System.out.println("\t\tEDA:\t" + numTimeoutInEda + "/" + counter);
+			System.out.println("Skipped:\t" + counters.getNumSkipped() + "/" + counter);
+			System.out.println("Timeout:\t" + counters.getNumTimeout() + "/" + counter);
+			System.out.println("\t\tEDA:\t" + counters.getNumTimeoutInEda() + "/" + counter);
 			if (shouldTestIDA) {
-				System.out.println("\t\tIDA:\t" + numTimeoutInIda + "/" + counter);
+				System.out.println("\t\tIDA:\t" + counters.getNumTimeoutInIda() + "/" + counter);
+			}
+			if (maxProductStates > 0 || maxAllocatedMb > 0) {
+				System.out.println("Budget exceeded:\t" + counters.getNumBudgetExceeded() + "/" + counter);
+			}
+			
+			if (isVerbose && resultStore != null) {
+				System.out.println("From store:\t" + counters.getNumFromStore() + "/" + counter);
+			}
+			if (isVerbose && sharedResultsCache != null && numWorkers > 0) {
+				/* the workers each have their own cache */
+				long numHits = counters.getNumCacheHits();
+				long numLookups = counters.getNumCacheLookups();
+				double hitRate = numLookups == 0 ? 0 : (double) numHits / numLookups;
+				System.out.println("Cache hits:\t" + numHits + "/" + numLookups + String.format(" (%.1f%%)", 100 * hitRate));
+			} else if (isVerbose && sharedResultsCache != null) {
+				System.out.println("Cache hits:\t" + sharedResultsCache.getNumHits() + "/" + sharedResultsCache.getNumLookups() + String.format(" (%.1f%%)", 100 * sharedResultsCache.getHitRate()));
 			}
 			
 			System.out.println("Total running time: " + (endTime - startTime));
 		} catch (IOException ioe) {
 			System.err.println("Error while reading pattern.");
 			System.exit(0);
+		} finally {
+			if (resultStore != null) {
+				resultStore.close();
+			}
+			if (metricsWriter != null) {
+				try {
+					metricsWriter.close();
+				} catch (IOException ioe) {
+					System.err.println("Error while writing metrics.");
+				}
+			}
 		}
 
 		
 	}
 
-	private static NFAAnalyser getCorrectNFAAnalyser(EpsilonLoopRemovalStrategy epsilonLoopRemovalStrategy) {
+	/**
+	 * Sets up the settings, the shared results cache, the results store and
+	 * the metrics file the patterns are analysed with.
+	 */
+	static void configure(InterfaceSettings interfaceSettings, AnalysisSettings analysisSettings) {
+		inputType = interfaceSettings.getInputType();
+		isVerbose = interfaceSettings.getIsVerbose();	
+		numThreads = interfaceSettings.getNumThreads();
+		numWorkers = interfaceSettings.getNumWorkers();
+		if (interfaceSettings.getCacheSize() > 0) {
+			sharedResultsCache = new AnalysisResultsCache(interfaceSettings.getCacheSize());
+		} else {
+			sharedResultsCache = null;
+		}
+
+		settings = analysisSettings;
+		nfaConstruction = analysisSettings.getNFAConstruction();
+		preprocessingType = analysisSettings.getPreprocessingType();
+		epsilonLoopRemovalStrategy = analysisSettings.getEpsilonLoopRemovalStrategy();
+		priorityRemovalStrategy = analysisSettings.getPriorityRemovalStrategy();
+		shouldTestIDA = analysisSettings.getShouldTestIDA();
+		shouldConstructEdaExploitString = analysisSettings.getShouldConstructEdaExploitString();
+		shouldTestEdaExploitString = analysisSettings.getShouldTestExploitString();
+		shouldConstructIdaExploitString = analysisSettings.getShouldConstructIdaExploitString();
+		shouldReduceBisimilarStates = analysisSettings.getShouldReduceBisimilarStates();
+		maxProductStates = analysisSettings.getMaxProductStates();
+		maxAllocatedMb = analysisSettings.getMaxAllocatedMb();
+		timeout = analysisSettings.getTimeout();
+		if (timeout > 0) {
+			timeoutEnabled = true;
+		}
+		if (interfaceSettings.getResultStoreDirectory() != null) {
+			resultStore = new AnalysisResultStore(new File(interfaceSettings.getResultStoreDirectory()));
+			/*
+			 * Only the settings that change the verdict are part of the key. The
+			 * verdict is printed again for the verbosity of the run, and the
+			 * matcher test is run again, so those settings are left out. So is
+			 * the timeout, since results found with any timeout are valid.
+			 */
+			resultStoreSettings = nfaConstruction + " " + preprocessingType + " " + epsilonLoopRemovalStrategy + " " + priorityRemovalStrategy + " " + shouldTestIDA + " "
+					+ shouldConstructEdaExploitString + " " + shouldConstructIdaExploitString + " " + shouldReduceBisimilarStates;
+		} else {
+			resultStore = null;
+		}
+		if (interfaceSettings.getMetricsOutFile() != null) {
+			try {
+				metricsWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(interfaceSettings.getMetricsOutFile()), StandardCharsets.UTF_8));
+			} catch (IOException ioe) {
+				System.err.println("Could not open metrics file " + interfaceSettings.getMetricsOutFile() + ".");
+				System.exit(0);
+			}
+		} else {
+			metricsWriter = null;
+		}
+	}
+
+	static String stripSlashes(String pattern, Pattern slashesRegex) {
+		/* To allow for the convention of writing regular expressions as / ... /, we simply take that in ... */
+		Matcher slashMatcher = slashesRegex.matcher(pattern);
+		if (slashMatcher.find()) {
+			return slashMatcher.group(1);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Analyses the patterns read from the reader on a fixed pool of worker threads.
+	 * The output of each pattern is buffered and printed in input order.
+	 * @return The number of patterns read.
+	 */
+	private static int performBatchAnalysis(BufferedReader regexesReader, Pattern slashesRegex, final AnalysisCounters counters) throws IOException {
+		/* The analysers are not thread safe, so each worker gets its own and they only share the results cache */
+		final ThreadLocal<NFAAnalyserInterface> workerAnalyser = new ThreadLocal<NFAAnalyserInterface>() {
+			@Override
+			protected NFAAnalyserInterface initialValue() {
+				return getCorrectNFAAnalyser(epsilonLoopRemovalStrategy);
+			}
+		};
+		ExecutorService workerPool = Executors.newFixedThreadPool(numThreads);
+		/* Bound the number of buffered results so a slow pattern does not let the queue grow without limit */
+		int maxPending = numThreads * MAX_PENDING_PER_THREAD;
+		LinkedList<PendingResult> pending = new LinkedList<PendingResult>();
+		int counter = 0;
+		String pattern;
+		try {
+			while ((pattern = regexesReader.readLine()) != null) {
+				final int number = counter + 1;
+				final String finalPattern = stripSlashes(pattern, slashesRegex);
+				pending.add(new PendingResult(number, workerPool.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+						PrintStream out = new PrintStream(buffer);
+						analysePattern(number, finalPattern, workerAnalyser.get(), out, counters);
+						out.flush();
+						return buffer.toString();
+					}
+				})));
+				counter++;
+				while (pending.size() >= maxPending) {
+					printBatchResult(pending.removeFirst(), counters);
+				}
+			}
+			while (!pending.isEmpty()) {
+				printBatchResult(pending.removeFirst(), counters);
+			}
+		} finally {
+			workerPool.shutdownNow();
+		}
+		return counter;
+	}
+
+	private static void printBatchResult(PendingResult result, AnalysisCounters counters) {
+		try {
+			System.out.print(result.output.get());
+		} catch (ExecutionException ee) {
+			if (DEBUG) {
+				ee.printStackTrace();
+			}
+			System.out.println(result.number + ": SKIPPED: " + ee.getCause());
+			counters.recordSkipped();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for analysis results.");
+		}
+	}
+
+	/**
+	 * What an analysis found about a pattern, from which its output is printed.
+	 */
+	static class AnalysisVerdict {
+
+		private final AnalysisResultsType resultsType;
+		AnalysisResultsType getResultsType() {
+			return resultsType;
+		}
+
+		/* The degree of the polynomial for IDA, 0 otherwise */
+		private final int degree;
+		int getDegree() {
+			return degree;
+		}
+
+		/* null if no exploit string was constructed */
+		private final ExploitString exploitString;
+		ExploitString getExploitString() {
+			return exploitString;
+		}
+
+		AnalysisVerdict(AnalysisResultsType resultsType, int degree, ExploitString exploitString) {
+			this.resultsType = resultsType;
+			this.degree = degree;
+			this.exploitString = exploitString;
+		}
+	}
+
+	/* The output of a pattern analysed by a worker, with the number of the pattern for when the worker fails */
+	private static class PendingResult {
+		private final int number;
+		private final Future<String> output;
+
+		PendingResult(int number, Future<String> output) {
+			this.number = number;
+			this.output = output;
+		}
+	}
+
+	private static void analysePattern(int number, String pattern, NFAAnalyserInterface analyser, PrintStream out, AnalysisCounters counters) {
+		printPatternHeader(number, pattern, out);
+		if (printStoredResult(number, pattern, out, counters)) {
+			return;
+		}
+
+		AnalysisMetrics metrics = null;
+		if (metricsWriter != null) {
+			metrics = new AnalysisMetrics(number, pattern);
+		}
+		AnalysisVerdict verdict = printAnalysis(number, pattern, analyser, out, counters, metrics);
+		writeMetrics(metrics, verdict != null ? verdict.getResultsType() : null);
+		storeResult(pattern, verdict);
+	}
+
+	static void printPatternHeader(int number, String pattern, PrintStream out) {
+		if (isVerbose) {
+			out.println(number + ". pattern = \"" + pattern + "\"");
+		} else {
+			out.println(number + ": " + pattern);
+		}
+	}
+
+	/**
+	 * @return Whether the verdict of the pattern is in the results store.
+	 */
+	static boolean hasStoredResult(String pattern) {
+		return resultStore != null && resultStore.get(AnalysisResultStore.createKey(resultStoreSettings, pattern)) != null;
+	}
+
+	/**
+	 * Prints and counts the verdict of a pattern from the results store, if it
+	 * is there. The exploit string is tested with the matcher again, since how
+	 * the matcher does depends on the machine and the timeout.
+	 * @return Whether the verdict of the pattern was in the store.
+	 */
+	static boolean printStoredResult(int number, String pattern, PrintStream out, AnalysisCounters counters) {
+		if (resultStore == null) {
+			return false;
+		}
+		StoredResult storedResult = resultStore.get(AnalysisResultStore.createKey(resultStoreSettings, pattern));
+		if (storedResult == null) {
+			return false;
+		}
+		printVerdict(number, pattern, storedResult.getVerdict(), null, out, counters);
+		counters.recordFromStore();
+		if (metricsWriter != null) {
+			AnalysisMetrics metrics = new AnalysisMetrics(number, pattern);
+			metrics.setFromStore(true);
+			writeMetrics(metrics, storedResult.getVerdict().getResultsType());
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps the verdict of an analysed pattern in the results store, if there
+	 * is a store and the verdict does not depend on the machine.
+	 */
+	static void storeResult(String pattern, AnalysisVerdict verdict) {
+		if (resultStore == null || verdict == null) {
+			return;
+		}
+		switch (verdict.getResultsType()) {
+		case EDA:
+			if (verdict.getExploitString() == null && shouldConstructEdaExploitString) {
+				/* the exploit string timed out, so it might be found with a longer timeout */
+				return;
+			}
+			break;
+		case IDA:
+			if (verdict.getExploitString() == null && shouldConstructIdaExploitString) {
+				return;
+			}
+			break;
+		case NO_EDA:
+		case NO_IDA:
+			break;
+		default:
+			/* timeouts and skipped patterns depend on the machine, so they are analysed again */
+			return;
+		}
+		resultStore.put(AnalysisResultStore.createKey(resultStoreSettings, pattern), verdict);
+	}
+
+	/**
+	 * Writes the metrics of a pattern as one line of JSON, if metrics are written.
+	 * The workers finish out of order, so the lines are not necessarily in input order.
+	 */
+	static void writeMetrics(AnalysisMetrics metrics, AnalysisResultsType resultsType) {
+		if (metrics == null) {
+			return;
+		}
+		if (resultsType != null) {
+			metrics.setResult(resultsType.toString());
+		} else {
+			metrics.setResult("SKIPPED");
+		}
+		String metricsJson = new Gson().toJson(metrics);
+		synchronized (metricsWriter) {
+			try {
+				metricsWriter.write(metricsJson);
+				metricsWriter.newLine();
+				metricsWriter.flush();
+			} catch (IOException ioe) {
+				System.err.println("Error while writing metrics.");
+			}
+		}
+	}
+
+	/**
+	 * Analyses a pattern and prints the results, apart from the line with its number.
+	 * @return The type of the results, or null if the analysis did not complete.
+	 */
+	static AnalysisVerdict printAnalysis(int number, String pattern, NFAAnalyserInterface analyser, PrintStream out, AnalysisCounters counters, AnalysisMetrics metrics) {
+		try {
+			
+			String finalPattern = preprocessToFinalPattern(pattern, preprocessingType);
+			if (isVerbose && !pattern.equals(finalPattern)) {
+				out.println("preprocessed pattern = \"" + finalPattern + "\"");
+			}
+			if (metrics != null) {
+				metrics.setPreprocessedLength(finalPattern.length());
+			}
+			
+			AnalysisRunner ar = new AnalysisRunner(finalPattern, analyser, settings, metrics);					
+			
+			runOnCurrentThread(ar);
+			
+			AnalysisResultsType results = ar.getAnalysisResultsType();
+			ExploitString exploitString = null;
+			if (ar.constructedExploitString()) {
+				exploitString = ar.getExploitString();
+			}
+			AnalysisVerdict verdict;
+			switch (results) {
+			case EDA:
+				verdict = new AnalysisVerdict(results, 0, exploitString);
+				break;
+			case IDA:
+				IdaAnalysisResultsIda idaAnalysisResults = (IdaAnalysisResultsIda) ar.getAnalysisResults();
+				verdict = new AnalysisVerdict(results, idaAnalysisResults.getDegree(), exploitString);
+				break;
+			default:
+				verdict = new AnalysisVerdict(results, 0, null);
+				break;
+			}
+			printVerdict(number, pattern, verdict, ar, out, counters);
+			return verdict;
+		} catch (PatternSyntaxException pse){
+			if (DEBUG) {
+				pse.printStackTrace();
+			}			
+			out.println(number + ": SKIPPED: " + pse.getDescription());
+			counters.recordSkipped();
+		} catch (Exception e) {
+				if (DEBUG) {
+					e.printStackTrace();
+				}
+				out.println(number + ": SKIPPED: " + e.getMessage());
+				counters.recordSkipped();
+		} catch (OutOfMemoryError oome) {
+			if (DEBUG) {
+				oome.printStackTrace();
+			}
+			out.println(number + ": SKIPPED: " + oome.getMessage());
+			counters.recordSkipped();
+		} catch (StackOverflowError soe) {
+			if (DEBUG) {
+				soe.printStackTrace();
+			}
+			out.println(number + ": SKIPPED: stack overflow");
+			counters.recordSkipped();
+		}
+		return null;
+	}
+
+	/**
+	 * Runs the analysis runner on the calling thread. The runner stops itself
+	 * once its budget, including the timeout, is exceeded.
+	 */
+	static void runOnCurrentThread(AnalysisRunner ar) {
+		try {
+			ar.run();
+		} finally {
+			/* The runner may have left the thread interrupted */
+			Thread.interrupted();
+		}
+	}
+
+	static NFAAnalyser getCorrectNFAAnalyser(EpsilonLoopRemovalStrategy epsilonLoopRemovalStrategy) {
+		return createNFAAnalyser(epsilonLoopRemovalStrategy, priorityRemovalStrategy, shouldReduceBisimilarStates, sharedResultsCache);
+	}
+
+	static NFAAnalyser createNFAAnalyser(EpsilonLoopRemovalStrategy epsilonLoopRemovalStrategy, PriorityRemovalStrategy priorityRemovalStrategy, boolean shouldReduceBisimilarStates, AnalysisResultsCache sharedResultsCache) {
 		NFAAnalyser analyser;
 		switch (epsilonLoopRemovalStrategy) {
 		case MERGING:
-			analyser = new NFAAnalyserMerging(priorityRemovalStrategy);
+			analyser = new NFAAnalyserMerging(priorityRemovalStrategy, sharedResultsCache, shouldReduceBisimilarStates);
 			break;
 		case FLATTENING:
-			analyser = new NFAAnalyserFlattening(priorityRemovalStrategy);
+			analyser = new NFAAnalyserFlattening(priorityRemovalStrategy, sharedResultsCache, shouldReduceBisimilarStates);
 			break;
 		default:
 			throw new RuntimeException("Unkown Strategy: " + epsilonLoopRemovalStrategy);
@@ -369,7 +602,7 @@ public class AnalysisDriverStdOut {
 		return analyser;
 	}
 
-	private static String preprocessToFinalPattern(String pattern) {
+	static String preprocessToFinalPattern(String pattern, PreprocessingType preprocessingType) {
 		Preprocessor preprocessor;
 		String finalPattern;
 		switch (preprocessingType) {
@@ -390,9 +623,169 @@ public class AnalysisDriverStdOut {
 		return finalPattern;
 	}
 
-	private static void testWithMatcher(ExploitString es, String regex) {	
+	/**
+	 * Prints and counts the verdict of a pattern, either from its analysis or
+	 * from the results store.
+	 * @param ar
+	 *            The analysis the verdict came from, with the times it took,
+	 *            or null if the verdict came from the store.
+	 */
+	static void printVerdict(int number, String pattern, AnalysisVerdict verdict, AnalysisRunner ar, PrintStream out, AnalysisCounters counters) {
+		switch (verdict.getResultsType()) {
+		case EDA:
+			ExploitString edaExploitString = verdict.getExploitString();
+			boolean constructedEdaExploitString = edaExploitString != null;
+			String edaExploitStringStr = null;
+
+			if (constructedEdaExploitString) {
+				edaExploitStringStr = edaExploitString.toString();
+			} else if (!shouldConstructEdaExploitString) {
+				edaExploitStringStr = "**Not Constructed**";
+			} else {
+				edaExploitStringStr = "**TIMEOUT**";
+			}
+	
+			if (isVerbose) {
+				/* We only construct the exploit string if the user asks for it */
+				if (ar != null) {
+					out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
+					out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
+				}
+				out.println("Contains EDA with: " + edaExploitStringStr);
+				if (constructedEdaExploitString) {
+                out.println("\tEDA exploit string as JSON:\t" + new Gson().toJson(edaExploitString));
+					out.println("\tPrefix:\t\"" + edaExploitString.getPrefixVisual() + "\"");
+					out.println("\tPump:\t\"" + edaExploitString.getPumpByDegreeVisual(0) + "\"");
+					out.println("\tSuffix:\t\"" + edaExploitString.getSuffixVisual() + "\"");
+				}
+              else {
+                out.println("\tDid not construct EDA exploit string");
+              }
+				if (ar != null) {
+					out.println("Total analysis time: " + ar.getTotalAnalysisTime());
+				}
+			} else {
+				out.print("EDA ");
+			}
+			if (shouldTestEdaExploitString) {
+				if (constructedEdaExploitString) {
+					testWithMatcher(edaExploitString, pattern, out);
+				} else {
+					out.println("NO_EXPLOIT_STRING_CONSTRUCTED");
+				}
+			} else {
+				out.println();
+			}
+			counters.recordEda(number);
+			break;
+		case NO_EDA:
+			if (isVerbose) {
+				if (ar != null) {
+					out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
+					out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
+				}
+				out.println("Does not contain EDA");
+				if (ar != null) {
+					out.println("Total analysis time: " + ar.getTotalAnalysisTime());
+				}
+			} else {
+				out.println("NO EDA");
+			}
+			counters.recordSafe();
+			break;
+		case IDA:	
+			ExploitString idaExploitString = verdict.getExploitString();
+			boolean constructedIdaExploitString = idaExploitString != null;
+			String idaExploitStringStr = null;
+			int degree = verdict.getDegree();
+			String idaDegreeString = "" + degree;
+			if (constructedIdaExploitString) {
+				idaExploitStringStr = idaExploitString.toString();
+			} else if (!shouldConstructIdaExploitString) {
+				idaExploitStringStr = "** Not Constructed **";
+			} else {
+				idaExploitStringStr = "**TIMEOUT**";
+			}
+
+			//out.println("IDA:2");
+			if (isVerbose) {
+				if (ar != null) {
+					out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
+					out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
+				}
+				out.println("Does not contain EDA");
+				if (ar != null) {
+					out.println("IDA analysis performed in: " + ar.getIdaAnalysisTime() + "ms");
+				}
+				out.println("Contains IDA, degree " + idaDegreeString + ", with: " + idaExploitStringStr);
+				if (constructedIdaExploitString) {
+                out.println("\tIDA exploit string as JSON:\t" + new Gson().toJson(idaExploitString));
+					for (int i = 0; i < degree; i++) {
+						if (i == 0) {
+							out.println("\tPrefix:\t\t\"" + idaExploitString.getSeparatorByDegreeVisual(i) + "\"");
+						} else {
+							out.println("\tSeparator " + i + ":\t\"" + idaExploitString.getSeparatorByDegreeVisual(i) + "\"");
+						}								
+						out.println("\tPump " + i + ":\t\t\"" + idaExploitString.getPumpByDegreeVisual(i) + "\"");
+					}
+					out.println("\tSuffix:\t\t\"" + idaExploitString.getSuffixVisual() + "\"");
+				}
+              else {
+                out.println("\tDid not construct IDA exploit string");
+              }
+				if (ar != null) {
+					out.println("Total analysis time: " + ar.getTotalAnalysisTime());
+				}
+			} else {
+				out.println("IDA_" + idaDegreeString);
+				//out.println("IDA");
+			}
+			counters.recordIda(number);
+			break;
+		case NO_IDA:
+			if (isVerbose) {
+				if (ar != null) {
+					out.println("NFA constructed in: " + ar.getNfaConstructionTime() + "ms");
+					out.println("EDA analysis performed in: " + ar.getEdaAnalysisTime() + "ms");
+				}
+				out.println("Does not contain EDA");
+				if (ar != null) {
+					out.println("IDA analysis performed in: " + ar.getIdaAnalysisTime() + "ms");
+				}
+				out.println("Does not contain IDA");
+				if (ar != null) {
+					out.println("Total analysis time: " + ar.getTotalAnalysisTime());
+				}
+			} else {
+				out.println("NO IDA");
+			}
+			counters.recordSafe();
+			break;
+		case TIMEOUT_IN_EDA:
+			out.println("TIMEOUT in EDA");
+			counters.recordTimeoutInEda();
+			break;
+		case TIMEOUT_IN_IDA:
+			out.println("TIMEOUT in IDA");
+			counters.recordTimeoutInIda();
+			break;
+		case BUDGET_EXCEEDED:
+			if (isVerbose && ar != null) {
+				out.println("BUDGET EXCEEDED: " + ar.getExceededLimit());
+			} else {
+				out.println("BUDGET EXCEEDED");
+			}
+			counters.recordBudgetExceeded();
+			break;
+		case ANALYSIS_FAILED:
+			out.println("SKIPPED");
+			counters.recordSkipped();
+			break;
+		}
+	}
+
+	private static void testWithMatcher(ExploitString es, String regex, PrintStream out) {	
 		int max_tries = 500;
-		final Thread parentThread = Thread.currentThread();
 		Pattern pattern = Pattern.compile(regex, Pattern.DOTALL);
 		int pumpLength = es.getPumpByDegree(0).length();
 		int i = 0;
@@ -406,41 +799,33 @@ public class AnalysisDriverStdOut {
 			}
 			exploitStringShort += es.getSuffix();
 
-			Thread thread1 = new Thread() {
-				public void run() {
-					try {
-						/* If the shortest exploit string takes longer than the timeout set, we assume its vulnerable. */
-						sleep(timeout * Constants.MILLISECONDS_IN_SECOND);
-						parentThread.interrupt();
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
-					}
-				}
-			};
-
-			InterruptibleMatchingString matchingStringShort = new InterruptibleMatchingString(exploitStringShort);
+			/* If the shortest exploit string takes longer than the timeout set, we assume its vulnerable. */
+			long shortDeadline = InterruptibleMatchingString.NO_DEADLINE;
+			if (timeoutEnabled) {
+				shortDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+			}
+			InterruptibleMatchingString matchingStringShort = new InterruptibleMatchingString(exploitStringShort, shortDeadline);
 			Matcher matcher = pattern.matcher(matchingStringShort);
 			long shortTimeTmp = -1;
 			int longPumpIterations;
 			try {
-				if (timeoutEnabled) {
-					thread1.start();	
-				}
 				long shortStartTime = System.currentTimeMillis();
 				matcher.matches();
-				thread1.interrupt();
 				long shortEndtTime = System.currentTimeMillis();
 				shortTimeTmp = (shortEndtTime - shortStartTime);
 				longPumpIterations = shortPumpIterations + 1;
+			} catch (StackOverflowError soe) {
+				printMatcherStackOverflow(exploitStringShort, out);
+				return;
 			} catch (Exception e) {
 				if (DEBUG) {
 					e.printStackTrace();
 				}
 				if (isVerbose) {
-					System.out.println("\t\t\tVulnerable:");
-					System.out.println("\t\t\t" + ExploitString.visualiseString(exploitStringShort) + " Time: (timeout) >(" + timeout + "s)");
+					out.println("\t\t\tVulnerable:");
+					out.println("\t\t\t" + ExploitString.visualiseString(exploitStringShort) + " Time: (timeout) >(" + timeout + "s)");
 				} else {
-					System.out.println("MATCHER_CONFIRMED_EXP_TIME");
+					out.println("MATCHER_CONFIRMED_EXP_TIME");
 				}
 				return;
 			}
@@ -458,40 +843,30 @@ public class AnalysisDriverStdOut {
 			}
 			exploitBuilder.append(es.getSuffix());
 			String exploitStringLong = exploitBuilder.toString();
-			InterruptibleMatchingString matchingString = new InterruptibleMatchingString(exploitStringLong);
-				
-			/* timing thread to monitor the runtime of the matcher */
-			Thread thread2 = new Thread() {
-				public void run() {
-					try {
-						/* wait and see if it finishes */
-						sleep(shortTime * 10);
-						parentThread.interrupt();
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
-					}
-				}
-			};
+			/* wait and see if it finishes */
+			long longDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shortTime * 10);
+			InterruptibleMatchingString matchingString = new InterruptibleMatchingString(exploitStringLong, longDeadline);
 
 			long longStartTime = 0, longEndTime = 0;
 			try {
 				
-				thread2.start();
 				matcher = pattern.matcher(matchingString);
 				longStartTime = System.currentTimeMillis();
 				matcher.matches();
-				thread2.interrupt();
 				longEndTime = System.currentTimeMillis();
+			} catch (StackOverflowError soe) {
+				printMatcherStackOverflow(exploitStringLong, out);
+				return;
 			} catch (Exception e) {
 				if (DEBUG) {
 					e.printStackTrace();
 				}
 				if (isVerbose) {
-					System.out.println("\t\t\tVulnerable:");
-					System.out.println("\t\t\t" + String.format("%1$-" + pumpLength + "s", ExploitString.visualiseString(exploitStringShort)) + " Time: " + shortTime);
-					System.out.println("\t\t\t" + ExploitString.visualiseString(exploitStringLong) + " Time: (timeout) >(" + shortTime + " * 10)");
+					out.println("\t\t\tVulnerable:");
+					out.println("\t\t\t" + String.format("%1$-" + pumpLength + "s", ExploitString.visualiseString(exploitStringShort)) + " Time: " + shortTime);
+					out.println("\t\t\t" + ExploitString.visualiseString(exploitStringLong) + " Time: (timeout) >(" + shortTime + " * 10)");
 				} else {
-					System.out.println("MATCHER_CONFIRMED_EXP_TIME");
+					out.println("MATCHER_CONFIRMED_EXP_TIME");
 				}
 				return;
 			}
@@ -499,11 +874,11 @@ public class AnalysisDriverStdOut {
 
 			if (longTime > 2 * shortTime) {
 				if (isVerbose) {
-					System.out.println("\t\t\tVulnerable:");
-					System.out.println("\t\t\t" + String.format("%1$-" + pumpLength + "s", ExploitString.visualiseString(exploitStringShort)) + " Time: " + shortTime);
-					System.out.println("\t\t\t" + ExploitString.visualiseString(exploitStringLong) + " Time: " + longTime);
+					out.println("\t\t\tVulnerable:");
+					out.println("\t\t\t" + String.format("%1$-" + pumpLength + "s", ExploitString.visualiseString(exploitStringShort)) + " Time: " + shortTime);
+					out.println("\t\t\t" + ExploitString.visualiseString(exploitStringLong) + " Time: " + longTime);
 				} else {
-					System.out.println("MATCHER_CONFIRMED_EXP_TIME");
+					out.println("MATCHER_CONFIRMED_EXP_TIME");
 				}
 				return;
 			}
@@ -511,20 +886,190 @@ public class AnalysisDriverStdOut {
 		}
 
 		if (isVerbose) {
-			System.out.println("Java matcher did not display exponential matching time...");
+			out.println("Java matcher did not display exponential matching time...");
+		} else {
+			out.println("MATCHER_DID_NOT_DISPLAY_EXP_TIME");
+		}
+	}
+
+	/* The Java matcher recurses for repetitions, so it can run out of stack before its matching time says anything */
+	private static void printMatcherStackOverflow(String exploitString, PrintStream out) {
+		if (isVerbose) {
+			out.println("\t\t\tInconclusive:");
+			out.println("\t\t\t" + ExploitString.visualiseString(exploitString) + " Time: (stack overflow)");
 		} else {
-			System.out.println("MATCHER_DID_NOT_DISPLAY_EXP_TIME");
+			out.println("MATCHER_STACK_OVERFLOW");
+		}
+	}
+
+	/**
+	 * Totals the outcomes of the analysed patterns, possibly reported from several worker threads.
+	 */
+	static class AnalysisCounters {
+
+		private int numAnalysed = 0;
+		private int numVulnerable = 0;
+		private int numEda = 0;
+		private int numIda = 0;
+		private int numSafe = 0;
+		private final LinkedList<Integer> edaVulnerableNumbers = new LinkedList<Integer>();
+		private final LinkedList<Integer> idaVulnerableNumbers = new LinkedList<Integer>();
+		private int numSkipped = 0;
+		private int numTimeout = 0;
+		private int numTimeoutInEda = 0;
+		private int numTimeoutInIda = 0;
+		private int numBudgetExceeded = 0;
+		private int numFromStore = 0;
+		/* Only counted for caches other than the shared one, such as those of worker processes */
+		private long numCacheHits = 0;
+		private long numCacheLookups = 0;
+
+		/**
+		 * Adds the outcomes totalled by other counters, such as those of a worker process.
+		 */
+		synchronized void add(AnalysisCounters other) {
+			numAnalysed += other.numAnalysed;
+			numVulnerable += other.numVulnerable;
+			numEda += other.numEda;
+			numIda += other.numIda;
+			numSafe += other.numSafe;
+			edaVulnerableNumbers.addAll(other.edaVulnerableNumbers);
+			idaVulnerableNumbers.addAll(other.idaVulnerableNumbers);
+			numSkipped += other.numSkipped;
+			numTimeout += other.numTimeout;
+			numTimeoutInEda += other.numTimeoutInEda;
+			numTimeoutInIda += other.numTimeoutInIda;
+			numBudgetExceeded += other.numBudgetExceeded;
+			numFromStore += other.numFromStore;
+			numCacheHits += other.numCacheHits;
+			numCacheLookups += other.numCacheLookups;
+		}
+
+		synchronized void recordFromStore() {
+			numFromStore++;
+		}
+
+		synchronized int getNumFromStore() {
+			return numFromStore;
+		}
+
+		synchronized void recordCacheLookups(long numHits, long numLookups) {
+			numCacheHits += numHits;
+			numCacheLookups += numLookups;
+		}
+
+		synchronized long getNumCacheHits() {
+			return numCacheHits;
+		}
+
+		synchronized long getNumCacheLookups() {
+			return numCacheLookups;
+		}
+
+		synchronized void recordEda(int number) {
+			numVulnerable++;
+			numEda++;
+			edaVulnerableNumbers.add(number);
+			numAnalysed++;
+		}
+
+		synchronized void recordIda(int number) {
+			numVulnerable++;
+			numIda++;
+			idaVulnerableNumbers.add(number);
+			numAnalysed++;
+		}
+
+		synchronized void recordSafe() {
+			numSafe++;
+			numAnalysed++;
+		}
+
+		synchronized void recordTimeoutInEda() {
+			numTimeout++;
+			numTimeoutInEda++;
+		}
+
+		synchronized void recordTimeoutInIda() {
+			numTimeout++;
+			numTimeoutInIda++;
+		}
+
+		synchronized void recordBudgetExceeded() {
+			numBudgetExceeded++;
+		}
+
+		synchronized void recordSkipped() {
+			numSkipped++;
+		}
+
+		synchronized int getNumAnalysed() {
+			return numAnalysed;
+		}
+
+		synchronized int getNumVulnerable() {
+			return numVulnerable;
+		}
+
+		synchronized int getNumEda() {
+			return numEda;
+		}
+
+		synchronized int getNumIda() {
+			return numIda;
+		}
+
+		synchronized int getNumSafe() {
+			return numSafe;
+		}
+
+		/* Workers may finish out of order, so the numbers are sorted before they are reported */
+		synchronized LinkedList<Integer> getEdaVulnerableNumbers() {
+			LinkedList<Integer> sorted = new LinkedList<Integer>(edaVulnerableNumbers);
+			Collections.sort(sorted);
+			return sorted;
+		}
+
+		synchronized LinkedList<Integer> getIdaVulnerableNumbers() {
+			LinkedList<Integer> sorted = new LinkedList<Integer>(idaVulnerableNumbers);
+			Collections.sort(sorted);
+			return sorted;
+		}
+
+		synchronized int getNumSkipped() {
+			return numSkipped;
+		}
+
+		synchronized int getNumTimeout() {
+			return numTimeout;
+		}
+
+		synchronized int getNumTimeoutInEda() {
+			return numTimeoutInEda;
+		}
+
+		synchronized int getNumTimeoutInIda() {
+			return numTimeoutInIda;
+		}
+
+		synchronized int getNumBudgetExceeded() {
+			return numBudgetExceeded;
 		}
 	}
 
-	private static class AnalysisRunner implements Runnable {
+	static class AnalysisRunner implements Runnable {
 				
 		private final String pattern;
 		private final NFAAnalyserInterface analyser;
+		private final AnalysisSettings settings;
+		/* null if no metrics are recorded */
+		private final AnalysisMetrics metrics;
 		
-		private AnalysisRunner(String pattern, NFAAnalyserInterface analyser) {
+		AnalysisRunner(String pattern, NFAAnalyserInterface analyser, AnalysisSettings settings, AnalysisMetrics metrics) {
 			this.pattern = pattern;
 			this.analyser = analyser;
+			this.settings = settings;
+			this.metrics = metrics;
 		}
 
 		private NFAGraph analysisGraph;
@@ -558,10 +1103,16 @@ public class AnalysisDriverStdOut {
 		}
 		
 		private AnalysisResults analysisResults;
-		private AnalysisResults getAnalysisResults() {
+		AnalysisResults getAnalysisResults() {
 			return analysisResults;
 		}
 
+		/* The limit of the budget that was exceeded, null if none was */
+		private AnalysisBudget.Limit exceededLimit;
+		public AnalysisBudget.Limit getExceededLimit() {
+			return exceededLimit;
+		}
+
 		private ExploitString exploitString;
 		public ExploitString getExploitString() {
 			return exploitString;
@@ -575,49 +1126,71 @@ public class AnalysisDriverStdOut {
 
 			boolean finishedEdaAnalysis = false;
 			boolean finishedIdaAnalysis = false;
+			long allocatedBytesBefore = AnalysisBudget.currentThreadAllocatedBytes();
+			AnalysisBudget budget = AnalysisBudget.fromSettings(settings);
+			analyser.setMetrics(metrics);
+			analyser.setBudget(budget);
 			try {
 				long totalAnalysisStartTime = System.currentTimeMillis();
-				analysisGraph = MyPattern.toNFAGraph(pattern, nfaConstruction);	
+				analysisGraph = MyPattern.toNFAGraph(pattern, settings.getNFAConstruction());	
 				if (DEBUG) {
 					System.out.println(analysisGraph);
 				}
 				nfaConstructionTime = System.currentTimeMillis() - totalAnalysisStartTime;
+				if (metrics != null) {
+					metrics.recordNfa(analysisGraph);
+					metrics.setNfaConstructionTime(nfaConstructionTime);
+				}
 				long edaAnalysisStartTime = System.currentTimeMillis();
 				analysisResultsType = analyser.containsEDA(analysisGraph);
-				if (analysisResultsType != AnalysisResultsType.TIMEOUT_IN_EDA) {
+				if (analysisResultsType != AnalysisResultsType.TIMEOUT_IN_EDA && analysisResultsType != AnalysisResultsType.BUDGET_EXCEEDED) {
 					analysisResults = analyser.getEdaAnalysisResults(analysisGraph);	
 					edaAnalysisTime = System.currentTimeMillis() - edaAnalysisStartTime;
 					totalAnalysisTime += nfaConstructionTime + edaAnalysisTime;
 					finishedEdaAnalysis = true;
+					if (metrics != null) {
+						metrics.setEdaAnalysisTime(edaAnalysisTime);
+					}
 					switch (analysisResultsType) {
 					case EDA:
-						if (shouldConstructEdaExploitString) {
+						if (settings.getShouldConstructEdaExploitString()) {
+							long exploitStringStartTime = System.currentTimeMillis();
 							try {
 								exploitString = analyser.findEDAExploitString(analysisGraph);
 							} catch (InterruptedException ie) {
 							
 							}
+							if (metrics != null) {
+								metrics.setExploitStringTime(System.currentTimeMillis() - exploitStringStartTime);
+							}
 						}
 						break;
 					case NO_EDA:
-						if (shouldTestIDA) {
+						if (settings.getShouldTestIDA()) {
 							long idaAnalysisStartTime = System.currentTimeMillis();
 							//System.out.println("AnalysisDriverStdOut:run:1");
 							analysisResultsType = analyser.containsIDA(analysisGraph);
-							if (analysisResultsType != AnalysisResultsType.TIMEOUT_IN_IDA) {
+							if (analysisResultsType != AnalysisResultsType.TIMEOUT_IN_IDA && analysisResultsType != AnalysisResultsType.BUDGET_EXCEEDED) {
 								analysisResults = analyser.getIdaAnalysisResults(analysisGraph);
 								//System.out.println("AnalysisDriverStdOut:run:2");
 								idaAnalysisTime = System.currentTimeMillis() - idaAnalysisStartTime;
 								totalAnalysisTime += idaAnalysisTime;
 								finishedIdaAnalysis = true;
+								if (metrics != null) {
+									metrics.setIdaAnalysisTime(idaAnalysisTime);
+								}
 								switch (analysisResultsType) {
 								case IDA:
-									if (shouldConstructIdaExploitString) {
+									if (settings.getShouldConstructIdaExploitString()) {
+										long exploitStringStartTime = System.currentTimeMillis();
 										try {
 											exploitString = analyser.findIDAExploitString(analysisGraph);
 										} catch (InterruptedException ie) {
 											
 										}
+										if (metrics != null) {
+											metrics.setExploitStringTime(System.currentTimeMillis() - exploitStringStartTime);
+										}
 									}
 									break;
 								case NO_IDA:
@@ -649,7 +1222,14 @@ public class AnalysisDriverStdOut {
 				}
 				Thread.currentThread().interrupt();
 				analysisResultsType = AnalysisResultsType.ANALYSIS_FAILED;
-			} 
+			} finally {
+				analyser.setMetrics(null);
+				analyser.setBudget(null);
+				exceededLimit = budget.getExceededLimit();
+				if (metrics != null && allocatedBytesBefore >= 0) {
+					metrics.setAllocatedBytes(AnalysisBudget.currentThreadAllocatedBytes() - allocatedBytesBefore);
+				}
+			}
 
 			
 		}
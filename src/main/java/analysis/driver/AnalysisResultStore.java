@@ -0,0 +1,137 @@
+package analysis.driver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+import analysis.driver.AnalysisDriverStdOut.AnalysisVerdict;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Remembers the verdicts of analysed patterns across runs. The verdicts are
+ * appended, one JSON object per line, to a file in the store directory and are
+ * read back when the store is opened, so that patterns that were analysed
+ * before with the same settings do not have to be analysed again. Only what
+ * does not depend on the machine or the timeout is kept, the output is printed
+ * again from it.
+ */
+class AnalysisResultStore {
+
+	/* Stores written when the whole printed output was kept used another file, which is not read */
+	private static final String RESULTS_FILE_NAME = "analysis-verdicts.jsonl";
+
+	private final HashMap<String, StoredResult> storedResults = new HashMap<String, StoredResult>();
+
+	private final PrintWriter resultsWriter;
+
+	private final Gson gson = new Gson();
+
+	/**
+	 * Opens the store in a directory, creating the directory if needed.
+	 *
+	 * @param storeDirectory
+	 *            The directory containing the store.
+	 */
+	AnalysisResultStore(File storeDirectory) {
+		if (!storeDirectory.isDirectory() && !storeDirectory.mkdirs()) {
+			throw new RuntimeException("Could not create results store directory: " + storeDirectory);
+		}
+		File resultsFile = new File(storeDirectory, RESULTS_FILE_NAME);
+		try {
+			if (resultsFile.exists()) {
+				readResults(resultsFile);
+			}
+			resultsWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(resultsFile, true), StandardCharsets.UTF_8));
+		} catch (IOException ioe) {
+			throw new RuntimeException("Could not open results store: " + resultsFile, ioe);
+		}
+	}
+
+	private void readResults(File resultsFile) throws IOException {
+		BufferedReader resultsReader = new BufferedReader(new InputStreamReader(new FileInputStream(resultsFile), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = resultsReader.readLine()) != null) {
+				try {
+					StoredResult storedResult = gson.fromJson(line, StoredResult.class);
+					if (storedResult != null && storedResult.key != null && storedResult.verdict != null && storedResult.verdict.getResultsType() != null) {
+						/* later lines replace earlier ones for the same key */
+						storedResults.put(storedResult.key, storedResult);
+					}
+				} catch (JsonSyntaxException jse) {
+					/* a line left incomplete by an interrupted run */
+				}
+			}
+		} finally {
+			resultsReader.close();
+		}
+	}
+
+	/**
+	 * @return The stored result for the key, or null if there is none.
+	 */
+	synchronized StoredResult get(String key) {
+		return storedResults.get(key);
+	}
+
+	synchronized void put(String key, AnalysisVerdict verdict) {
+		StoredResult storedResult = new StoredResult(key, verdict);
+		storedResults.put(key, storedResult);
+		resultsWriter.println(gson.toJson(storedResult));
+		/* flushed per result, so the results of an interrupted run are kept */
+		resultsWriter.flush();
+	}
+
+	synchronized int size() {
+		return storedResults.size();
+	}
+
+	synchronized void close() {
+		resultsWriter.close();
+	}
+
+	/**
+	 * @return A key identifying the pattern analysed with the settings.
+	 */
+	static String createKey(String settings, String pattern) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(settings.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+			byte[] hash = digest.digest(pattern.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new RuntimeException("SHA-256 is not available.", nsae);
+		}
+	}
+
+	static class StoredResult {
+		private final String key;
+
+		private final AnalysisVerdict verdict;
+		AnalysisVerdict getVerdict() {
+			return verdict;
+		}
+
+		StoredResult(String key, AnalysisVerdict verdict) {
+			this.key = key;
+			this.verdict = verdict;
+		}
+	}
+
+}
@@ -16,6 +16,9 @@ import analysis.AnalysisSettings.NFAConstruction;
 import analysis.AnalysisSettings.PreprocessingType;
 import analysis.AnalysisSettings.EpsilonLoopRemovalStrategy;
 import analysis.AnalysisSettings.PriorityRemovalStrategy;
+import analysis.driver.AnalysisCoordinator;
+import analysis.driver.AnalysisDaemon;
+import analysis.driver.AnalysisDaemonClient;
 import analysis.driver.AnalysisDriverStdOut;
 import util.InterfaceSettings;
 import util.InterfaceSettings.InputType;
@@ -24,6 +27,7 @@ import util.InterfaceSettings.InputType;
 public class Main {
 
 	private static final String HELP_FLAG = "--help";
+	private static final String WORKER_FLAG = "--worker";
 
 	private static final String SIMPLE_ANALYSIS_FLAG = "--simple";
 	private static final String FULL_ANALYSIS_FLAG = "--full";
@@ -39,7 +43,17 @@ public class Main {
 	private static final String CONSTRUCT_EDA_EXPLOIT_STRING_SETTING = "--construct-eda-exploit-string";
 	private static final String TEST_EDA_EXPLOIT_STRING_SETTING = "--test-eda-exploit-string";
 	private static final String CONSTRUCT_IDA_EXPLOIT_STRING_SETTING = "--construct-ida-exploit-string";
+	private static final String REDUCE_BISIMILAR_STATES_SETTING = "--reduce-bisimilar";
+	private static final String MAX_PRODUCT_STATES_SETTING = "--max-product-states";
+	private static final String MAX_ALLOCATED_MB_SETTING = "--max-allocated-mb";
 	private static final String TIMEOUT_SETTING = "--timeout";
+	private static final String THREADS_SETTING = "--threads";
+	private static final String WORKERS_SETTING = "--workers";
+	private static final String CACHE_SIZE_SETTING = "--cache-size";
+	private static final String CACHE_DIR_SETTING = "--cache-dir";
+	private static final String METRICS_OUT_SETTING = "--metrics-out";
+	private static final String DAEMON_SETTING = "--daemon";
+	private static final String CLIENT_SETTING = "--client";
 	private static final String FILE_INPUT_SETTING = "--if";
 	private static final String COMMAND_LINE_INPUT_SETTING = "--regex";
 
@@ -54,7 +68,13 @@ public class Main {
 	private static final boolean DEFAULT_CONSTRUCT_EDA_EXPLOIT_STRING = true;
 	private static final boolean DEFAULT_TEST_EDA_EXPLOIT_STRING = true;
 	private static final boolean DEFAULT_CONSTRUCT_IDA_EXPLOIT_STRING = true;
+	private static final boolean DEFAULT_REDUCE_BISIMILAR_STATES = false;
+	private static final int DEFAULT_MAX_PRODUCT_STATES = 0;
+	private static final int DEFAULT_MAX_ALLOCATED_MB = 0;
 	private static final int DEFAULT_TIMEOUT = 10;
+	private static final int DEFAULT_THREADS = 1;
+	private static final int DEFAULT_WORKERS = 0;
+	private static final int DEFAULT_CACHE_SIZE = 0;
 
 	private static HashSet<String> commandLineFlags;
 	private static HashMap<String, String> commandLineSettings;
@@ -88,6 +108,11 @@ public class Main {
 			System.exit(0);
 		}
 
+		if (commandLineFlags.contains(WORKER_FLAG)) {
+			AnalysisCoordinator.serveAsWorker();
+			System.exit(0);
+		}
+
 		NFAConstruction nfaConstruction = determineNFAConstruction();
 		PreprocessingType preprocessingType = PreprocessingType.NONE;
 		EpsilonLoopRemovalStrategy epsilonLoopRemovalStrategy = determineEpsilonLoopRemovalStrategy();
@@ -116,13 +141,30 @@ public class Main {
 
 		boolean shouldConstructIdaExploitString = determineWhetherShouldConstructIdaExploitString();
 
+		boolean shouldReduceBisimilarStates = determineWhetherShouldReduceBisimilarStates();
+
+		int maxProductStates = determineLimitValue(MAX_PRODUCT_STATES_SETTING, "Max product states", DEFAULT_MAX_PRODUCT_STATES);
+
+		int maxAllocatedMb = determineLimitValue(MAX_ALLOCATED_MB_SETTING, "Max allocated megabytes", DEFAULT_MAX_ALLOCATED_MB);
 
 		int timeout = determineTimeoutValue();
 
+		int numThreads = determineNumThreads();
+
+		int numWorkers = determineNumWorkers();
+
+		int cacheSize = determineCacheSize();
+
+		/* null when results should not be kept between runs */
+		String resultStoreDirectory = commandLineSettings.get(CACHE_DIR_SETTING);
+
+		/* null when no metrics should be written */
+		String metricsOutFile = commandLineSettings.get(METRICS_OUT_SETTING);
+
 		BufferedReader regexesReader = setupRegexesReader(inputType);
 
 		
-		InterfaceSettings interfaceSettings = new InterfaceSettings(inputType, isVerbose);
+		InterfaceSettings interfaceSettings = new InterfaceSettings(inputType, isVerbose, numThreads, cacheSize, resultStoreDirectory, metricsOutFile, numWorkers);
 		AnalysisSettings analysisSettings = new AnalysisSettings(nfaConstruction, 
 						preprocessingType, 
 						epsilonLoopRemovalStrategy, 
@@ -131,8 +173,21 @@ public class Main {
 						shouldConstructEdaExploitString,
 						shouldTestEdaExploitString, 
 						shouldConstructIdaExploitString,
+						shouldReduceBisimilarStates,
+						maxProductStates,
+						maxAllocatedMb,
 						timeout);		
-		AnalysisDriverStdOut.performAnalysis(regexesReader, interfaceSettings, analysisSettings);
+		if (commandLineSettings.containsKey(DAEMON_SETTING) && commandLineSettings.containsKey(CLIENT_SETTING)) {
+			System.err.println("Contradicting settings: " + DAEMON_SETTING + " " + CLIENT_SETTING);
+			printUsage();
+			System.exit(0);
+		} else if (commandLineSettings.containsKey(DAEMON_SETTING)) {
+			AnalysisDaemon.serve(determinePort(DAEMON_SETTING), interfaceSettings, analysisSettings);
+		} else if (commandLineSettings.containsKey(CLIENT_SETTING)) {
+			AnalysisDaemonClient.performAnalysis(regexesReader, determinePort(CLIENT_SETTING), isVerbose, analysisSettings);
+		} else {
+			AnalysisDriverStdOut.performAnalysis(regexesReader, interfaceSettings, analysisSettings);
+		}
 	}
 
 	private static PriorityRemovalStrategy determinePriorityRemovalStrategy() {
@@ -287,6 +342,28 @@ public class Main {
 		return DEFAULT_CONSTRUCT_IDA_EXPLOIT_STRING;
 	}
 
+	private static boolean determineWhetherShouldReduceBisimilarStates() {
+		/* we assume that if the user enters the flag without setting it to true or false, they want it true */
+		boolean containsReduceBisimilarStatesFlag = commandLineFlags.contains(REDUCE_BISIMILAR_STATES_SETTING);
+		if (containsReduceBisimilarStatesFlag) {
+			return true;
+		}
+		boolean containsReduceBisimilarStatesSetting = commandLineSettings.containsKey(REDUCE_BISIMILAR_STATES_SETTING);
+		if (containsReduceBisimilarStatesSetting) {
+			String shouldReduceBisimilarStatesValueString = commandLineSettings.get(REDUCE_BISIMILAR_STATES_SETTING);
+			if (shouldReduceBisimilarStatesValueString.equalsIgnoreCase("true")) {
+				return true;
+			} else if (shouldReduceBisimilarStatesValueString.equalsIgnoreCase("false")) {
+				return false;
+			} else {
+				System.err.println("Reduce bisimilar should be true or false.");
+				printUsage();
+				System.exit(0);
+			}
+		}
+		return DEFAULT_REDUCE_BISIMILAR_STATES;
+	}
+
 	private static boolean determineWhetherShouldTestEdaExploitString() {
 		/* we assume that if the user enters the flag without setting it to true or false, they want it true */
 		boolean containsTestEdaExploitStringFlag = commandLineFlags.contains(TEST_EDA_EXPLOIT_STRING_SETTING);
@@ -325,6 +402,104 @@ public class Main {
 		return DEFAULT_TIMEOUT;
 	}
 
+	/* A limit of the budget of each analysis, disabled if it is not positive */
+	private static int determineLimitValue(String limitSetting, String limitName, int defaultValue) {
+		boolean containsLimitSetting = commandLineSettings.containsKey(limitSetting);
+		if (containsLimitSetting) {
+			String limitValueString = commandLineSettings.get(limitSetting);
+			try {
+				int limitValue = Integer.parseInt(limitValueString);
+				return limitValue;
+			} catch (NumberFormatException nfe) {
+				System.err.println(limitName + " should be an integer value.");
+				printUsage();
+				System.exit(0);
+			}
+		}
+		return defaultValue;
+	}
+
+	private static int determineNumThreads() {
+		boolean containsThreadsSetting = commandLineSettings.containsKey(THREADS_SETTING);
+		if (containsThreadsSetting) {
+			String threadsValueString = commandLineSettings.get(THREADS_SETTING);
+			try {
+				int threadsValue = Integer.parseInt(threadsValueString);
+				if (threadsValue < 1) {
+					System.err.println("Threads should be at least 1.");
+					printUsage();
+					System.exit(0);
+				}
+				return threadsValue;
+			} catch (NumberFormatException nfe) {
+				System.err.println("Threads should be an integer value.");
+				printUsage();
+				System.exit(0);
+			}
+		}
+		return DEFAULT_THREADS;
+	}
+
+	private static int determineNumWorkers() {
+		boolean containsWorkersSetting = commandLineSettings.containsKey(WORKERS_SETTING);
+		if (containsWorkersSetting) {
+			String workersValueString = commandLineSettings.get(WORKERS_SETTING);
+			try {
+				int workersValue = Integer.parseInt(workersValueString);
+				if (workersValue < 0) {
+					System.err.println("Workers should be at least 0.");
+					printUsage();
+					System.exit(0);
+				}
+				return workersValue;
+			} catch (NumberFormatException nfe) {
+				System.err.println("Workers should be an integer value.");
+				printUsage();
+				System.exit(0);
+			}
+		}
+		return DEFAULT_WORKERS;
+	}
+
+	private static int determineCacheSize() {
+		boolean containsCacheSizeSetting = commandLineSettings.containsKey(CACHE_SIZE_SETTING);
+		if (containsCacheSizeSetting) {
+			String cacheSizeValueString = commandLineSettings.get(CACHE_SIZE_SETTING);
+			try {
+				int cacheSizeValue = Integer.parseInt(cacheSizeValueString);
+				if (cacheSizeValue < 0) {
+					System.err.println("Cache size should be at least 0.");
+					printUsage();
+					System.exit(0);
+				}
+				return cacheSizeValue;
+			} catch (NumberFormatException nfe) {
+				System.err.println("Cache size should be an integer value.");
+				printUsage();
+				System.exit(0);
+			}
+		}
+		return DEFAULT_CACHE_SIZE;
+	}
+
+	private static int determinePort(String portSetting) {
+		String portValueString = commandLineSettings.get(portSetting);
+		try {
+			int portValue = Integer.parseInt(portValueString);
+			if (portValue < 0 || portValue > 65535) {
+				System.err.println("Port should be between 0 and 65535.");
+				printUsage();
+				System.exit(0);
+			}
+			return portValue;
+		} catch (NumberFormatException nfe) {
+			System.err.println("Port should be an integer value.");
+			printUsage();
+			System.exit(0);
+		}
+		return 0;
+	}
+
 	private static BufferedReader setupRegexesReader(InputType inputType) {
 		BufferedReader regexesReader = null;
 		switch (inputType) {
@@ -354,7 +529,7 @@ public class Main {
 	}
 
 	private static void printUsage() {
-		System.out.println("usage: java -cp ./bin Main [--simple|--full] [--merge|--flatten] [--java|--thompson] [--if='inputfile.txt'|--regex='regex' |] [--ida=true|false] [--verbose=true|false] [--test-eda-exploit-string=true|false] [--timeout=d]");
+		System.out.println("usage: java -cp ./bin Main [--simple|--full] [--merge|--flatten] [--java|--thompson] [--if='inputfile.txt'|--regex='regex' |] [--ida=true|false] [--verbose=true|false] [--test-eda-exploit-string=true|false] [--reduce-bisimilar=true|false] [--max-product-states=n] [--max-allocated-mb=mb] [--timeout=d] [--threads=n] [--workers=n] [--cache-size=n] [--cache-dir='directory'] [--metrics-out='metrics.jsonl'] [--daemon=port|--client=port]");
 		System.out.println("\tsimple:");
 		System.out.println("\t\tPerform the simple analysis.");
 		System.out.println("\tfull:");
@@ -380,8 +555,29 @@ public class Main {
 		System.out.println("\ttest-eda-exploit-string=[true|false]:");
 		System.out.println("\t\tTrue: Test the generated exploit strings on the corresponding regexes for exponential behaviour using the Java matcher (only valid when using Java construction (--java)), testing regexes for polynomial behaviour is not yet implented.");
 		System.out.println("\t\tFalse: Do not test the generated exploit strings.");
+		System.out.println("\treduce-bisimilar=[true|false]:");
+		System.out.println("\t\tTrue: Merge the states with the same futures, counting parallel edges, before testing the graphs.");
+		System.out.println("\t\tFalse: Test the graphs as they are constructed (default).");
+		System.out.println("\tmax-product-states=n:");
+		System.out.println("\t\tStop the analysis of a regex with BUDGET_EXCEEDED once the products built for it have more than n states together. If n <= 0, the number of states is not limited (default).");
+		System.out.println("\tmax-allocated-mb=mb:");
+		System.out.println("\t\tStop the analysis of a regex with BUDGET_EXCEEDED once the thread analysing it has allocated more than mb megabytes, counting garbage. If mb <= 0, the allocations are not limited (default).");
 		System.out.println("\ttimeout=d:");
 		System.out.println("\t\tSet the timeout to d miliseconds. If d <= 0, timeout is disabled.");
+		System.out.println("\tthreads=n:");
+		System.out.println("\t\tAnalyse the regexes on a pool of n worker threads. The results are still printed in input order.");
+		System.out.println("\tworkers=n:");
+		System.out.println("\t\tAnalyse the regexes in n worker processes, so that a regex exhausting the memory only stops the worker analysing it. The regexes of a worker that stops are analysed again by another worker. If n = 0, the regexes are analysed in this process (default). The threads setting is ignored with workers.");
+		System.out.println("\tcache-size=n:");
+		System.out.println("\t\tReuse the results of up to n analysed NFAs for regexes compiling to the same NFA. Every result keeps its NFA and the graphs it was found in, so a large n needs a large heap. If n = 0, results are not reused (default).");
+		System.out.println("\tcache-dir='directory':");
+		System.out.println("\t\tKeep the results in the directory, so that regexes analysed before with the same settings are not analysed again in later runs.");
+		System.out.println("\tmetrics-out='metrics.jsonl':");
+		System.out.println("\t\tWrite the graph sizes, times and heap allocation of the analysis of each regex to the file, as one JSON object per line.");
+		System.out.println("\tdaemon=port:");
+		System.out.println("\t\tKeep running and analyse the regexes sent as JSON lines to the port on the loopback address, with the given settings as defaults.");
+		System.out.println("\tclient=port:");
+		System.out.println("\t\tSend the regexes with the given settings to the daemon on the port. Exits with 1 if a regex is vulnerable and 2 if the daemon could not be reached.");
 
 
 
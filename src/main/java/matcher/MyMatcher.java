@@ -3,6 +3,12 @@ package matcher;
 public interface MyMatcher {
 
 
+	/**
+	 * @return Whether the whole input string is accepted. Every character of
+	 *         the input string is a symbol on its own, so characters such as
+	 *         '.', '[' and '\\' only match transitions that allow that
+	 *         character.
+	 */
 	public boolean matches();
 
 }
@@ -54,7 +54,7 @@ public abstract class NFAMatcher implements MyMatcher {
 				} else {
 					TransitionLabel transitionLabel = outgoingEdge.getTransitionLabel();
 					if (inputStringPosition < inputStringLength) {
-						if (transitionLabel.matches("" + inputString.charAt(inputStringPosition))) {
+						if (transitionLabel.matches(inputString.charAt(inputStringPosition))) {
 							//System.out.println("matched: " + inputString.charAt(inputStringPosition) + " with " + transitionLabel);
 							transitionToNumTraversedMap.put(outgoingEdge, currentTimesTraversed + 1);
 							boolean foundMatch = matchingDFS(targetState, inputStringPosition + 1, new HashMap<NFAEdge, Integer>());
@@ -0,0 +1,138 @@
+package matcher;
+
+import java.util.*;
+
+import nfa.*;
+import nfa.transitionlabel.*;
+
+/**
+ * Matches an input string by simulating the NFA on the set of all states it
+ * could be in, rather than by backtracking over the transitions. For an NFA
+ * with m transitions, an input string of length n is matched in O(n * m)
+ * time, also for the strings that make the backtracking matcher blow up.
+ */
+public abstract class NFASimulationMatcher implements MyMatcher {
+
+	private final String inputString;
+	private final int inputStringLength;
+
+	private final int numStates;
+	private final int initialState;
+	private final boolean[] acceptingStates;
+
+	/* the states reachable from each state by epsilon transitions only, including the state itself */
+	private final BitSet[] epsilonClosures;
+
+	/* the symbol transitions leaving each state, with their labels as sets of minterms */
+	private final int[][] symbolTransitionTargets;
+	private final BitSet[][] symbolTransitionMinterms;
+
+	/* the minterms of the labels, so that each input symbol is only looked up once */
+	private final MintermPartition partition;
+
+	protected NFASimulationMatcher(NFAGraph nfaGraph, String inputString) {
+		this.inputString = inputString;
+		this.inputStringLength = inputString.length();
+
+		HashMap<NFAVertexND, Integer> stateNumbers = new HashMap<NFAVertexND, Integer>();
+		for (NFAVertexND v : nfaGraph.vertexSet()) {
+			stateNumbers.put(v, stateNumbers.size());
+		}
+		numStates = stateNumbers.size();
+		initialState = stateNumbers.get(nfaGraph.getInitialState());
+		acceptingStates = new boolean[numStates];
+
+		int[][] epsilonTransitionTargets = new int[numStates][];
+		symbolTransitionTargets = new int[numStates][];
+		TransitionLabel[][] symbolTransitionLabels = new TransitionLabel[numStates][];
+		ArrayList<TransitionLabel> allSymbolLabels = new ArrayList<TransitionLabel>();
+		for (Map.Entry<NFAVertexND, Integer> entry : stateNumbers.entrySet()) {
+			NFAVertexND v = entry.getKey();
+			int state = entry.getValue();
+			acceptingStates[state] = nfaGraph.isAcceptingState(v);
+
+			ArrayList<Integer> epsilonTargets = new ArrayList<Integer>();
+			ArrayList<Integer> symbolTargets = new ArrayList<Integer>();
+			ArrayList<TransitionLabel> symbolLabels = new ArrayList<TransitionLabel>();
+			for (NFAEdge e : nfaGraph.outgoingEdgesOf(v)) {
+				int target = stateNumbers.get(e.getTargetVertex());
+				if (e.getIsEpsilonTransition()) {
+					epsilonTargets.add(target);
+				} else {
+					symbolTargets.add(target);
+					symbolLabels.add(e.getTransitionLabel());
+				}
+			}
+			epsilonTransitionTargets[state] = toIntArray(epsilonTargets);
+			symbolTransitionTargets[state] = toIntArray(symbolTargets);
+			symbolTransitionLabels[state] = symbolLabels.toArray(new TransitionLabel[symbolLabels.size()]);
+			allSymbolLabels.addAll(symbolLabels);
+		}
+
+		partition = new MintermPartition(allSymbolLabels);
+		symbolTransitionMinterms = new BitSet[numStates][];
+		for (int state = 0; state < numStates; state++) {
+			symbolTransitionMinterms[state] = new BitSet[symbolTransitionLabels[state].length];
+			for (int j = 0; j < symbolTransitionLabels[state].length; j++) {
+				symbolTransitionMinterms[state][j] = partition.getMinterms(symbolTransitionLabels[state][j]);
+			}
+		}
+
+		epsilonClosures = new BitSet[numStates];
+		for (int state = 0; state < numStates; state++) {
+			epsilonClosures[state] = epsilonClosure(state, epsilonTransitionTargets);
+		}
+	}
+
+	private BitSet epsilonClosure(int state, int[][] epsilonTransitionTargets) {
+		BitSet closure = new BitSet(numStates);
+		closure.set(state);
+		int[] stack = new int[numStates];
+		int stackSize = 0;
+		stack[stackSize++] = state;
+		while (stackSize > 0) {
+			int currentState = stack[--stackSize];
+			for (int target : epsilonTransitionTargets[currentState]) {
+				if (!closure.get(target)) {
+					closure.set(target);
+					stack[stackSize++] = target;
+				}
+			}
+		}
+		return closure;
+	}
+
+	private static int[] toIntArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	public boolean matches() {
+		BitSet currentStates = (BitSet) epsilonClosures[initialState].clone();
+		for (int i = 0; i < inputStringLength && !currentStates.isEmpty(); i++) {
+			int minterm = partition.getMinterm(inputString.charAt(i));
+			BitSet nextStates = new BitSet(numStates);
+			for (int state = currentStates.nextSetBit(0); state >= 0; state = currentStates.nextSetBit(state + 1)) {
+				int[] targets = symbolTransitionTargets[state];
+				BitSet[] labels = symbolTransitionMinterms[state];
+				for (int j = 0; j < targets.length; j++) {
+					if (labels[j].get(minterm)) {
+						nextStates.or(epsilonClosures[targets[j]]);
+					}
+				}
+			}
+			currentStates = nextStates;
+		}
+
+		for (int state = currentStates.nextSetBit(0); state >= 0; state = currentStates.nextSetBit(state + 1)) {
+			if (acceptingStates[state]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
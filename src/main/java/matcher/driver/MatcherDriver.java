@@ -2,6 +2,7 @@ package matcher.driver;
 
 import matcher.*;
 import regexcompiler.*;
+import regexcompiler.MyPattern.MatcherType;
 
 import analysis.AnalysisSettings.NFAConstruction;
 
@@ -9,13 +10,17 @@ public class MatcherDriver {
 
 	public static void main(String args[]) {
 		if (args.length < 2) {
-			System.out.println("usage: java MatcherDriver <regex> <input string>");
+			System.out.println("usage: java MatcherDriver <regex> <input string> [BACKTRACKING|SIMULATION]");
 			System.exit(0);
 		}
 		String pattern = args[0];
 		String inputString = args[1];
+		MatcherType matcherType = MatcherType.BACKTRACKING;
+		if (args.length > 2) {
+			matcherType = MatcherType.valueOf(args[2].toUpperCase());
+		}
 		MyPattern myPattern = MyPattern.compile(pattern, NFAConstruction.JAVA);
-		MyMatcher myMatcher = myPattern.matcher(inputString);
+		MyMatcher myMatcher = myPattern.matcher(inputString, matcherType);
 		boolean matches = myMatcher.matches();
 		System.out.println(pattern + " matches " + inputString + ": " + matches);
 	}
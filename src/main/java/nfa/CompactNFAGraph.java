@@ -0,0 +1,260 @@
+package nfa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import nfa.transitionlabel.TransitionLabel;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
+
+/**
+ * An immutable, int-indexed view of an NFA graph. States are numbered densely
+ * from 0, the outgoing edges of each state are stored in compressed sparse row
+ * arrays and transition labels are interned, so that algorithms can iterate
+ * over the NFA without hashing vertices or comparing labels.
+ *
+ * Only numbers and labels are kept, not the vertices and edges of the graph.
+ * The states are numbered in the order of the graph's vertex set and the edges
+ * in the order of the outgoing edges of each state, so the graph it was built
+ * from, while unchanged, gives the vertices and edges back through statesOf
+ * and edgesOf.
+ */
+public class CompactNFAGraph {
+
+	/* Graphs without an initial state */
+	public static final int NO_STATE = -1;
+
+	/* Edges without a filter output label */
+	public static final int NO_LABEL = -1;
+
+	private final int initialState;
+	public int getInitialState() {
+		return initialState;
+	}
+
+	private final boolean[] acceptingStates;
+	public boolean isAcceptingState(int state) {
+		return acceptingStates[state];
+	}
+
+	/* The outgoing edges of state s are numbered edgeOffsets[s] to edgeOffsets[s + 1] - 1 */
+	private final int[] edgeOffsets;
+	private final int[] edgeTargets;
+	private final int[] edgeLabels;
+	private final int[] edgeOutputLabels;
+	private final int[] edgeNumParallel;
+
+	/* The interned transition labels, indexed by label number */
+	private final TransitionLabel[] labels;
+
+	private CompactNFAGraph(int initialState, boolean[] acceptingStates, int[] edgeOffsets, int[] edgeTargets, int[] edgeLabels, int[] edgeOutputLabels, int[] edgeNumParallel, TransitionLabel[] labels) {
+		this.initialState = initialState;
+		this.acceptingStates = acceptingStates;
+		this.edgeOffsets = edgeOffsets;
+		this.edgeTargets = edgeTargets;
+		this.edgeLabels = edgeLabels;
+		this.edgeOutputLabels = edgeOutputLabels;
+		this.edgeNumParallel = edgeNumParallel;
+		this.labels = labels;
+	}
+
+	/**
+	 * Builds the compact representation of an NFA graph.
+	 *
+	 * @param m
+	 *            The NFA graph, which should not be modified while the
+	 *            compact representation is in use.
+	 * @return The compact representation of m
+	 */
+	public static CompactNFAGraph fromNFAGraph(NFAGraph m) {
+		NFAVertexND[] states = statesOf(m);
+		int numStates = states.length;
+		int numEdges = m.edgeSet().size();
+
+		/* only needed while the edges are numbered */
+		HashMap<NFAVertexND, Integer> stateNumbers = stateNumbersOf(states);
+		boolean[] acceptingStates = new boolean[numStates];
+		for (int s = 0; s < numStates; s++) {
+			acceptingStates[s] = m.isAcceptingState(states[s]);
+		}
+		int initialState = NO_STATE;
+		if (m.getInitialState() != null) {
+			initialState = stateNumbers.get(m.getInitialState());
+		}
+
+		int[] edgeOffsets = new int[numStates + 1];
+		int[] edgeTargets = new int[numEdges];
+		int[] edgeLabels = new int[numEdges];
+		int[] edgeOutputLabels = new int[numEdges];
+		int[] edgeNumParallel = new int[numEdges];
+		ArrayList<TransitionLabel> labels = new ArrayList<TransitionLabel>();
+		HashMap<TransitionLabel, Integer> labelNumbers = new HashMap<TransitionLabel, Integer>();
+		int edgeNumber = 0;
+		for (int s = 0; s < numStates; s++) {
+			edgeOffsets[s] = edgeNumber;
+			for (NFAEdge e : m.outgoingEdgesOf(states[s])) {
+				edgeTargets[edgeNumber] = stateNumbers.get(e.getTargetVertex());
+				edgeLabels[edgeNumber] = internLabel(e.getTransitionLabel(), labels, labelNumbers);
+				if (e instanceof FilterEdge) {
+					FilterEdge fe = (FilterEdge) e;
+					edgeOutputLabels[edgeNumber] = internLabel(fe.getOutGoingTransitionCharacter(), labels, labelNumbers);
+				} else {
+					edgeOutputLabels[edgeNumber] = NO_LABEL;
+				}
+				edgeNumParallel[edgeNumber] = e.getNumParallel();
+				edgeNumber++;
+			}
+		}
+		edgeOffsets[numStates] = edgeNumber;
+
+		return new CompactNFAGraph(initialState, acceptingStates, edgeOffsets, edgeTargets, edgeLabels, edgeOutputLabels, edgeNumParallel, labels.toArray(new TransitionLabel[labels.size()]));
+	}
+
+	/**
+	 * @return The vertices of the graph, indexed by the state numbers its
+	 *         compact representation gives them.
+	 */
+	public static NFAVertexND[] statesOf(NFAGraph m) {
+		return m.vertexSet().toArray(new NFAVertexND[m.vertexSet().size()]);
+	}
+
+	/**
+	 * @return The edges of the graph, indexed by the edge numbers its compact
+	 *         representation gives them.
+	 */
+	public static NFAEdge[] edgesOf(NFAGraph m) {
+		NFAEdge[] edges = new NFAEdge[m.edgeSet().size()];
+		int edgeNumber = 0;
+		for (NFAVertexND v : m.vertexSet()) {
+			for (NFAEdge e : m.outgoingEdgesOf(v)) {
+				edges[edgeNumber] = e;
+				edgeNumber++;
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * @return The state number of each of the states.
+	 */
+	public static HashMap<NFAVertexND, Integer> stateNumbersOf(NFAVertexND[] states) {
+		HashMap<NFAVertexND, Integer> stateNumbers = new HashMap<NFAVertexND, Integer>();
+		for (int s = 0; s < states.length; s++) {
+			stateNumbers.put(states[s], s);
+		}
+		return stateNumbers;
+	}
+
+	private static int internLabel(TransitionLabel tl, ArrayList<TransitionLabel> labels, HashMap<TransitionLabel, Integer> labelNumbers) {
+		Integer labelNumber = labelNumbers.get(tl);
+		if (labelNumber == null) {
+			labelNumber = labels.size();
+			labels.add(tl);
+			labelNumbers.put(tl, labelNumber);
+		}
+		return labelNumber;
+	}
+
+	/**
+	 * @param sourceGraph
+	 *            The unchanged graph this representation was built from.
+	 * @return A new NFA graph equal to the graph this representation was built from.
+	 */
+	public NFAGraph toNFAGraph(NFAGraph sourceGraph) {
+		NFAGraph m = new NFAGraph();
+		/* the graph gets its own states, so that it shares nothing with the graph this was built from */
+		NFAVertexND[] states = statesOf(sourceGraph);
+		NFAVertexND[] copiedStates = new NFAVertexND[states.length];
+		for (int s = 0; s < states.length; s++) {
+			copiedStates[s] = states[s].copy();
+			m.addVertex(copiedStates[s]);
+		}
+		for (int s = 0; s < states.length; s++) {
+			for (int e = edgeOffsets[s]; e < edgeOffsets[s + 1]; e++) {
+				NFAVertexND source = copiedStates[s];
+				NFAVertexND target = copiedStates[edgeTargets[e]];
+				NFAEdge newEdge;
+				if (edgeOutputLabels[e] != NO_LABEL) {
+					newEdge = new FilterEdge(source, target, labels[edgeLabels[e]], labels[edgeOutputLabels[e]]);
+				} else {
+					newEdge = new NFAEdge(source, target, labels[edgeLabels[e]]);
+				}
+				newEdge.setNumParallel(edgeNumParallel[e]);
+				m.addEdge(newEdge);
+			}
+		}
+		if (initialState != NO_STATE) {
+			m.setInitialState(copiedStates[initialState]);
+		}
+		for (int s = 0; s < states.length; s++) {
+			if (acceptingStates[s]) {
+				m.addAcceptingState(copiedStates[s]);
+			}
+		}
+		return m;
+	}
+
+	public int getNumStates() {
+		return acceptingStates.length;
+	}
+
+	public int getNumEdges() {
+		return edgeTargets.length;
+	}
+
+	public int getNumLabels() {
+		return labels.length;
+	}
+
+	/**
+	 * @return The number of the first outgoing edge of the state.
+	 */
+	public int getEdgesFrom(int state) {
+		return edgeOffsets[state];
+	}
+
+	/**
+	 * @return One more than the number of the last outgoing edge of the state.
+	 */
+	public int getEdgesTo(int state) {
+		return edgeOffsets[state + 1];
+	}
+
+	public int getEdgeTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	public int getEdgeLabel(int edge) {
+		return edgeLabels[edge];
+	}
+
+	/**
+	 * @return The label number of the filter's output character, or NO_LABEL if the edge is not a filter edge.
+	 */
+	public int getEdgeOutputLabel(int edge) {
+		return edgeOutputLabels[edge];
+	}
+
+	public int getEdgeNumParallel(int edge) {
+		return edgeNumParallel[edge];
+	}
+
+	public boolean isEpsilonEdge(int edge) {
+		return labels[edgeLabels[edge]].getTransitionType() == TransitionType.EPSILON;
+	}
+
+	/**
+	 * @return Whether the edge is a transition for the word, as
+	 *         NFAEdge.isTransitionFor or FilterEdge.isTransitionFor would say.
+	 */
+	public boolean isTransitionFor(int edge, TransitionLabel word) {
+		if (edgeOutputLabels[edge] != NO_LABEL) {
+			return FilterEdge.isFilterTransitionFor(labels[edgeLabels[edge]], word);
+		}
+		return labels[edgeLabels[edge]].matches(word);
+	}
+
+	public TransitionLabel getLabel(int label) {
+		return labels[label];
+	}
+
+}
@@ -1,6 +1,7 @@
 package nfa;
 
 import nfa.transitionlabel.TransitionLabel;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
 import nfa.transitionlabel.TransitionLabelParserRecursive;
 import nfa.transitionlabel.CharacterClassTransitionLabel;
 import nfa.transitionlabel.EpsilonTransitionLabel;
@@ -63,7 +64,15 @@ public class FilterEdge extends NFAEdge {
 	
 	@Override
 	public boolean isTransitionFor(TransitionLabel tl) {
-		if (super.getIsEpsilonTransition()) {
+		return isFilterTransitionFor(super.getTransitionLabel(), tl);
+	}
+
+	/**
+	 * @return Whether a filter edge with the transition label is a transition
+	 *         for tl, so that this can be decided without the edge itself.
+	 */
+	public static boolean isFilterTransitionFor(TransitionLabel transitionLabel, TransitionLabel tl) {
+		if (transitionLabel.getTransitionType() == TransitionType.EPSILON) {
 			if (tl instanceof CharacterClassTransitionLabel) {
 				/* CharacterClassTransitionLabels cannot match epsilon transtions */
 				return false;
@@ -74,7 +83,7 @@ public class FilterEdge extends NFAEdge {
 			 * if this is an epsilon transition, it is only a transition for the
 			 * word if they both represent the same epsilon transition
 			 */
-			return super.isTransitionFor(word);
+			return transitionLabel.matches(word);
 		} else {
 			
 			if (tl instanceof CharacterClassTransitionLabel) {
@@ -11,6 +11,7 @@ import org.jgrapht.graph.DirectedPseudograph;
 
 import nfa.transitionlabel.TransitionLabel;
 import nfa.transitionlabel.TransitionLabel.TransitionType;
+import util.Hashing;
 
 /**
  * A graph representing an NFA.
@@ -32,6 +33,7 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 		if (!super.containsVertex(initialState)) {
 			throw new IllegalArgumentException("Graph does not contain vertex: " + initialState);
 		}
+		graphChanged();
 		this.initialState = initialState;
 	}
 
@@ -42,6 +44,7 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 		if (!super.containsVertex(acceptingState)) {
 			throw new IllegalArgumentException("Graph does not contain vertex: " + acceptingState);
 		}
+		graphChanged();
 		acceptingStates.add(acceptingState);
 	}
 
@@ -57,13 +60,87 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 		if (!super.containsVertex(acceptingState)) {
 			throw new IllegalArgumentException("Graph does not contains accepting state: " + acceptingState);
 		}
+		graphChanged();
 		acceptingStates.remove(acceptingState);
 	}
 
 	public Set<NFAVertexND> getAcceptingStates() {
+		if (isFrozen) {
+			return Collections.unmodifiableSet(acceptingStates);
+		}
 		return acceptingStates;
 	}
 
+	/* Set once the graph is shared between threads, after which it may only be read */
+	private volatile boolean isFrozen;
+	public boolean isFrozen() {
+		return isFrozen;
+	}
+
+	/**
+	 * Makes every later change to the states, transitions, initial state or
+	 * accepting states of the graph throw an IllegalStateException. Changes
+	 * made to edges directly are not prevented.
+	 */
+	public void freeze() {
+		isFrozen = true;
+	}
+
+	/*
+	 * A hash of the states, transitions, initial state and accepting states,
+	 * computed when it is first needed and again after the graph has changed.
+	 * Changes made to edges directly, after they were added to the graph, are
+	 * not noticed. Graphs in shared results are read by several threads, so it
+	 * is volatile, and null until computed.
+	 */
+	private volatile Long fingerprint;
+
+	/**
+	 * @return A hash of the structure of the graph, equal for equal graphs.
+	 */
+	public long getFingerprint() {
+		Long currentFingerprint = fingerprint;
+		if (currentFingerprint == null) {
+			/* threads racing here compute the same value */
+			currentFingerprint = calculateFingerprint();
+			fingerprint = currentFingerprint;
+		}
+		return currentFingerprint;
+	}
+
+	/**
+	 * @return A key identifying this graph in hash based caches, which is
+	 *         hashed and compared in constant time for the same graph.
+	 */
+	public CacheKey getCacheKey() {
+		return new CacheKey(this, getFingerprint());
+	}
+
+	/* built when paths are first asked for, and discarded when the graph changes */
+	private volatile NFAShortestPaths shortestPaths;
+
+	/**
+	 * @return The shortest paths in the graph, which are searched for once
+	 *         and kept until the graph changes.
+	 */
+	public NFAShortestPaths getShortestPaths() {
+		NFAShortestPaths currentShortestPaths = shortestPaths;
+		if (currentShortestPaths == null) {
+			currentShortestPaths = new NFAShortestPaths(this);
+			shortestPaths = currentShortestPaths;
+		}
+		return currentShortestPaths;
+	}
+
+	/* discards everything calculated from the structure of the graph, and is called before the graph changes */
+	private void graphChanged() {
+		if (isFrozen) {
+			throw new IllegalStateException("The graph is frozen and cannot be changed.");
+		}
+		fingerprint = null;
+		shortestPaths = null;
+	}
+
 	public NFAGraph() {
 		super(NFAEdge.class);
 		acceptingStates = new HashSet<NFAVertexND>();
@@ -102,6 +179,8 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 		if (newEdge == null) {
 			throw new NullPointerException("New edge cannot be null");
 		}
+		/* existing edges might get more parallel edges */
+		graphChanged();
 		if (newEdge.getTransitionLabel().isEmpty()) {
 			return false;
 		}
@@ -202,8 +281,39 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 		if (containsVertex(v)) {
 			throw new IllegalArgumentException("Graph already contains vertex: " + v);
 		}
+		graphChanged();
 		return super.addVertex(v);
 	}
+
+	@Override
+	public boolean addEdge(NFAVertexND sourceVertex, NFAVertexND targetVertex, NFAEdge e) {
+		graphChanged();
+		return super.addEdge(sourceVertex, targetVertex, e);
+	}
+
+	@Override
+	public NFAEdge addEdge(NFAVertexND sourceVertex, NFAVertexND targetVertex) {
+		graphChanged();
+		return super.addEdge(sourceVertex, targetVertex);
+	}
+
+	@Override
+	public boolean removeEdge(NFAEdge e) {
+		graphChanged();
+		return super.removeEdge(e);
+	}
+
+	@Override
+	public NFAEdge removeEdge(NFAVertexND sourceVertex, NFAVertexND targetVertex) {
+		graphChanged();
+		return super.removeEdge(sourceVertex, targetVertex);
+	}
+
+	@Override
+	public boolean removeVertex(NFAVertexND v) {
+		graphChanged();
+		return super.removeVertex(v);
+	}
 	
 	public NFAEdge getEdge(NFAEdge e) {
 		if (!super.containsEdge(e)) {
@@ -251,6 +361,60 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 
 	}
 	
+	private long calculateFingerprint() {
+		/* the hashes of the states and transitions are summed, so that the order in which they were added does not matter */
+		long statesHash = 0;
+		for (NFAVertexND v : vertexSet()) {
+			long stateHash = v.hashCode();
+			if (acceptingStates.contains(v)) {
+				stateHash = ~stateHash;
+			}
+			statesHash += Hashing.mix(stateHash);
+		}
+		long edgesHash = 0;
+		for (NFAEdge e : edgeSet()) {
+			long edgeHash = e.getSourceVertex().hashCode();
+			edgeHash = 31 * edgeHash + e.getTargetVertex().hashCode();
+			edgeHash = 31 * edgeHash + e.getTransitionLabel().hashCode();
+			edgeHash = 31 * edgeHash + e.getNumParallel();
+			edgesHash += Hashing.mix(edgeHash);
+		}
+		long initialStateHash = initialState == null ? 0 : initialState.hashCode();
+		return Hashing.mix(Hashing.mix(statesHash) + 31 * edgesHash + initialStateHash);
+	}
+
+	/**
+	 * Identifies an NFA graph in a cache by its fingerprint. Keys of the same
+	 * graph are equal without comparing the graphs, keys of different graphs
+	 * with the same fingerprint are compared with {@link NFAGraph#equals}.
+	 */
+	public static final class CacheKey {
+		private final NFAGraph graph;
+		private final long fingerprint;
+
+		private CacheKey(NFAGraph graph, long fingerprint) {
+			this.graph = graph;
+			this.fingerprint = fingerprint;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (!(o instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey ck = (CacheKey) o;
+			return fingerprint == ck.fingerprint && (graph == ck.graph || graph.equals(ck.graph));
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (fingerprint ^ (fingerprint >>> 32));
+		}
+	}
+
 	public NFAGraph reverse() {
 		NFAGraph reversedGraph = this.copy();
 		
@@ -0,0 +1,139 @@
+package nfa;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers shortest path queries on an NFA graph from breadth first search
+ * trees, so that the graph is searched once for every state paths start from
+ * and once for the paths to the accepting states, rather than once for every
+ * path. The trees are only valid for as long as the graph does not change, and
+ * are obtained with {@link NFAGraph#getShortestPaths()}. The graphs of cached
+ * results are shared between threads, so the trees are published through a
+ * concurrent map and a volatile field; threads that search for the same tree
+ * at the same time each build an equal one.
+ */
+public class NFAShortestPaths {
+
+	private final NFAGraph m;
+
+	/* for every state searched from, the edge through which each reachable state was first reached */
+	private final ConcurrentHashMap<NFAVertexND, HashMap<NFAVertexND, NFAEdge>> treesFrom;
+
+	/* for every state that can reach an accepting state, the first edge on a shortest path to one */
+	private volatile HashMap<NFAVertexND, NFAEdge> edgesToAccepting;
+
+	NFAShortestPaths(NFAGraph m) {
+		this.m = m;
+		treesFrom = new ConcurrentHashMap<NFAVertexND, HashMap<NFAVertexND, NFAEdge>>();
+	}
+
+	/**
+	 * @param finish
+	 *            The state to find a path to.
+	 * @return The edges of a shortest path from the initial state to the
+	 *         state, or null if the state cannot be reached.
+	 */
+	public LinkedList<NFAEdge> pathTo(NFAVertexND finish) {
+		return pathBetween(m.getInitialState(), finish);
+	}
+
+	/**
+	 * @param start
+	 *            The state to find a path from.
+	 * @param finish
+	 *            The state to find a path to.
+	 * @return The edges of a shortest path between the states, which is empty
+	 *         if they are the same, or null if there is no path.
+	 */
+	public LinkedList<NFAEdge> pathBetween(NFAVertexND start, NFAVertexND finish) {
+		HashMap<NFAVertexND, NFAEdge> tree = treesFrom.get(start);
+		if (tree == null) {
+			tree = searchFrom(start);
+			treesFrom.put(start, tree);
+		}
+		if (!tree.containsKey(finish)) {
+			return null;
+		}
+
+		LinkedList<NFAEdge> path = new LinkedList<NFAEdge>();
+		NFAEdge e;
+		NFAVertexND currentVertex = finish;
+		while ((e = tree.get(currentVertex)) != null) {
+			path.addFirst(e);
+			currentVertex = e.getSourceVertex();
+		}
+		return path;
+	}
+
+	/**
+	 * @param start
+	 *            The state to find a path from.
+	 * @return The edges of a shortest path from the state to any accepting
+	 *         state, which is empty if the state is accepting, or null if no
+	 *         accepting state can be reached.
+	 */
+	public LinkedList<NFAEdge> pathToAccepting(NFAVertexND start) {
+		HashMap<NFAVertexND, NFAEdge> edgesToAccepting = this.edgesToAccepting;
+		if (edgesToAccepting == null) {
+			edgesToAccepting = searchToAccepting();
+			this.edgesToAccepting = edgesToAccepting;
+		}
+		if (!edgesToAccepting.containsKey(start)) {
+			return null;
+		}
+
+		LinkedList<NFAEdge> path = new LinkedList<NFAEdge>();
+		NFAEdge e;
+		NFAVertexND currentVertex = start;
+		while ((e = edgesToAccepting.get(currentVertex)) != null) {
+			path.add(e);
+			currentVertex = e.getTargetVertex();
+		}
+		return path;
+	}
+
+	private HashMap<NFAVertexND, NFAEdge> searchFrom(NFAVertexND start) {
+		HashMap<NFAVertexND, NFAEdge> tree = new HashMap<NFAVertexND, NFAEdge>();
+		LinkedList<NFAVertexND> queue = new LinkedList<NFAVertexND>();
+		/* the start state is the root of the tree, and is reached by no edge */
+		tree.put(start, null);
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			NFAVertexND currentVertex = queue.removeFirst();
+			for (NFAEdge e : m.outgoingEdgesOf(currentVertex)) {
+				NFAVertexND target = e.getTargetVertex();
+				if (!tree.containsKey(target)) {
+					tree.put(target, e);
+					queue.add(target);
+				}
+			}
+		}
+		return tree;
+	}
+
+	private HashMap<NFAVertexND, NFAEdge> searchToAccepting() {
+		HashMap<NFAVertexND, NFAEdge> tree = new HashMap<NFAVertexND, NFAEdge>();
+		LinkedList<NFAVertexND> queue = new LinkedList<NFAVertexND>();
+		/* searching backwards from all accepting states at once */
+		for (NFAVertexND acceptingState : m.getAcceptingStates()) {
+			if (m.containsVertex(acceptingState)) {
+				tree.put(acceptingState, null);
+				queue.add(acceptingState);
+			}
+		}
+		while (!queue.isEmpty()) {
+			NFAVertexND currentVertex = queue.removeFirst();
+			for (NFAEdge e : m.incomingEdgesOf(currentVertex)) {
+				NFAVertexND source = e.getSourceVertex();
+				if (!tree.containsKey(source)) {
+					tree.put(source, e);
+					queue.add(source);
+				}
+			}
+		}
+		return tree;
+	}
+
+}
@@ -14,12 +14,44 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 	
 	private static final boolean WILDCARD_MATCHES_NEWLINE = true;
 	
+	/* The predefined classes are built once, range sets share their bounds when copied. */
+	private static final RangeSet WILDCARD_RANGE_SET = createRangeWildcard();
+	private static final RangeSet DIGITS_RANGE_SET = createRangeSet(MIN_DIGIT, MAX_DIGIT + 1);
+	private static final RangeSet WHITE_SPACES_RANGE_SET = createRangeSet(MIN_SPACE, MAX_SPACE + 1);
+	private static final RangeSet WORD_CHARACTERS_RANGE_SET = createRangeSetWordCharacters();
+	private static final RangeSet VERTICAL_TAB_RANGE_SET = createRangeSet(VERTICAL_TAB, VERTICAL_TAB + 1);
+	private static final RangeSet HORIZONTAL_TAB_RANGE_SET = createRangeSet(HORIZONTAL_TAB, HORIZONTAL_TAB + 1);
+
 	public static CharacterClassTransitionLabel wildcardLabel() {
-		CharacterClassTransitionLabel wildcardLabel = new CharacterClassTransitionLabel(predefinedRangeWildcard());
+		CharacterClassTransitionLabel wildcardLabel = new CharacterClassTransitionLabel(WILDCARD_RANGE_SET);
 		return wildcardLabel;
 	}
 	
 	public static RangeSet predefinedRangeWildcard() {
+		return new RangeSet(WILDCARD_RANGE_SET);
+	}
+	
+	public static RangeSet predefinedRangeSetDigits() {
+		return new RangeSet(DIGITS_RANGE_SET);
+	}
+	
+	public static RangeSet predefinedRangeSetWhiteSpaces() {
+		return new RangeSet(WHITE_SPACES_RANGE_SET);
+	}
+	
+	public static RangeSet predefinedRangeSetWordCharacters() {
+		return new RangeSet(WORD_CHARACTERS_RANGE_SET);
+	}
+	
+	public static RangeSet predefinedRangeSetVerticalTab() {
+		return new RangeSet(VERTICAL_TAB_RANGE_SET);
+	}
+	
+	public static RangeSet predefinedRangeSetHorizontalTab() {
+		return new RangeSet(HORIZONTAL_TAB_RANGE_SET);
+	}
+	
+	private static RangeSet createRangeWildcard() {
 		RangeSet ranges = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
 		
 		if (WILDCARD_MATCHES_NEWLINE) {
@@ -36,21 +68,14 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		return ranges;
 	}
 	
-	public static RangeSet predefinedRangeSetDigits() {
+	private static RangeSet createRangeSet(int low, int high) {
 		RangeSet ranges = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
-		Range digitsRange =ranges.createRange(MIN_DIGIT, MAX_DIGIT + 1);
-		ranges.union(digitsRange);
+		Range range = ranges.createRange(low, high);
+		ranges.union(range);
 		return ranges;
 	}
 	
-	public static RangeSet predefinedRangeSetWhiteSpaces() {
-		RangeSet ranges = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
-		Range spacesRange = ranges.createRange(MIN_SPACE, MAX_SPACE + 1);
-		ranges.union(spacesRange);
-		return ranges;
-	}
-	
-	public static RangeSet predefinedRangeSetWordCharacters() {
+	private static RangeSet createRangeSetWordCharacters() {
 		RangeSet ranges = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
 		Range wordsRange1 = ranges.createRange(MIN_WORD1, MAX_WORD1 + 1);
 		Range wordsRange2 = ranges.createRange(MIN_WORD2, MAX_WORD2 + 1);
@@ -60,22 +85,14 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		ranges.union(wordsRange3);
 		return ranges;
 	}
-	
-	public static RangeSet predefinedRangeSetVerticalTab() {
-		RangeSet ranges = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
-		Range verticalTabRange = ranges.createRange(VERTICAL_TAB);
-		ranges.union(verticalTabRange);
-		return ranges;
-	}
-	
-	public static RangeSet predefinedRangeSetHorizontalTab() {
-		RangeSet ranges = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
-		Range horizontalTabRange = ranges.createRange(HORIZONTAL_TAB);
-		ranges.union(horizontalTabRange);
-		return ranges;
-	}
 
 	private final RangeSet ranges;
+
+	public RangeSet getRanges() {
+		/* a copy shares the bounds, but keeps the label from being changed */
+		return new RangeSet(ranges);
+	}
+
 	public CharacterClassTransitionLabel() {
 		ranges  = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
 	}
@@ -101,15 +118,17 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		return matches(tlpr.parseTransitionLabel());
 	}
 	
+	@Override
+	public boolean matches(int symbol) {
+		return ranges.contains(symbol);
+	}
+	
 	public boolean matches(TransitionLabel tl) {
 		
 		if (tl instanceof CharacterClassTransitionLabel) {
 			CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) tl;
 			
-			RangeSet rs1 = new RangeSet(ranges);
-			RangeSet rs2 = new RangeSet(cctl.ranges);
-			rs1.intersection(rs2);
-			return !rs1.isEmpty();
+			return ranges.overlaps(cctl.ranges);
 		} else {
 			return false;
 		}
@@ -120,10 +139,7 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		if (tl instanceof CharacterClassTransitionLabel) {
 			CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) tl;
 			
-			RangeSet rs1 = new RangeSet(ranges);
-			RangeSet rs2 = new RangeSet(cctl.ranges);
-			rs1.intersection(rs2);
-			return new CharacterClassTransitionLabel(rs1);
+			return new CharacterClassTransitionLabel(RangeSet.intersectionOf(ranges, cctl.ranges));
 		} else {
 			throw new IllegalArgumentException("Invalid TransitionLabel type.");
 		}
@@ -134,10 +150,7 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		if (tl instanceof CharacterClassTransitionLabel) {
 			CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) tl;
 			
-			RangeSet rs1 = new RangeSet(ranges);
-			RangeSet rs2 = new RangeSet(cctl.ranges);
-			rs1.union(rs2);
-			return new CharacterClassTransitionLabel(rs1);
+			return new CharacterClassTransitionLabel(RangeSet.unionOf(ranges, cctl.ranges));
 		} else {
 			throw new IllegalArgumentException("Invalid TransitionLabel type.");
 		}
@@ -145,9 +158,7 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 	
 	@Override
 	public TransitionLabel complement() {
-		RangeSet rs = new RangeSet(ranges);
-		rs.complement();
-		return new CharacterClassTransitionLabel(rs);
+		return new CharacterClassTransitionLabel(RangeSet.complementOf(ranges));
 	}
 	
 	public boolean isEmpty() {
@@ -1,10 +1,5 @@
 package nfa.transitionlabel;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -14,19 +9,12 @@ import java.util.Random;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.net.*;
 
 import util.RangeSet;
 import util.RangeSet.Range;
 
 public class CharacterPropertyParser {
 
-	private final String FILE_PATH = "../data/";
-	
-	private final String FILE_NAME = "predef_ranges.txt";
-
-	private final String FILE;
-	
 	public static final int MIN_16UNICODE = 0;
 	public static final int MAX_16UNICODE = 65536;
 	
@@ -36,105 +24,9 @@ public class CharacterPropertyParser {
 		this.index = index;
 	}
 	
-	boolean dataRead;
-	private final HashMap<String, HashMap<String, RangeSet>> prefixToSuffixesToRanges;
-	private final HashSet<String> caseInsensitivePrefixes;
-	private final HashSet<String> caseInsensitiveSuffixes;
-	
 	public CharacterPropertyParser(String regex, int index) {
-		URL binUrl = CharacterPropertyParser.class.getClassLoader().getResource("");
-		String binAbsolutePath = binUrl.getPath();
-		this.FILE = binAbsolutePath + FILE_PATH + FILE_NAME;
-
-		this.prefixToSuffixesToRanges = new HashMap<String, HashMap<String, RangeSet>>();
-		this.caseInsensitivePrefixes = new HashSet<String>();
-		this.caseInsensitiveSuffixes = new HashSet<String>();
-		
 		this.regex = regex; /* only used for exception messages */
 		this.index = index; /* only used for exception messages */
-		dataRead = false;
-	}
-	
-	
-	private void readData() {
-		try {
-			BufferedReader fileReader = new BufferedReader(new FileReader(new File(FILE)));
-			try {
-				while (fileReader.ready()) {
-					String line = fileReader.readLine();
-					String fields[] = line.split(":");
-					String prefixesStr = fields[0];
-					String prefixCS = fields[1];
-					String suffixesStr = fields[2];
-					String suffixCS = fields[3];
-					String rangesStr = fields[4];
-					String[] ranges = rangesStr.split(",");
-					RangeSet rangeSet = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
-					/* We first put the Ranges in a separate list, so we only have to union (and so merge) once */
-					List<Range> rangesToAdd = new LinkedList<Range>();
-					for (String range : ranges) {
-						if (range.contains("-")) {
-							int index = range.indexOf("-");
-							String minBoundStr = range.substring(0, index);
-							String maxBoundStr = range.substring(index + 1);
-							int minBound = Integer.parseInt(minBoundStr);
-							int maxBound = Integer.parseInt(maxBoundStr);
-							rangesToAdd.add(rangeSet.createRange(minBound, maxBound + 1));
-						} else {
-							int rangeInt = Integer.parseInt(range);
-							rangesToAdd.add(rangeSet.createRange(rangeInt));
-						}
-					}
-					rangeSet.union(rangesToAdd);
-					
-					String prefixes[] = prefixesStr.split(",");
-					for (String prefix : prefixes) {
-						String suffixes[] = suffixesStr.split(",");
-						for (String suffix : suffixes) {
-							if (prefixCS.equals("false")) {
-								caseInsensitivePrefixes.add(prefix);
-							}
-							if (suffixCS.equals("false")) {
-								caseInsensitiveSuffixes.add(suffix);
-							}
-							
-							if (prefixToSuffixesToRanges.containsKey(prefix)) {
-								/* Get suffixes currently associated with prefix */
-								HashMap<String, RangeSet> newSuffixesToRanges = prefixToSuffixesToRanges.get(prefix);
-								if (newSuffixesToRanges.containsKey(suffix)) {
-									RangeSet oldRangesSet = newSuffixesToRanges.get(suffix);
-									if (!oldRangesSet.equals(rangeSet)) {
-										throw new RuntimeException("Contradicting ranges for prefix and suffix");
-									}
-								} else {
-									newSuffixesToRanges.put(suffix, rangeSet);
-									prefixToSuffixesToRanges.put(prefix, newSuffixesToRanges);
-								}
-								
-							} else {
-								HashMap<String, RangeSet> newSuffixesToRanges = new HashMap<String, RangeSet>();
-								newSuffixesToRanges.put(suffix, rangeSet);
-								prefixToSuffixesToRanges.put(prefix, newSuffixesToRanges);
-							}
-						}
-					}
-					
-					
-				}
-			} catch (IOException ioe) {
-				ioe.printStackTrace();
-			} finally {
-				try {
-					fileReader.close();
-				} catch (IOException e) {
-					
-					e.printStackTrace();
-				}
-			}
-		} catch (FileNotFoundException e) {
-			System.err.println("The file " + FILE + " was not found in " + System.getProperty("user.dir"));
-			e.printStackTrace();
-		}
 	}
 	
 	public RangeSet parseCharacterPropertyIterative(String characterProperty) {
@@ -184,32 +76,10 @@ public class CharacterPropertyParser {
 	}
 	
 	public RangeSet parseCharacterPropertyStored(String characterProperty) {
-		if (!dataRead) {
-			readData();
-			dataRead = true;
-		}
-
-		RangeSet toReturn = null;
-		
-		boolean found = false;
-		for (String prefix : prefixToSuffixesToRanges.keySet()) {
-			if (characterProperty.startsWith(prefix) || (caseInsensitivePrefixes.contains(prefix) && characterProperty.toLowerCase().startsWith(prefix))) {
-				String suffix = characterProperty.substring(prefix.length());
-				HashMap<String, RangeSet> suffixesToRanges = prefixToSuffixesToRanges.get(prefix);
-				if (suffixesToRanges.containsKey(suffix)) {
-					toReturn = suffixesToRanges.get(suffix);
-					found = true;
-				} else if ((caseInsensitiveSuffixes.contains(suffix.toUpperCase()) && suffixesToRanges.containsKey(suffix.toUpperCase()))) {
-					toReturn = suffixesToRanges.get(suffix.toUpperCase());
-					found = true;
-				}
-			}
-		}
-		
-		if (!found) {
+		RangeSet toReturn = CharacterPropertyRegistry.getInstance().lookup(characterProperty);
+		if (toReturn == null) {
 			throw new PatternSyntaxException("Unknown character property name {" + characterProperty + "}", regex, index);
 		}
-		
 		return toReturn;
 	}
 	
@@ -230,12 +100,12 @@ public class CharacterPropertyParser {
 	
 	private static void testAll() {
 		CharacterPropertyParser cpp = new CharacterPropertyParser("\\p{...}", 3);
-		cpp.readData();
-		for (Map.Entry<String, HashMap<String, RangeSet>> kv : cpp.prefixToSuffixesToRanges.entrySet()) {
+		CharacterPropertyRegistry registry = CharacterPropertyRegistry.getInstance();
+		for (Map.Entry<String, HashMap<String, Integer>> kv : registry.getPrefixToSuffixesToTable().entrySet()) {
 			String prefixOriginal = kv.getKey();
 			List<String> prefixes = new LinkedList<String>();
 			prefixes.add(prefixOriginal);
-			if (cpp.caseInsensitivePrefixes.contains(prefixOriginal)) {
+			if (registry.isCaseInsensitivePrefix(prefixOriginal)) {
 				int possibleRandomCasesLeft = (1 << prefixOriginal.length()) - 1;
 				int maxToAdd = 3;
 				int numToAdd = possibleRandomCasesLeft > maxToAdd ? maxToAdd : possibleRandomCasesLeft;
@@ -243,19 +113,19 @@ public class CharacterPropertyParser {
 			}
 			for (String prefix : prefixes) {
 				int prefixCounter = 0;
-				HashMap<String, RangeSet> suffixToRangeSet = kv.getValue();
-				for (Map.Entry<String, RangeSet> kv2 : suffixToRangeSet.entrySet()) {
+				HashMap<String, Integer> suffixToTable = kv.getValue();
+				for (Map.Entry<String, Integer> kv2 : suffixToTable.entrySet()) {
 					String suffixOriginal = kv2.getKey();
 					List<String> suffixes = new LinkedList<String>();
 					suffixes.add(suffixOriginal);
-					if (cpp.caseInsensitiveSuffixes.contains(suffixOriginal)) {
+					if (registry.isCaseInsensitiveSuffix(suffixOriginal)) {
 						int possibleRandomCasesLeft = (1 << suffixOriginal.length()) - 1;
 						int maxToAdd = 3;
 						int numToAdd = possibleRandomCasesLeft > maxToAdd ? maxToAdd : possibleRandomCasesLeft;
 						suffixes.addAll(randomiseCase(suffixOriginal, numToAdd));
 					}
 					for (String suffix : suffixes) {
-						RangeSet rangeSet = kv2.getValue();
+						RangeSet rangeSet = registry.getRanges(kv2.getValue());
 						String charProperty = prefix + suffix;
 						
 						RangeSet correctRangeSet = cpp.parseCharacterPropertyIterative(charProperty);
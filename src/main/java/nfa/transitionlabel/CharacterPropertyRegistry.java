@@ -0,0 +1,181 @@
+package nfa.transitionlabel;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import util.RangeSet;
+
+/**
+ * The ranges of the character properties, read from the tables that
+ * CharacterPropertyTableCompiler compiled into the class path. The tables are
+ * read once per process, but the ranges of a table are only decoded the first
+ * time one of its properties is looked up. Since the bounds of a range set are
+ * never modified, every lookup of a property returns a copy sharing the bounds
+ * of the decoded range set.
+ */
+public class CharacterPropertyRegistry {
+
+	static final String RESOURCE_NAME = "predef_ranges.bin";
+
+	static final int MAGIC = 0x50524e47;
+
+	static final int VERSION = 1;
+
+	private static class InstanceHolder {
+		private static final CharacterPropertyRegistry INSTANCE = load();
+	}
+
+	public static CharacterPropertyRegistry getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+
+	/* the index of the table of each property */
+	private final HashMap<String, HashMap<String, Integer>> prefixToSuffixesToTable;
+	private final HashSet<String> caseInsensitivePrefixes;
+	private final HashSet<String> caseInsensitiveSuffixes;
+
+	/* the minimum and inclusive maximum of each range, table i starts at tableOffsets[i] */
+	private final int[] tableOffsets;
+	private final int[] tableSizes;
+	private final char[] rangeData;
+
+	/* null until a table is first used */
+	private final RangeSet[] decodedTables;
+
+	private CharacterPropertyRegistry(int numTables, int rangeDataLength) {
+		prefixToSuffixesToTable = new HashMap<String, HashMap<String, Integer>>();
+		caseInsensitivePrefixes = new HashSet<String>();
+		caseInsensitiveSuffixes = new HashSet<String>();
+		tableOffsets = new int[numTables];
+		tableSizes = new int[numTables];
+		rangeData = new char[rangeDataLength];
+		decodedTables = new RangeSet[numTables];
+	}
+
+	private static CharacterPropertyRegistry load() {
+		InputStream resource = CharacterPropertyRegistry.class.getResourceAsStream(RESOURCE_NAME);
+		if (resource == null) {
+			throw new RuntimeException("Character property tables " + RESOURCE_NAME + " not found on the class path");
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(resource));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new RuntimeException("Character property tables " + RESOURCE_NAME + " have an unknown format");
+			}
+			int numTables = in.readInt();
+			String[] prefixesStrs = new String[numTables];
+			boolean[] prefixesCaseSensitive = new boolean[numTables];
+			String[] suffixesStrs = new String[numTables];
+			boolean[] suffixesCaseSensitive = new boolean[numTables];
+			int[] tableOffsets = new int[numTables];
+			int[] tableSizes = new int[numTables];
+			for (int i = 0; i < numTables; i++) {
+				prefixesStrs[i] = in.readUTF();
+				prefixesCaseSensitive[i] = in.readBoolean();
+				suffixesStrs[i] = in.readUTF();
+				suffixesCaseSensitive[i] = in.readBoolean();
+				tableOffsets[i] = in.readInt();
+				tableSizes[i] = in.readInt();
+			}
+			CharacterPropertyRegistry registry = new CharacterPropertyRegistry(numTables, in.readInt());
+			System.arraycopy(tableOffsets, 0, registry.tableOffsets, 0, numTables);
+			System.arraycopy(tableSizes, 0, registry.tableSizes, 0, numTables);
+			for (int i = 0; i < registry.rangeData.length; i++) {
+				registry.rangeData[i] = in.readChar();
+			}
+			for (int i = 0; i < numTables; i++) {
+				registry.addProperties(i, prefixesStrs[i], prefixesCaseSensitive[i], suffixesStrs[i], suffixesCaseSensitive[i]);
+			}
+			return registry;
+		} catch (IOException ioe) {
+			throw new RuntimeException("Could not read character property tables " + RESOURCE_NAME + ": " + ioe.getMessage());
+		} finally {
+			try {
+				in.close();
+			} catch (IOException ioe) {
+
+			}
+		}
+	}
+
+	private void addProperties(int table, String prefixesStr, boolean prefixCaseSensitive, String suffixesStr, boolean suffixCaseSensitive) {
+		for (String prefix : prefixesStr.split(",")) {
+			for (String suffix : suffixesStr.split(",")) {
+				if (!prefixCaseSensitive) {
+					caseInsensitivePrefixes.add(prefix);
+				}
+				if (!suffixCaseSensitive) {
+					caseInsensitiveSuffixes.add(suffix);
+				}
+				HashMap<String, Integer> suffixesToTable = prefixToSuffixesToTable.get(prefix);
+				if (suffixesToTable == null) {
+					suffixesToTable = new HashMap<String, Integer>();
+					prefixToSuffixesToTable.put(prefix, suffixesToTable);
+				}
+				/* the compiler checked that repeated properties have the same ranges */
+				if (!suffixesToTable.containsKey(suffix)) {
+					suffixesToTable.put(suffix, table);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The ranges of the character property, or null if there is no such property.
+	 */
+	public RangeSet lookup(String characterProperty) {
+		Integer table = null;
+		for (String prefix : prefixToSuffixesToTable.keySet()) {
+			if (characterProperty.startsWith(prefix) || (caseInsensitivePrefixes.contains(prefix) && characterProperty.toLowerCase().startsWith(prefix))) {
+				String suffix = characterProperty.substring(prefix.length());
+				HashMap<String, Integer> suffixesToTable = prefixToSuffixesToTable.get(prefix);
+				if (suffixesToTable.containsKey(suffix)) {
+					table = suffixesToTable.get(suffix);
+				} else if ((caseInsensitiveSuffixes.contains(suffix.toUpperCase()) && suffixesToTable.containsKey(suffix.toUpperCase()))) {
+					table = suffixesToTable.get(suffix.toUpperCase());
+				}
+			}
+		}
+		if (table == null) {
+			return null;
+		}
+		return new RangeSet(getTable(table));
+	}
+
+	private synchronized RangeSet getTable(int table) {
+		RangeSet decoded = decodedTables[table];
+		if (decoded == null) {
+			int[] bounds = new int[tableSizes[table] * 2];
+			int offset = tableOffsets[table];
+			for (int i = 0; i < bounds.length; i += 2) {
+				bounds[i] = rangeData[offset + i];
+				bounds[i + 1] = rangeData[offset + i + 1] + 1;
+			}
+			decoded = RangeSet.ofBounds(CharacterPropertyParser.MIN_16UNICODE, CharacterPropertyParser.MAX_16UNICODE, bounds);
+			decodedTables[table] = decoded;
+		}
+		return decoded;
+	}
+
+	/* For testing all the properties against the Java matcher */
+	HashMap<String, HashMap<String, Integer>> getPrefixToSuffixesToTable() {
+		return prefixToSuffixesToTable;
+	}
+
+	boolean isCaseInsensitivePrefix(String prefix) {
+		return caseInsensitivePrefixes.contains(prefix);
+	}
+
+	boolean isCaseInsensitiveSuffix(String suffix) {
+		return caseInsensitiveSuffixes.contains(suffix);
+	}
+
+	RangeSet getRanges(int table) {
+		return new RangeSet(getTable(table));
+	}
+
+}
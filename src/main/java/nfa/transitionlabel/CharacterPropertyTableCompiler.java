@@ -0,0 +1,136 @@
+package nfa.transitionlabel;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import util.RangeSet;
+import util.RangeSet.Range;
+
+/**
+ * Compiles the character property ranges in data/predef_ranges.txt to the binary
+ * tables read by CharacterPropertyRegistry. It has to be run again whenever the
+ * text file changes:
+ *
+ * <pre>
+ * java -cp target/classes nfa.transitionlabel.CharacterPropertyTableCompiler data/predef_ranges.txt src/main/resources/nfa/transitionlabel/predef_ranges.bin
+ * </pre>
+ *
+ * Each line of the text file is prefixes:prefixCaseSensitive:suffixes:suffixCaseSensitive:ranges
+ * and becomes one table. A table is stored as the minimum and inclusive maximum of each
+ * of its merged ranges, in 16 bits each since the properties only cover the basic
+ * multilingual plane.
+ */
+public class CharacterPropertyTableCompiler {
+
+	private static class Table {
+		private final String prefixes;
+		private final boolean prefixCaseSensitive;
+		private final String suffixes;
+		private final boolean suffixCaseSensitive;
+		private final RangeSet ranges;
+
+		private Table(String prefixes, boolean prefixCaseSensitive, String suffixes, boolean suffixCaseSensitive, RangeSet ranges) {
+			this.prefixes = prefixes;
+			this.prefixCaseSensitive = prefixCaseSensitive;
+			this.suffixes = suffixes;
+			this.suffixCaseSensitive = suffixCaseSensitive;
+			this.ranges = ranges;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: java nfa.transitionlabel.CharacterPropertyTableCompiler predef_ranges.txt predef_ranges.bin");
+			System.exit(0);
+		}
+		List<Table> tables = readTables(args[0]);
+		writeTables(tables, args[1]);
+		System.out.println("Compiled " + tables.size() + " character property tables to " + args[1]);
+	}
+
+	private static List<Table> readTables(String fileName) throws IOException {
+		List<Table> tables = new ArrayList<Table>();
+		/* to check that a property is not given two different sets of ranges */
+		HashMap<String, RangeSet> propertyToRanges = new HashMap<String, RangeSet>();
+		BufferedReader fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = fileReader.readLine()) != null) {
+				String fields[] = line.split(":");
+				String prefixesStr = fields[0];
+				String suffixesStr = fields[2];
+				String[] ranges = fields[4].split(",");
+				RangeSet rangeSet = new RangeSet(CharacterPropertyParser.MIN_16UNICODE, CharacterPropertyParser.MAX_16UNICODE);
+				/* We first put the Ranges in a separate list, so we only have to union (and so merge) once */
+				List<Range> rangesToAdd = new LinkedList<Range>();
+				for (String range : ranges) {
+					if (range.contains("-")) {
+						int index = range.indexOf("-");
+						int minBound = Integer.parseInt(range.substring(0, index));
+						int maxBound = Integer.parseInt(range.substring(index + 1));
+						rangesToAdd.add(rangeSet.createRange(minBound, maxBound + 1));
+					} else {
+						rangesToAdd.add(rangeSet.createRange(Integer.parseInt(range)));
+					}
+				}
+				rangeSet.union(rangesToAdd);
+
+				for (String prefix : prefixesStr.split(",")) {
+					for (String suffix : suffixesStr.split(",")) {
+						RangeSet oldRangeSet = propertyToRanges.put(prefix + ":" + suffix, rangeSet);
+						if (oldRangeSet != null && !oldRangeSet.equals(rangeSet)) {
+							throw new RuntimeException("Contradicting ranges for prefix and suffix");
+						}
+					}
+				}
+				tables.add(new Table(prefixesStr, fields[1].equals("true"), suffixesStr, fields[3].equals("true"), rangeSet));
+			}
+		} finally {
+			fileReader.close();
+		}
+		return tables;
+	}
+
+	private static void writeTables(List<Table> tables, String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			out.writeInt(CharacterPropertyRegistry.MAGIC);
+			out.writeInt(CharacterPropertyRegistry.VERSION);
+			out.writeInt(tables.size());
+			int offset = 0;
+			for (Table table : tables) {
+				int numRanges = 0;
+				for (@SuppressWarnings("unused") Range r : table.ranges) {
+					numRanges++;
+				}
+				out.writeUTF(table.prefixes);
+				out.writeBoolean(table.prefixCaseSensitive);
+				out.writeUTF(table.suffixes);
+				out.writeBoolean(table.suffixCaseSensitive);
+				out.writeInt(offset);
+				out.writeInt(numRanges);
+				offset += 2 * numRanges;
+			}
+			out.writeInt(offset);
+			for (Table table : tables) {
+				for (Range r : table.ranges) {
+					out.writeChar(r.low);
+					out.writeChar(r.high - 1);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+}
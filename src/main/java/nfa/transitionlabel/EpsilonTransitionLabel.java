@@ -25,6 +25,12 @@ public class EpsilonTransitionLabel implements TransitionLabel, Comparable<Epsil
 		return transitionLabel.equals(word);
 	}
 
+	@Override
+	public boolean matches(int symbol) {
+		/* epsilon transitions do not consume symbols */
+		return false;
+	}
+
 	@Override
 	public boolean matches(TransitionLabel tl) {
 		if (tl instanceof CharacterClassTransitionLabel) {
@@ -0,0 +1,215 @@
+package nfa.transitionlabel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.TreeSet;
+
+import util.RangeSet;
+import util.RangeSet.Range;
+
+/**
+ * A partition of the alphabet into the minterms of a set of transition labels:
+ * the largest disjoint sets of symbols that every label either contains
+ * completely or not at all. Every label built from the labels by intersection,
+ * union and complement is a union of minterms, so it can be represented by the
+ * set of its minterm numbers and intersected with a bitwise and instead of
+ * range set algebra. Epsilon transition labels are not part of the partition.
+ */
+public class MintermPartition {
+
+	/* The alphabet is cut into the intervals [cuts[i], cuts[i + 1]), which the bounds of no label fall inside of */
+	private final int[] cuts;
+
+	/* The minterm each interval belongs to */
+	private final int[] intervalMinterms;
+
+	/* The bounds of each minterm, as RangeSet stores them */
+	private final int[][] mintermBounds;
+
+	public MintermPartition(Collection<? extends TransitionLabel> labels) {
+		LinkedHashSet<CharacterClassTransitionLabel> characterClasses = new LinkedHashSet<CharacterClassTransitionLabel>();
+		TreeSet<Integer> allCuts = new TreeSet<Integer>();
+		allCuts.add(TransitionLabel.MIN_16UNICODE);
+		allCuts.add(TransitionLabel.MAX_16UNICODE);
+		for (TransitionLabel tl : labels) {
+			if (tl instanceof CharacterClassTransitionLabel) {
+				CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) tl;
+				if (characterClasses.add(cctl)) {
+					for (Range r : cctl.getRanges()) {
+						allCuts.add(r.low);
+						allCuts.add(r.high);
+					}
+				}
+			}
+		}
+		cuts = new int[allCuts.size()];
+		int cutNumber = 0;
+		for (int cut : allCuts) {
+			cuts[cutNumber++] = cut;
+		}
+
+		/* Refine the partition with one label at a time, by splitting the classes of the intervals it covers from the rest */
+		int numIntervals = cuts.length - 1;
+		int[] intervalClasses = new int[numIntervals];
+		int numClasses = 1;
+		for (CharacterClassTransitionLabel cctl : characterClasses) {
+			HashMap<Integer, Integer> splitClasses = new HashMap<Integer, Integer>();
+			for (Range r : cctl.getRanges()) {
+				for (int interval = intervalOf(r.low); interval < numIntervals && cuts[interval] < r.high; interval++) {
+					Integer splitClass = splitClasses.get(intervalClasses[interval]);
+					if (splitClass == null) {
+						splitClass = numClasses++;
+						splitClasses.put(intervalClasses[interval], splitClass);
+					}
+					intervalClasses[interval] = splitClass;
+				}
+			}
+		}
+
+		/* Number the minterms densely, in the order of their first symbols */
+		intervalMinterms = new int[numIntervals];
+		int[] classMinterms = new int[numClasses];
+		Arrays.fill(classMinterms, -1);
+		int numMinterms = 0;
+		for (int interval = 0; interval < numIntervals; interval++) {
+			if (classMinterms[intervalClasses[interval]] == -1) {
+				classMinterms[intervalClasses[interval]] = numMinterms++;
+			}
+			intervalMinterms[interval] = classMinterms[intervalClasses[interval]];
+		}
+		int[] numMintermIntervals = new int[numMinterms];
+		for (int interval = 0; interval < numIntervals; interval++) {
+			numMintermIntervals[intervalMinterms[interval]]++;
+		}
+		mintermBounds = new int[numMinterms][];
+		int[] mintermBoundsSizes = new int[numMinterms];
+		for (int minterm = 0; minterm < numMinterms; minterm++) {
+			mintermBounds[minterm] = new int[2 * numMintermIntervals[minterm]];
+		}
+		for (int interval = 0; interval < numIntervals; interval++) {
+			int minterm = intervalMinterms[interval];
+			int[] bounds = mintermBounds[minterm];
+			int size = mintermBoundsSizes[minterm];
+			if (size > 0 && bounds[size - 1] == cuts[interval]) {
+				/* adjacent to the previous range */
+				bounds[size - 1] = cuts[interval + 1];
+			} else {
+				bounds[size++] = cuts[interval];
+				bounds[size++] = cuts[interval + 1];
+			}
+			mintermBoundsSizes[minterm] = size;
+		}
+		for (int minterm = 0; minterm < numMinterms; minterm++) {
+			mintermBounds[minterm] = Arrays.copyOf(mintermBounds[minterm], mintermBoundsSizes[minterm]);
+		}
+	}
+
+	private int intervalOf(int symbol) {
+		int interval = Arrays.binarySearch(cuts, symbol);
+		if (interval < 0) {
+			/* the insertion point is one past the interval the symbol is in */
+			interval = -interval - 2;
+		}
+		return interval;
+	}
+
+	private int[] boundsOf(BitSet minterms) {
+		int[] bounds = new int[2 * cuts.length];
+		int size = 0;
+		for (int interval = 0; interval < intervalMinterms.length; interval++) {
+			if (minterms.get(intervalMinterms[interval])) {
+				if (size > 0 && bounds[size - 1] == cuts[interval]) {
+					/* adjacent to the previous range */
+					bounds[size - 1] = cuts[interval + 1];
+				} else {
+					bounds[size++] = cuts[interval];
+					bounds[size++] = cuts[interval + 1];
+				}
+			}
+		}
+		return Arrays.copyOf(bounds, size);
+	}
+
+	public int getNumMinterms() {
+		return mintermBounds.length;
+	}
+
+	/**
+	 * @return The minterm the symbol belongs to, or -1 if the symbol is outside of the alphabet.
+	 */
+	public int getMinterm(int symbol) {
+		if (symbol < TransitionLabel.MIN_16UNICODE || symbol >= TransitionLabel.MAX_16UNICODE) {
+			return -1;
+		}
+		return intervalMinterms[intervalOf(symbol)];
+	}
+
+	/**
+	 * @return The minterms whose union is the label, or null if the label is an epsilon transition label.
+	 * @throws IllegalArgumentException If the label is not a union of minterms of this partition.
+	 */
+	public BitSet getMinterms(TransitionLabel tl) {
+		if (!(tl instanceof CharacterClassTransitionLabel)) {
+			return null;
+		}
+		BitSet minterms = new BitSet(mintermBounds.length);
+		for (Range r : ((CharacterClassTransitionLabel) tl).getRanges()) {
+			int interval = Arrays.binarySearch(cuts, r.low);
+			if (interval < 0) {
+				throw new IllegalArgumentException(tl + " is not a union of minterms.");
+			}
+			for (; cuts[interval] < r.high; interval++) {
+				minterms.set(intervalMinterms[interval]);
+			}
+			if (cuts[interval] != r.high) {
+				throw new IllegalArgumentException(tl + " is not a union of minterms.");
+			}
+		}
+		return minterms;
+	}
+
+	/**
+	 * @return Whether the label is an epsilon transition label or a union of minterms of this partition.
+	 */
+	public boolean isRepresentable(TransitionLabel tl) {
+		if (!(tl instanceof CharacterClassTransitionLabel)) {
+			return true;
+		}
+		for (Range r : ((CharacterClassTransitionLabel) tl).getRanges()) {
+			if (Arrays.binarySearch(cuts, r.low) < 0 || Arrays.binarySearch(cuts, r.high) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The label containing the symbols of the minterms.
+	 */
+	public CharacterClassTransitionLabel toLabel(BitSet minterms) {
+		int[] bounds;
+		if (minterms.cardinality() == 1) {
+			bounds = mintermBounds[minterms.nextSetBit(0)];
+		} else {
+			bounds = boundsOf(minterms);
+		}
+		return new CharacterClassTransitionLabel(RangeSet.ofBounds(TransitionLabel.MIN_16UNICODE, TransitionLabel.MAX_16UNICODE, bounds));
+	}
+
+	/**
+	 * @return A partition of the alphabet into the minterms of the labels of this partition and the given labels.
+	 */
+	public MintermPartition refine(Collection<? extends TransitionLabel> labels) {
+		ArrayList<TransitionLabel> allLabels = new ArrayList<TransitionLabel>();
+		for (int minterm = 0; minterm < mintermBounds.length; minterm++) {
+			allLabels.add(new CharacterClassTransitionLabel(RangeSet.ofBounds(TransitionLabel.MIN_16UNICODE, TransitionLabel.MAX_16UNICODE, mintermBounds[minterm])));
+		}
+		allLabels.addAll(labels);
+		return new MintermPartition(allLabels);
+	}
+
+}
@@ -36,6 +36,16 @@ public interface TransitionLabel {
 	
 	public abstract boolean matches(String word);
 	
+	/**
+	 * Tests whether the label matches a single symbol, without parsing the
+	 * symbol into a label first.
+	 * 
+	 * @param symbol
+	 *            The code of the symbol.
+	 * @return Whether the symbol is in the set of symbols of this label.
+	 */
+	public abstract boolean matches(int symbol);
+	
 	public abstract boolean matches(TransitionLabel tl);
 	
 	public abstract TransitionLabel intersection(TransitionLabel tl);
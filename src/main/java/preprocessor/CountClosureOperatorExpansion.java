@@ -1,5 +1,8 @@
 package preprocessor;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import preprocessor.ParsingPreprocessor.CountClosureOperator;
 import preprocessor.ParsingPreprocessor.RegexOperator;
 import preprocessor.ParsingPreprocessor.RegexOperator.OperatorType;
@@ -8,69 +11,67 @@ import preprocessor.ParsingPreprocessor.RegexToken;
 public class CountClosureOperatorExpansion extends OperatorExpansionRule {
 
 	@Override
-	protected void expandOperator(StringBuilder resultBuilder, RegexToken factor, RegexToken operator) {
+	protected void expandOperator(List<RegexToken> resultTokens, RegexToken factor, RegexToken operator) {
 		CountClosureOperator cco = (CountClosureOperator) operator;
 		switch (cco.getBoundsType()) {
 		case BOUNDED:
-			expandBounded(resultBuilder, factor, cco);
+			expandBounded(resultTokens, factor, cco);
 			break;
 		case UNBOUNDED:
-			expandUnbounded(resultBuilder, factor, cco);
+			expandUnbounded(resultTokens, factor, cco);
 			break;
 		case CONSTANT_REPETITION:
-			expandConstantRepitition(resultBuilder, factor, cco);
+			expandConstantRepitition(resultTokens, factor, cco);
 			break;
 
 		}
 	}
 
-	private void expandBounded(StringBuilder resultBuilder, RegexToken factor, CountClosureOperator cco) {
+	private void expandBounded(List<RegexToken> resultTokens, RegexToken factor, CountClosureOperator cco) {
 		int low = cco.getLow();
 		int high = cco.getHigh();
-		StringBuilder expansionBuilder = new StringBuilder("(");
-		StringBuilder options = new StringBuilder();
+		List<RegexToken> expansion = new LinkedList<RegexToken>();
+		List<RegexToken> options = new LinkedList<RegexToken>();
+		List<RegexToken> alternatives = new LinkedList<RegexToken>();
 		for (int i = 0; i < low - 1; i++) {
-			expansionBuilder.append(factor.getRepresentation());
+			expansion.add(factor);
 		}
-		expansionBuilder.append("(");
 		for (int i = low; i <= high; i++) {
 			if (low == 0 && i == 0) {
-				expansionBuilder.append("\\l");
+				alternatives.add(emptyString());
 			} else {
-				options.append(factor.getRepresentation());
-				expansionBuilder.append(options);
+				options.add(factor);
+				alternatives.addAll(options);
 			}
 
 			if (i < high) {
-				expansionBuilder.append("|");
+				alternatives.add(or());
 			}
 
 		}
-		expansionBuilder.append(")");
+		expansion.add(group(alternatives));
 
-		expansionBuilder.append(")");
-		resultBuilder.append(expansionBuilder);
+		resultTokens.add(group(expansion));
 	}
 
-	private void expandUnbounded(StringBuilder resultBuilder, RegexToken factor, CountClosureOperator cco) {
+	private void expandUnbounded(List<RegexToken> resultTokens, RegexToken factor, CountClosureOperator cco) {
 		int low = cco.getLow();
-		StringBuilder expansionBuilder = new StringBuilder("(");
+		List<RegexToken> expansion = new LinkedList<RegexToken>();
 		for (int i = 0; i < low; i++) {
-			expansionBuilder.append(factor.getRepresentation());
+			expansion.add(factor);
 		}
-		expansionBuilder.append(factor.getRepresentation() + "*");
-		expansionBuilder.append(")");
-		resultBuilder.append(expansionBuilder);
+		expansion.add(factor);
+		expansion.add(star());
+		resultTokens.add(group(expansion));
 	}
 
-	private void expandConstantRepitition(StringBuilder resultBuilder, RegexToken factor, CountClosureOperator cco) {
+	private void expandConstantRepitition(List<RegexToken> resultTokens, RegexToken factor, CountClosureOperator cco) {
 		int low = cco.getLow();
-		StringBuilder expansionBuilder = new StringBuilder("(");
+		List<RegexToken> expansion = new LinkedList<RegexToken>();
 		for (int i = 0; i < low; i++) {
-			expansionBuilder.append(factor.getRepresentation());
+			expansion.add(factor);
 		}
-		expansionBuilder.append(")");
-		resultBuilder.append(expansionBuilder);
+		resultTokens.add(group(expansion));
 	}
 
 	@Override
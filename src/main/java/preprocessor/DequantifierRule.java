@@ -1,8 +1,13 @@
 package preprocessor;
 
+import java.util.LinkedList;
 import java.util.List;
 
+import preprocessor.ParsingPreprocessor.CountClosureOperator;
+import preprocessor.ParsingPreprocessor.CountClosureOperator.BoundsType;
+import preprocessor.ParsingPreprocessor.GroupFactor;
 import preprocessor.ParsingPreprocessor.QuantifiableOperator;
+import preprocessor.ParsingPreprocessor.QuantifiableOperator.Quantifier;
 import preprocessor.ParsingPreprocessor.RegexOperator;
 import preprocessor.ParsingPreprocessor.RegexToken;
 import preprocessor.ParsingPreprocessor.RegexToken.TokenType;
@@ -10,8 +15,8 @@ import preprocessor.ParsingPreprocessor.RegexToken.TokenType;
 public class DequantifierRule implements PreprocessorRule {
 
 	@Override
-	public String process(List<RegexToken> tokenStream) {
-		StringBuilder regexBuilder = new StringBuilder();
+	public List<RegexToken> process(List<RegexToken> tokenStream) {
+		List<RegexToken> resultTokens = new LinkedList<RegexToken>();
 		RegexToken tokens[] = new RegexToken[tokenStream.size()];
 		tokens = tokenStream.toArray(tokens);
 		int numTokens = tokens.length;
@@ -20,21 +25,34 @@ public class DequantifierRule implements PreprocessorRule {
 			
 			if (tokens[i].getTokenType() == TokenType.REGEX_OPERATOR) {
 				RegexOperator operatorToken = (RegexOperator) tokens[i];
-				if (operatorToken.getIsQuantifiable()) {
+				if (operatorToken instanceof CountClosureOperator) {
+					CountClosureOperator countClosureOperator = (CountClosureOperator) operatorToken;
+					String operatorSequence = countClosureOperator.getOperator();
+					int low = countClosureOperator.getLow();
+					if (countClosureOperator.getBoundsType() == BoundsType.BOUNDED) {
+						resultTokens.add(new CountClosureOperator(operatorSequence, Quantifier.GREEDY, low, countClosureOperator.getHigh()));
+					} else {
+						resultTokens.add(new CountClosureOperator(operatorSequence, Quantifier.GREEDY, low, countClosureOperator.getBoundsType()));
+					}
+				} else if (operatorToken.getIsQuantifiable()) {
 					QuantifiableOperator quantifiableOperator = (QuantifiableOperator) operatorToken;
 					QuantifiableOperator replacementOperator = new QuantifiableOperator(quantifiableOperator.getOperator(), quantifiableOperator.getOperatorType());
-					regexBuilder.append(replacementOperator.getRepresentation());
+					resultTokens.add(replacementOperator);
 				} else {
-					regexBuilder.append(operatorToken.getRepresentation());
+					resultTokens.add(operatorToken);
 				}
+			} else if (tokens[i] instanceof GroupFactor) {
+				/* the quantifiers in groups are removed as well */
+				GroupFactor groupFactor = (GroupFactor) tokens[i];
+				resultTokens.add(new GroupFactor(process(groupFactor.getFactorContent()), groupFactor.getGroupType()));
 			} else {
-				regexBuilder.append(tokens[i].getRepresentation());
+				resultTokens.add(tokens[i]);
 				
 			}
 			i++;
 		}
 		
-		return regexBuilder.toString();
+		return resultTokens;
 	}
 
 	
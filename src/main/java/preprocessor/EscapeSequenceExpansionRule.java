@@ -1,7 +1,10 @@
 package preprocessor;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
+import preprocessor.ParsingPreprocessor.CharacterClassFactor;
 import preprocessor.ParsingPreprocessor.EscapeFactor;
 import preprocessor.ParsingPreprocessor.GroupFactor;
 import preprocessor.ParsingPreprocessor.GroupFactor.GroupType;
@@ -13,8 +16,8 @@ import preprocessor.ParsingPreprocessor.RegexToken.TokenType;
 public class EscapeSequenceExpansionRule implements PreprocessorRule {
 
 	@Override
-	public String process(List<RegexToken> tokenStream) {
-		StringBuilder regexBuilder = new StringBuilder();
+	public List<RegexToken> process(List<RegexToken> tokenStream) {
+		List<RegexToken> resultTokens = new LinkedList<RegexToken>();
 		RegexToken tokens[] = new RegexToken[tokenStream.size()];
 		tokens = tokenStream.toArray(tokens);
 		int numTokens = tokens.length;
@@ -26,48 +29,44 @@ public class EscapeSequenceExpansionRule implements PreprocessorRule {
 				RegexFactor<?> factorToken = (RegexFactor<?>) tokens[i];
 				if (factorToken.getFactorType() == FactorType.ESCAPED_CHARACTER) {
 					EscapeFactor escapeFactorToken = (EscapeFactor) factorToken;
-					regexBuilder.append("[" + escapeFactorToken.getRepresentation() + "]");
+					String characterClass = escapeFactorToken.getRepresentation();
+					if (characterClass.equals("\\")) {
+						/* a trailing backslash would escape the end of the character class */
+						throw new PatternSyntaxException("Unclosed character class", "[" + characterClass + "]", characterClass.length() + 1);
+					}
+					resultTokens.add(new CharacterClassFactor(characterClass));
 					
 					
 				} else if (factorToken.getFactorType() == FactorType.GROUP) {
 					GroupFactor groupFactorToken = (GroupFactor) factorToken;
 					GroupType type = groupFactorToken.getGroupType();
-					StringBuilder groupBuilder = new StringBuilder();
-					groupBuilder.append(process(groupFactorToken.factorContent));
+					List<RegexToken> groupTokens = process(groupFactorToken.factorContent);
 					switch (type) {
 					case NORMAL:
-						regexBuilder.append("(" + groupBuilder.toString() + ")");
-						break;
 					case NONCAPTURING:
-						regexBuilder.append("(" + groupBuilder.toString() + ")");
+						resultTokens.add(new GroupFactor(groupTokens, GroupType.NORMAL));
 						break;
 					case NEGLOOKAHEAD:
-						regexBuilder.append("(?!" + groupBuilder.toString() + ")");
-						break;
 					case NEGLOOKBEHIND:
-						regexBuilder.append("(?<!" + groupBuilder.toString() + ")");
-						break;
 					case POSLOOKAHEAD:
-						regexBuilder.append("(?=" + groupBuilder.toString() + ")");
-						break;
 					case POSLOOKBEHIND:
-						regexBuilder.append("(?<=" + groupBuilder.toString() + ")");
+						resultTokens.add(new GroupFactor(groupTokens, type));
 						break;
 					default:
 						throw new RuntimeException();
 					}
 					
 				} else {
-					regexBuilder.append(factorToken.getRepresentation());
+					resultTokens.add(factorToken);
 				}
 			} else {
-				regexBuilder.append(tokens[i].getRepresentation());
+				resultTokens.add(tokens[i]);
 				
 			}
 			i++;
 		}
 		
-		return regexBuilder.toString();
+		return resultTokens;
 	}
 
 }
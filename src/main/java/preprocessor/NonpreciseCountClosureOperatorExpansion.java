@@ -1,5 +1,8 @@
 package preprocessor;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import preprocessor.ParsingPreprocessor.CountClosureOperator;
 import preprocessor.ParsingPreprocessor.RegexOperator;
 import preprocessor.ParsingPreprocessor.RegexOperator.OperatorType;
@@ -11,83 +14,81 @@ public class NonpreciseCountClosureOperatorExpansion extends OperatorExpansionRu
 	private final int BOUND_DIFF_CUTOFF = Integer.MAX_VALUE;
 
 	@Override
-	protected void expandOperator(StringBuilder resultBuilder, RegexToken factor, RegexToken operator) {
+	protected void expandOperator(List<RegexToken> resultTokens, RegexToken factor, RegexToken operator) {
 		CountClosureOperator cco = (CountClosureOperator) operator;
 		int low = cco.getLow();
 		int high = cco.getHigh();
 		if (low > CONSTANT_CUTOFF) {
 			/* approximate with plus */
-			StringBuilder expansionBuilder = new StringBuilder("(");
-			expansionBuilder.append(factor.getRepresentation());
-			expansionBuilder.append(factor.getRepresentation() + "*");
-			expansionBuilder.append(")");
-			resultBuilder.append(expansionBuilder);
+			List<RegexToken> expansion = new LinkedList<RegexToken>();
+			expansion.add(factor);
+			expansion.add(factor);
+			expansion.add(star());
+			resultTokens.add(group(expansion));
 		} else if ((high - low) >= BOUND_DIFF_CUTOFF) {
 			/* factor out and approximate with star */
-			expandUnbounded(resultBuilder, factor, cco);
+			expandUnbounded(resultTokens, factor, cco);
 		} else {
 			switch (cco.getBoundsType()) {
 			case CONSTANT_REPETITION:
-				expandConstantRepitition(resultBuilder, factor, cco);
+				expandConstantRepitition(resultTokens, factor, cco);
 				break;
 			case BOUNDED:
-				expandBounded(resultBuilder, factor, cco);
+				expandBounded(resultTokens, factor, cco);
 				break;
 			case UNBOUNDED:
-				expandUnbounded(resultBuilder, factor, cco);
+				expandUnbounded(resultTokens, factor, cco);
 				break;
 			}
 		}
 		
 	}
 
-	private void expandBounded(StringBuilder resultBuilder, RegexToken factor, CountClosureOperator cco) {
+	private void expandBounded(List<RegexToken> resultTokens, RegexToken factor, CountClosureOperator cco) {
 		int low = cco.getLow();
 		int high = cco.getHigh();
-		StringBuilder expansionBuilder = new StringBuilder("(");
-		StringBuilder options = new StringBuilder();
+		List<RegexToken> expansion = new LinkedList<RegexToken>();
+		List<RegexToken> options = new LinkedList<RegexToken>();
+		List<RegexToken> alternatives = new LinkedList<RegexToken>();
 		for (int i = 0; i < low - 1; i++) {
-			expansionBuilder.append(factor.getRepresentation());
+			expansion.add(factor);
 		}
-		expansionBuilder.append("(");
 		for (int i = low; i <= high; i++) {
 			if (low == 0 && i == 0) {
-				expansionBuilder.append("\\l");
+				alternatives.add(emptyString());
 			} else {
-				options.append(factor.getRepresentation());
-				expansionBuilder.append(options);
+				options.add(factor);
+				alternatives.addAll(options);
 			}
 
 			if (i < high) {
-				expansionBuilder.append("|");
+				alternatives.add(or());
 			}
 
 		}
-		expansionBuilder.append(")");
+		expansion.add(group(alternatives));
 
-		expansionBuilder.append(")");
-		resultBuilder.append(expansionBuilder);
+		resultTokens.add(group(expansion));
 	}
 
-	private void expandUnbounded(StringBuilder resultBuilder, RegexToken factor, CountClosureOperator cco) {
+	private void expandUnbounded(List<RegexToken> resultTokens, RegexToken factor, CountClosureOperator cco) {
 		int low = cco.getLow();
-		StringBuilder expansionBuilder = new StringBuilder("(");
+		List<RegexToken> expansion = new LinkedList<RegexToken>();
 		for (int i = 0; i < low; i++) {
-			expansionBuilder.append(factor.getRepresentation());
+			expansion.add(factor);
 		}
-		expansionBuilder.append(factor.getRepresentation() + "*");
-		expansionBuilder.append(")");
-		resultBuilder.append(expansionBuilder);
+		expansion.add(factor);
+		expansion.add(star());
+		resultTokens.add(group(expansion));
 	}
 
-	private void expandConstantRepitition(StringBuilder resultBuilder, RegexToken factor, CountClosureOperator cco) {
+	private void expandConstantRepitition(List<RegexToken> resultTokens, RegexToken factor, CountClosureOperator cco) {
 		int low = cco.getLow();
-		StringBuilder expansionBuilder = new StringBuilder("(");
+		List<RegexToken> expansion = new LinkedList<RegexToken>();
 		for (int i = 0; i < low; i++) {
-			expansionBuilder.append(factor.getRepresentation());
+			expansion.add(factor);
 		}
-		expansionBuilder.append(")");
-		resultBuilder.append(expansionBuilder);
+		resultTokens.add(group(expansion));
 	}
 
 	@Override
@@ -1,5 +1,6 @@
 package preprocessor;
 
+import java.util.LinkedList;
 import java.util.List;
 
 import preprocessor.ParsingPreprocessor.GroupFactor;
@@ -12,8 +13,8 @@ import preprocessor.ParsingPreprocessor.RegexToken;
 public class NonpreciseLookaroundExpansion implements PreprocessorRule {
 
 	@Override
-	public String process(List<RegexToken> tokenStream) {
-		StringBuilder regexBuilder = new StringBuilder();
+	public List<RegexToken> process(List<RegexToken> tokenStream) {
+		List<RegexToken> resultTokens = new LinkedList<RegexToken>();
 		RegexToken tokens[] = new RegexToken[tokenStream.size()];
 		tokens = tokenStream.toArray(tokens);
 		int numTokens = tokens.length;
@@ -27,19 +28,19 @@ public class NonpreciseLookaroundExpansion implements PreprocessorRule {
 					GroupType groupType = groupFactor.getGroupType();
 
 					if (!(groupType == GroupType.POSLOOKAHEAD || groupType == GroupType.NEGLOOKAHEAD || groupType == GroupType.POSLOOKBEHIND || groupType == GroupType.NEGLOOKBEHIND)) {
-						regexBuilder.append(tokens[i].getRepresentation());
+						resultTokens.add(tokens[i]);
 					}
 
 				} else {
-					regexBuilder.append(tokens[i].getRepresentation());
+					resultTokens.add(tokens[i]);
 				}
 			} else {
-				regexBuilder.append(tokens[i].getRepresentation());
+				resultTokens.add(tokens[i]);
 			}
 			i++;
 		}
 
-		return regexBuilder.toString();
+		return resultTokens;
 	}
 
 }
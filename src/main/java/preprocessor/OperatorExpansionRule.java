@@ -1,8 +1,13 @@
 package preprocessor;
 
+import java.util.LinkedList;
 import java.util.List;
 
+import preprocessor.ParsingPreprocessor.EscapeFactor;
+import preprocessor.ParsingPreprocessor.EscapeFactor.EscapeType;
 import preprocessor.ParsingPreprocessor.GroupFactor;
+import preprocessor.ParsingPreprocessor.GroupFactor.GroupType;
+import preprocessor.ParsingPreprocessor.QuantifiableOperator;
 import preprocessor.ParsingPreprocessor.RegexFactor;
 import preprocessor.ParsingPreprocessor.RegexOperator;
 import preprocessor.ParsingPreprocessor.RegexOperator.OperatorType;
@@ -12,7 +17,7 @@ import preprocessor.ParsingPreprocessor.RegexToken.TokenType;
 
 public abstract class OperatorExpansionRule implements PreprocessorRule {
 	
-	protected abstract void expandOperator(StringBuilder resultBuilder, RegexToken factor, RegexToken operator);
+	protected abstract void expandOperator(List<RegexToken> resultTokens, RegexToken factor, RegexToken operator);
 	
 	protected abstract RegexOperator getOperator();
 	
@@ -20,8 +25,8 @@ public abstract class OperatorExpansionRule implements PreprocessorRule {
 	
 
 	@Override
-	public String process(List<RegexToken> tokenStream) {
-		StringBuilder regexBuilder = new StringBuilder();
+	public List<RegexToken> process(List<RegexToken> tokenStream) {
+		List<RegexToken> resultTokens = new LinkedList<RegexToken>();
 		RegexToken tokens[] = new RegexToken[tokenStream.size()];
 		tokens = tokenStream.toArray(tokens);
 		int numTokens = tokens.length;
@@ -33,8 +38,8 @@ public abstract class OperatorExpansionRule implements PreprocessorRule {
 				if (factorToken.getFactorType() == FactorType.GROUP) {
 					GroupFactor groupFactor = (GroupFactor) factorToken;
 					
-					String processedContent = process(groupFactor.factorContent);
-					GroupFactor processedGroup = new GroupFactor(processedContent, groupFactor.getGroupType(), groupFactor.getLevel());
+					List<RegexToken> processedContent = process(groupFactor.factorContent);
+					GroupFactor processedGroup = new GroupFactor(processedContent, groupFactor.getGroupType());
 					factorToken = processedGroup;
 					
 				}
@@ -44,27 +49,45 @@ public abstract class OperatorExpansionRule implements PreprocessorRule {
 						RegexOperator operatorToken = (RegexOperator) tokens[i];
 						i++;
 						if (operatorToken.getOperatorType() == getOperatorType()) {
-							expandOperator(regexBuilder, factorToken, operatorToken);
+							expandOperator(resultTokens, factorToken, operatorToken);
 							
 						} else {
-							regexBuilder.append(factorToken.getRepresentation());
-							regexBuilder.append(operatorToken.getRepresentation());
+							resultTokens.add(factorToken);
+							resultTokens.add(operatorToken);
 						}
 					} else {
-						regexBuilder.append(factorToken.getRepresentation());
+						resultTokens.add(factorToken);
 					}
 				} else {
-					regexBuilder.append(factorToken.getRepresentation());
+					resultTokens.add(factorToken);
 					i++;
 				}
 			} else {
-				regexBuilder.append(tokens[i].getRepresentation());
+				resultTokens.add(tokens[i]);
 				i++;
 			}
 
 		}
 		
-		return regexBuilder.toString();
+		return resultTokens;
+	}
+
+	/* The tokens of an empty string, which the regex compiler writes as \l */
+	protected static RegexToken emptyString() {
+		return new EscapeFactor("\\l", EscapeType.CHARACTER);
+	}
+
+	protected static RegexToken star() {
+		return new QuantifiableOperator("*", OperatorType.STAR);
+	}
+
+	protected static RegexToken or() {
+		return new RegexOperator("|", OperatorType.OR);
+	}
+
+	/* A group of the tokens, as the tokenizer reads parentheses in an expansion */
+	protected static RegexToken group(List<RegexToken> content) {
+		return new GroupFactor(content, GroupType.NORMAL);
 	}
 
 }
@@ -23,15 +23,35 @@ public abstract class ParsingPreprocessor implements Preprocessor {
 	
 	@Override
 	public String applyRules(String regex) {
+		/* The rules rewrite the tokens, so the regex is only tokenized once and only the final regex is built */
+		List<RegexToken> tokenStream = tokenize(regex, 0);
 		for (PreprocessorRule rule : rules) {
-			List<RegexToken> tokenStream = tokenize(regex, 0);
-			
-			regex = rule.process(tokenStream);
-			if (regex.length() > MAX_REGEX_LENGTH) {
+			tokenStream = rule.process(tokenStream);
+			if (representationLength(tokenStream) > MAX_REGEX_LENGTH) {
 				throw new RegexException("Regular expression length exceeded.");
 			}
 		}
-		return regex;
+		StringBuilder regexBuilder = new StringBuilder();
+		appendRepresentation(regexBuilder, tokenStream);
+		return regexBuilder.toString();
+	}
+
+	private static long representationLength(List<RegexToken> tokenStream) {
+		long length = 0;
+		for (RegexToken rt : tokenStream) {
+			length += rt.getRepresentationLength();
+		}
+		return length;
+	}
+
+	private static void appendRepresentation(StringBuilder regexBuilder, List<RegexToken> tokenStream) {
+		for (RegexToken rt : tokenStream) {
+			if (rt instanceof GroupFactor) {
+				((GroupFactor) rt).appendRepresentation(regexBuilder);
+			} else {
+				regexBuilder.append(rt.getRepresentation());
+			}
+		}
 	}
 
 	private static List<RegexToken> tokenize(String regex, int currentLevel) {
@@ -517,6 +537,9 @@ public abstract class ParsingPreprocessor implements Preprocessor {
 		
 		public String getRepresentation();
 
+		/* The rules copy tokens into their expansions, so this should not build the representation of a group */
+		public long getRepresentationLength();
+
 	}
 
 	static abstract class RegexFactor<FactorContentType> implements RegexToken {
@@ -539,6 +562,11 @@ public abstract class ParsingPreprocessor implements Preprocessor {
 			return TokenType.REGEX_FACTOR;
 		}
 
+		@Override
+		public long getRepresentationLength() {
+			return getRepresentation().length();
+		}
+
 		public abstract FactorType getFactorType();
 
 	}
@@ -583,6 +611,11 @@ public abstract class ParsingPreprocessor implements Preprocessor {
 		public String getRepresentation() {
 			return operatorSequence;
 		}
+
+		@Override
+		public long getRepresentationLength() {
+			return operatorSequence.length();
+		}
 		
 		@Override
 		public boolean equals(Object o) {
@@ -751,24 +784,15 @@ public abstract class ParsingPreprocessor implements Preprocessor {
 	}
 
 	static class GroupFactor extends RegexFactor<List<RegexToken>> {
-		
-		
-		private int level;
-		public int getLevel() {
-			return level;
-		}
+
+		/* the content of a group is not modified, so its length is only computed once */
+		private long representationLength = -1;
 
 		public GroupFactor(List<RegexToken> factorContent, GroupType groupType) {
 			super(factorContent);
 			this.groupType = groupType;
 		}
 
-		public GroupFactor(String processedContent, GroupType groupType, int level) {
-			super(ParsingPreprocessor.tokenize(processedContent, level + 1));
-			this.level = level;
-			this.groupType = groupType;
-		}
-
 		@Override
 		public FactorType getFactorType() {
 			return FactorType.GROUP;
@@ -811,12 +835,23 @@ public abstract class ParsingPreprocessor implements Preprocessor {
 
 		@Override
 		public String getRepresentation() {
-			String type = groupPrefix();
-			StringBuilder contentBuilder = new StringBuilder();
-			for (RegexToken rt : factorContent) {
-				contentBuilder.append(rt.getRepresentation());
+			StringBuilder groupBuilder = new StringBuilder();
+			appendRepresentation(groupBuilder);
+			return groupBuilder.toString();
+		}
+
+		private void appendRepresentation(StringBuilder regexBuilder) {
+			regexBuilder.append("(" + groupPrefix());
+			ParsingPreprocessor.appendRepresentation(regexBuilder, factorContent);
+			regexBuilder.append(")");
+		}
+
+		@Override
+		public long getRepresentationLength() {
+			if (representationLength < 0) {
+				representationLength = 2 + groupPrefix().length() + ParsingPreprocessor.representationLength(factorContent);
 			}
-			return "(" + type + contentBuilder.toString() + ")";
+			return representationLength;
 		}
 		
 		@Override
@@ -1,5 +1,7 @@
 package preprocessor;
 
+import java.util.List;
+
 import preprocessor.ParsingPreprocessor.QuantifiableOperator;
 import preprocessor.ParsingPreprocessor.RegexOperator;
 import preprocessor.ParsingPreprocessor.RegexToken;
@@ -8,8 +10,10 @@ import preprocessor.ParsingPreprocessor.RegexOperator.OperatorType;
 public class PlusOperatorExpansion extends OperatorExpansionRule {
 
 	@Override
-	protected void expandOperator(StringBuilder resultBuilder, RegexToken factor, RegexToken operator) {
-		resultBuilder.append(factor.getRepresentation() + factor.getRepresentation() + "*");
+	protected void expandOperator(List<RegexToken> resultTokens, RegexToken factor, RegexToken operator) {
+		resultTokens.add(factor);
+		resultTokens.add(factor);
+		resultTokens.add(star());
 	}
 
 	@Override
@@ -4,7 +4,8 @@ import java.util.List;
 
 public interface PreprocessorRule {
 	
-	public String process(List<ParsingPreprocessor.RegexToken> tokenStream);
+	/* Returns the rewritten tokens, without modifying the tokens passed to it */
+	public List<ParsingPreprocessor.RegexToken> process(List<ParsingPreprocessor.RegexToken> tokenStream);
 	
 	
 }
@@ -1,13 +1,20 @@
 package preprocessor;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import preprocessor.ParsingPreprocessor.RegexOperator.OperatorType;
 import preprocessor.ParsingPreprocessor.*;
 
 public class QuestionMarkOperatorExpansion extends OperatorExpansionRule {
 
 	@Override
-	protected void expandOperator(StringBuilder resultBuilder, RegexToken factor, RegexToken operator) {
-		resultBuilder.append("("  + "\\l|" + factor.getRepresentation() + ")");
+	protected void expandOperator(List<RegexToken> resultTokens, RegexToken factor, RegexToken operator) {
+		List<RegexToken> alternatives = new LinkedList<RegexToken>();
+		alternatives.add(emptyString());
+		alternatives.add(or());
+		alternatives.add(factor);
+		resultTokens.add(group(alternatives));
 	}
 
 	@Override
@@ -1,7 +1,9 @@
 package preprocessor;
 
+import java.util.LinkedList;
 import java.util.List;
 
+import preprocessor.ParsingPreprocessor.CharacterClassFactor;
 import preprocessor.ParsingPreprocessor.GroupFactor;
 import preprocessor.ParsingPreprocessor.GroupFactor.GroupType;
 import preprocessor.ParsingPreprocessor.RegexFactor;
@@ -16,8 +18,8 @@ public class WildCardExpansionRule implements PreprocessorRule {
 	private final boolean MATCH_NEWLINE = true;
 
 	@Override
-	public String process(List<RegexToken> tokenStream) {
-		StringBuilder regexBuilder = new StringBuilder();
+	public List<RegexToken> process(List<RegexToken> tokenStream) {
+		List<RegexToken> resultTokens = new LinkedList<RegexToken>();
 		RegexToken tokens[] = new RegexToken[tokenStream.size()];
 		tokens = tokenStream.toArray(tokens);
 		int numTokens = tokens.length;
@@ -37,44 +39,35 @@ public class WildCardExpansionRule implements PreprocessorRule {
 					} else {
 						expandTo = (String.format("\\x%02x", low)) + "-" + (String.format("\\x%02x", nl - 1)) + (String.format("\\x%02x", nl + 1)) + "-" + (String.format("\\x{%02x}", high));
 					}
-					regexBuilder.append("[" + expandTo + "]");
+					resultTokens.add(new CharacterClassFactor(expandTo));
 					
 					
 				} else if (factorToken.getFactorType() == FactorType.GROUP) {
 					GroupFactor groupFactorToken = (GroupFactor) factorToken;
 					GroupType type = groupFactorToken.getGroupType();
-					StringBuilder groupBuilder = new StringBuilder();
-					groupBuilder.append(process(groupFactorToken.factorContent));
+					List<RegexToken> groupTokens = process(groupFactorToken.factorContent);
 					switch (type) {
 					case NORMAL:
-						regexBuilder.append("(" + groupBuilder.toString() + ")");
-						break;
 					case NEGLOOKAHEAD:
-						regexBuilder.append("(?!" + groupBuilder.toString() + ")");
-						break;
 					case NEGLOOKBEHIND:
-						regexBuilder.append("(?<!" + groupBuilder.toString() + ")");
-						break;
 					case POSLOOKAHEAD:
-						regexBuilder.append("(?=" + groupBuilder.toString() + ")");
-						break;
 					case POSLOOKBEHIND:
-						regexBuilder.append("(?<=" + groupBuilder.toString() + ")");
+						resultTokens.add(new GroupFactor(groupTokens, type));
 						break;
 					default:
 						throw new RuntimeException();
 					}
 				} else {
-					regexBuilder.append(factorToken.getRepresentation());
+					resultTokens.add(factorToken);
 				}
 			} else {
-				regexBuilder.append(tokens[i].getRepresentation());
+				resultTokens.add(tokens[i]);
 				
 			}
 			i++;
 		}
 		
-		return regexBuilder.toString();
+		return resultTokens;
 	}
 
 }
@@ -61,6 +61,11 @@ public class MyPattern {
 	
 
 	private static final int MAX_REPETITION = Integer.MAX_VALUE;
+	
+	public enum MatcherType {
+		BACKTRACKING, /* depth first search over the transitions, can take exponential time */
+		SIMULATION /* simulates the NFA on a set of states, takes linear time in the input length */
+	}
 
 	private MyPattern(NFAGraph nfaGraph) {
 		this.nfaGraph = nfaGraph;
@@ -72,10 +77,21 @@ public class MyPattern {
 	}
 
 	public MyMatcher matcher(String inputString) {
+		return matcher(inputString, MatcherType.BACKTRACKING);
+	}
+	
+	public MyMatcher matcher(String inputString, MatcherType matcherType) {
 		if (nfaGraph == null) {
 			throw new IllegalStateException("Pattern has not yet been compiled!");
 		}
-		return new RegexNFAMatcher(nfaGraph, inputString);
+		switch (matcherType) {
+		case BACKTRACKING:
+			return new RegexNFAMatcher(nfaGraph, inputString);
+		case SIMULATION:
+			return new RegexNFASimulationMatcher(nfaGraph, inputString);
+		default:
+			throw new RuntimeException("Unknown matcher type: " + matcherType);
+		}
 	}
 	
 	public static NFAGraph toNFAGraph(String pattern, NFAConstruction construction) {
@@ -747,4 +763,10 @@ public class MyPattern {
 			super(nfaGraph, inputString);
 		}
 	}
+	
+	static class RegexNFASimulationMatcher extends NFASimulationMatcher {
+		private RegexNFASimulationMatcher(NFAGraph nfaGraph, String inputString) {
+			super(nfaGraph, inputString);
+		}
+	}
 }
@@ -226,6 +226,27 @@ public abstract class ParseTreeToNFAConverter implements NFACreator {
 		return v;
 	}
 
+	/**
+	 * Derives the same vertex as deriveVertex(m, v), but does not test the names
+	 * below the first free index of a prefix again. This is only correct if m does
+	 * not lose vertices and the derived vertex is added to m before the next call.
+	 */
+	protected NFAVertexND deriveVertex(NFAGraph m, NFAVertexND v, HashMap<String, Integer> firstFreeIndices) {
+		if (!m.containsVertex(v)) {
+			return v;
+		}
+		String newName = "" + v.getStateNumberByDimension(1).charAt(0);
+		Integer firstFreeIndex = firstFreeIndices.get(newName);
+		int i = firstFreeIndex != null ? firstFreeIndex : 0;
+		v = new NFAVertexND(newName + i);
+		while (m.containsVertex(v)) {
+			i++;
+			v = new NFAVertexND(newName + i);
+		}
+		firstFreeIndices.put(newName, i + 1);
+		return v;
+	}
+
 	private NFAGraph createWildCardStarNFA(int index) {
 		NFAGraph wildCardStar = createBaseCaseSymbol(".");
 		return starNFA(wildCardStar, new RegexQuantifiableOperator.RegexStarOperator(QuantifierType.GREEDY, index));
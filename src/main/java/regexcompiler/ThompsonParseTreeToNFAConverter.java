@@ -379,13 +379,15 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		}		 
 		
 		NFAGraph resultNFA = new NFAGraph();
+		/* Every repetition copies the vertices of m, so the names already used are not tested again */
+		HashMap<String, Integer> firstFreeIndices = new HashMap<String, Integer>();
 		/* Add the new initial vertex */
-		NFAVertexND newInitialVertex = deriveVertex(resultNFA, new NFAVertexND("q0"));
+		NFAVertexND newInitialVertex = deriveVertex(resultNFA, new NFAVertexND("q0"), firstFreeIndices);
 		resultNFA.addVertex(newInitialVertex);
 		resultNFA.setInitialState(newInitialVertex);
 		
 		/* Add the new accept vertex */
-		NFAVertexND newAcceptVertex = deriveVertex(resultNFA, new NFAVertexND("q" + resultNFA.vertexSet().size()));
+		NFAVertexND newAcceptVertex = deriveVertex(resultNFA, new NFAVertexND("q" + resultNFA.vertexSet().size()), firstFreeIndices);
 		resultNFA.addVertex(newAcceptVertex);
 		resultNFA.addAcceptingState(newAcceptVertex);
 		if (cmin == 0) {
@@ -412,7 +414,7 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 			NFAVertexND repetitionAcceptVertex = null;
 			HashMap<NFAVertexND, NFAVertexND> stateMap = new HashMap<NFAVertexND, NFAVertexND>();
 			for (NFAVertexND originalVertex : m.vertexSet()) {
-				NFAVertexND newVertex = deriveVertex(resultNFA, originalVertex);
+				NFAVertexND newVertex = deriveVertex(resultNFA, originalVertex, firstFreeIndices);
 				stateMap.put(originalVertex, newVertex);
 				resultNFA.addVertex(newVertex);
 				if (m.getInitialState().equals(originalVertex)) {
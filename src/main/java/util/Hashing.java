@@ -0,0 +1,22 @@
+package util;
+
+public final class Hashing {
+
+	/**
+	 * The finalisation step of MurmurHash3, so that every bit of the hash
+	 * depends on every bit of h. Packed keys and sums of hashes that differ
+	 * only in a few bits then still spread over the low bits used for slots.
+	 */
+	public static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/* Do not instantiate */
+	private Hashing() {
+	}
+}
@@ -18,8 +18,62 @@ public class InterfaceSettings {
 		return isVerbose;
 	}
 
+	private final int numThreads;
+	public int getNumThreads() {
+		return numThreads;
+	}
+
 	public InterfaceSettings(InputType inputType, boolean isVerbose) {
+		this(inputType, isVerbose, 1);
+	}
+
+	/* The number of results kept in the cache shared between analysers, 0 if there is no cache */
+	private final int cacheSize;
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	public InterfaceSettings(InputType inputType, boolean isVerbose, int numThreads) {
+		this(inputType, isVerbose, numThreads, 0);
+	}
+
+	/* The directory in which results are kept between runs, null if they are not kept */
+	private final String resultStoreDirectory;
+	public String getResultStoreDirectory() {
+		return resultStoreDirectory;
+	}
+
+	public InterfaceSettings(InputType inputType, boolean isVerbose, int numThreads, int cacheSize) {
+		this(inputType, isVerbose, numThreads, cacheSize, null);
+	}
+
+	public InterfaceSettings(InputType inputType, boolean isVerbose, int numThreads, int cacheSize, String resultStoreDirectory) {
+		this(inputType, isVerbose, numThreads, cacheSize, resultStoreDirectory, null);
+	}
+
+	/* The file the metrics of each regex are written to as JSON lines, null if they are not written */
+	private final String metricsOutFile;
+	public String getMetricsOutFile() {
+		return metricsOutFile;
+	}
+
+	public InterfaceSettings(InputType inputType, boolean isVerbose, int numThreads, int cacheSize, String resultStoreDirectory, String metricsOutFile) {
+		this(inputType, isVerbose, numThreads, cacheSize, resultStoreDirectory, metricsOutFile, 0);
+	}
+
+	/* The number of worker processes the regexes are analysed in, 0 if they are analysed in this process */
+	private final int numWorkers;
+	public int getNumWorkers() {
+		return numWorkers;
+	}
+
+	public InterfaceSettings(InputType inputType, boolean isVerbose, int numThreads, int cacheSize, String resultStoreDirectory, String metricsOutFile, int numWorkers) {
 		this.inputType = inputType;
 		this.isVerbose = isVerbose;
+		this.numThreads = numThreads;
+		this.cacheSize = cacheSize;
+		this.resultStoreDirectory = resultStoreDirectory;
+		this.metricsOutFile = metricsOutFile;
+		this.numWorkers = numWorkers;
 	}
 }
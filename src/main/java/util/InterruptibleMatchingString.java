@@ -1,14 +1,35 @@
 package util;
 
 public final class InterruptibleMatchingString implements CharSequence {
+
+		/* The deadline of a string that is only stopped by interrupting the thread */
+		public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+		/* The clock is only read on every so many characters, since the matcher reads them one at a time */
+		private static final int READS_PER_CLOCK_CHECK = 1024;
+
 		private final CharSequence string;
 
+		/* In the time of System.nanoTime() */
+		private final long deadline;
+		private int readsUntilClockCheck = READS_PER_CLOCK_CHECK;
+
 		public InterruptibleMatchingString(CharSequence string) {
+			this(string, NO_DEADLINE);
+		}
+
+		/**
+		 * @param deadline
+		 *            The System.nanoTime() after which matching against the
+		 *            string stops, as if the thread was interrupted.
+		 */
+		public InterruptibleMatchingString(CharSequence string, long deadline) {
 			this.string = string;
+			this.deadline = deadline;
 		}
 
 		public char charAt(int index) {
-			if (Thread.interrupted()) {
+			if (Thread.interrupted() || isPastDeadline()) {
 				throw new RuntimeException(new InterruptedException());
 			}
 			return string.charAt(index);
@@ -19,9 +40,17 @@ public final class InterruptibleMatchingString implements CharSequence {
 		}
 
 		public CharSequence subSequence(int start, int end) {
-			if (Thread.interrupted()) {
+			if (Thread.interrupted() || isPastDeadline()) {
 				throw new RuntimeException(new InterruptedException());
 			}
-			return new InterruptibleMatchingString(string.subSequence(start, end));
+			return new InterruptibleMatchingString(string.subSequence(start, end), deadline);
+		}
+
+		private boolean isPastDeadline() {
+			if (deadline == NO_DEADLINE || --readsUntilClockCheck > 0) {
+				return false;
+			}
+			readsUntilClockCheck = READS_PER_CLOCK_CHECK;
+			return System.nanoTime() - deadline > 0;
 		}
 }
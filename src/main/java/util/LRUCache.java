@@ -0,0 +1,79 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded map that evicts the least recently used entry once it is
+ * full. All operations are synchronized, so one instance can be shared by
+ * several threads. The number of hits and misses of lookups is counted.
+ */
+public class LRUCache<K, V> {
+
+	private final int capacity;
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private final LinkedHashMap<K, V> entries;
+
+	private long numHits;
+	private long numMisses;
+
+	public LRUCache(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity should be at least 1: " + capacity);
+		}
+		this.capacity = capacity;
+		/* access order, so that the eldest entry is the least recently used one */
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return The value associated with the key, or null if there is none.
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if (value == null) {
+			numMisses++;
+		} else {
+			numHits++;
+		}
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getNumHits() {
+		return numHits;
+	}
+
+	public synchronized long getNumMisses() {
+		return numMisses;
+	}
+
+	/**
+	 * @return The fraction of lookups that were hits, or 0 if there were no lookups.
+	 */
+	public synchronized double getHitRate() {
+		long numLookups = numHits + numMisses;
+		if (numLookups == 0) {
+			return 0.0;
+		}
+		return (double) numHits / numLookups;
+	}
+
+}
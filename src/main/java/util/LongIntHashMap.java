@@ -0,0 +1,111 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive longs to primitive ints using open addressing with
+ * linear probing, so that no key or entry objects are allocated.
+ * The key Long.MIN_VALUE is reserved to mark empty slots.
+ */
+public class LongIntHashMap {
+
+	public static final int NOT_FOUND = -1;
+
+	private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/* the table is grown when it is more than half full */
+	private static final int MAX_LOAD_DIVISOR = 2;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	public LongIntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < expectedSize * MAX_LOAD_DIVISOR) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY_KEY);
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The value associated with the key, or NOT_FOUND if there is none.
+	 */
+	public int get(long key) {
+		int slot = slotOf(key);
+		while (keys[slot] != EMPTY_KEY) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NOT_FOUND;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != NOT_FOUND;
+	}
+
+	/**
+	 * Associates the value with the key, replacing any previous value.
+	 */
+	public void put(long key, int value) {
+		if (key == EMPTY_KEY) {
+			throw new IllegalArgumentException("Reserved key: " + key);
+		}
+		int slot = slotOf(key);
+		while (keys[slot] != EMPTY_KEY) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		if (size * MAX_LOAD_DIVISOR > keys.length) {
+			rehash();
+		}
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length << 1);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY_KEY) {
+				int slot = slotOf(oldKeys[i]);
+				while (keys[slot] != EMPTY_KEY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private int slotOf(long key) {
+		/* packed keys differing only in their high bits are spread out */
+		return (int) Hashing.mix(key) & mask;
+	}
+
+}
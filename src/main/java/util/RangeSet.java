@@ -4,121 +4,245 @@ import java.util.*;
 
 import util.RangeSet.Range;
 
+/**
+ * A set of integers stored as sorted, disjoint, non-adjacent ranges. The
+ * ranges are kept in one array of bounds, {low0, high0, low1, high1, ...},
+ * with each low inclusive and each high exclusive. A bounds array is never
+ * modified once it is created, so copies of a range set share it, and the
+ * operations build their results with a single linear merge.
+ */
 public class RangeSet implements Iterable<Range> {
-	
+
+	private static final int[] NO_BOUNDS = new int[0];
+
 	private final int rangesLowerBound; /* inclusive */
 	private final int rangesUpperBound; /* exclusive */
-	
-	private TreeSet<Range> ranges;
-	
+
+	private int[] bounds;
+
 	public RangeSet(int rangesLowerBound, int rangesUpperBound) {
 		this.rangesLowerBound = rangesLowerBound;
 		this.rangesUpperBound = rangesUpperBound;
-		
-		ranges = new TreeSet<Range>();
+
+		bounds = NO_BOUNDS;
 	}
-	
+
 	public RangeSet(RangeSet rs) {
 		rangesLowerBound = rs.rangesLowerBound;
 		rangesUpperBound = rs.rangesUpperBound;
-		ranges = new TreeSet<Range>(rs.ranges);
+		/* bounds arrays are never modified, so they can be shared */
+		bounds = rs.bounds;
 	}
-	
+
+	private RangeSet(int rangesLowerBound, int rangesUpperBound, int[] bounds) {
+		this.rangesLowerBound = rangesLowerBound;
+		this.rangesUpperBound = rangesUpperBound;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * @param bounds Sorted, disjoint and non-adjacent bounds {low0, high0, low1, high1, ...}, which must not be modified afterwards.
+	 * @return A range set of the bounds, without copying them.
+	 */
+	public static RangeSet ofBounds(int rangesLowerBound, int rangesUpperBound, int[] bounds) {
+		return new RangeSet(rangesLowerBound, rangesUpperBound, bounds);
+	}
+
 	public Range createRange(int num) {
 		return new Range(num);
 	}
-	
+
 	public Range createRange(int low, int high) {
 		return new Range(low, high);
 	}
-	
+
 	public void union(RangeSet rs) {
-		ranges.addAll(rs.ranges);	
-		mergeRanges();
+		bounds = unionBounds(bounds, rs.bounds);
 	}
-	
+
 	public void union(Range r) {
-		ranges.add(r);
-		mergeRanges();	
+		bounds = unionBounds(bounds, new int[] {r.low, r.high});
 	}
-	
+
 	public void union(List<Range> rangesToAdd) {
-		ranges.addAll(rangesToAdd);	
-		mergeRanges();		
+		if (rangesToAdd.isEmpty()) {
+			return;
+		}
+		Range[] sortedRanges = rangesToAdd.toArray(new Range[rangesToAdd.size()]);
+		Arrays.sort(sortedRanges);
+		int[] newBounds = new int[2 * sortedRanges.length];
+		int size = 0;
+		for (Range r : sortedRanges) {
+			if (size > 0 && r.low <= newBounds[size - 1]) {
+				/* overlapping or adjacent to the previous range */
+				newBounds[size - 1] = Math.max(newBounds[size - 1], r.high);
+			} else {
+				newBounds[size++] = r.low;
+				newBounds[size++] = r.high;
+			}
+		}
+		bounds = unionBounds(bounds, Arrays.copyOf(newBounds, size));
 	}
-	
+
 	public void intersection(RangeSet rs) {
-		complement();
-		rs.complement();	
-		union(rs);
-		complement();
+		bounds = intersectionBounds(bounds, rs.bounds);
 	}
-	
+
 	public void complement() {
-		if (ranges.isEmpty()) {
-			union(new Range(rangesLowerBound, rangesUpperBound));
-			return;
+		bounds = complementBounds(bounds, rangesLowerBound, rangesUpperBound);
+	}
+
+	/**
+	 * @return A new range set containing the values in both range sets.
+	 */
+	public static RangeSet intersectionOf(RangeSet rs1, RangeSet rs2) {
+		return new RangeSet(rs1.rangesLowerBound, rs1.rangesUpperBound, intersectionBounds(rs1.bounds, rs2.bounds));
+	}
+
+	/**
+	 * @return A new range set containing the values in either range set.
+	 */
+	public static RangeSet unionOf(RangeSet rs1, RangeSet rs2) {
+		return new RangeSet(rs1.rangesLowerBound, rs1.rangesUpperBound, unionBounds(rs1.bounds, rs2.bounds));
+	}
+
+	/**
+	 * @return A new range set containing the values within the bounds that are not in the range set.
+	 */
+	public static RangeSet complementOf(RangeSet rs) {
+		return new RangeSet(rs.rangesLowerBound, rs.rangesUpperBound, complementBounds(rs.bounds, rs.rangesLowerBound, rs.rangesUpperBound));
+	}
+
+	/**
+	 * @return Whether the range sets have a value in common, without building their intersection.
+	 */
+	public boolean overlaps(RangeSet rs) {
+		int[] b1 = bounds;
+		int[] b2 = rs.bounds;
+		int i = 0;
+		int j = 0;
+		while (i < b1.length && j < b2.length) {
+			if (b1[i] < b2[j + 1] && b2[j] < b1[i + 1]) {
+				return true;
+			}
+			/* skip the range that ends first, it cannot overlap anything further on */
+			if (b1[i + 1] < b2[j + 1]) {
+				i += 2;
+			} else {
+				j += 2;
+			}
 		}
-		TreeSet<Range> rangesComplement = new TreeSet<Range>();
-		Iterator<Range> i0 = ranges.iterator();
-		Range currentRange = i0.next();
-		if (currentRange.low != rangesLowerBound) {
-			rangesComplement.add(new Range(rangesLowerBound, currentRange.low));
+		return false;
+	}
+
+	private static int[] unionBounds(int[] b1, int[] b2) {
+		if (b2.length == 0) {
+			return b1;
 		}
-		
-		while (i0.hasNext()) {
-			int newLow = currentRange.high;
-			currentRange = i0.next();
-			int newHigh = currentRange.low;
-			Range newRange = new Range(newLow, newHigh);
-			rangesComplement.add(newRange);
+		if (b1.length == 0) {
+			return b2;
 		}
-		
-		if (currentRange.high != rangesUpperBound) {
-			rangesComplement.add(new Range(currentRange.high, rangesUpperBound));
+		int[] result = new int[b1.length + b2.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < b1.length || j < b2.length) {
+			int low;
+			int high;
+			/* take the range that starts first */
+			if (j >= b2.length || (i < b1.length && b1[i] <= b2[j])) {
+				low = b1[i];
+				high = b1[i + 1];
+				i += 2;
+			} else {
+				low = b2[j];
+				high = b2[j + 1];
+				j += 2;
+			}
+			if (size > 0 && low <= result[size - 1]) {
+				/* overlapping or adjacent ranges are merged */
+				if (high > result[size - 1]) {
+					result[size - 1] = high;
+				}
+			} else {
+				result[size++] = low;
+				result[size++] = high;
+			}
 		}
-		ranges = rangesComplement;
+		return size == result.length ? result : Arrays.copyOf(result, size);
 	}
-	
-	public Set<Integer> discretize() {
-		Set<Integer> values = new HashSet<Integer>();
-		for (Range r : ranges) {
-			for (int i = r.low; i < r.high; i++) {
-				values.add(i);
+
+	private static int[] intersectionBounds(int[] b1, int[] b2) {
+		if (b1.length == 0 || b2.length == 0) {
+			return NO_BOUNDS;
+		}
+		int[] result = new int[b1.length + b2.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < b1.length && j < b2.length) {
+			int low = Math.max(b1[i], b2[j]);
+			int high = Math.min(b1[i + 1], b2[j + 1]);
+			if (low < high) {
+				result[size++] = low;
+				result[size++] = high;
+			}
+			if (b1[i + 1] < b2[j + 1]) {
+				i += 2;
+			} else {
+				j += 2;
 			}
 		}
-		
-		return values;
+		if (size == 0) {
+			return NO_BOUNDS;
+		}
+		return Arrays.copyOf(result, size);
 	}
-	
-	private void mergeRanges() {
-		List<Range> l = new LinkedList<Range>(ranges);
-		for (int i = 0; i < l.size() - 1; ) {
-			Range r1 = l.get(i);
-			Range r2 = l.get(i + 1);
-			if (r1.overlapsAdjacent(r2)) {
-				l.set(i, r1.merge(r2));
-				l.remove(i + 1);
-			} else {
-				i++;
+
+	private static int[] complementBounds(int[] b, int lowerBound, int upperBound) {
+		int[] result = new int[b.length + 2];
+		int size = 0;
+		int previousHigh = lowerBound;
+		for (int i = 0; i < b.length; i += 2) {
+			if (previousHigh < b[i]) {
+				result[size++] = previousHigh;
+				result[size++] = b[i];
 			}
+			previousHigh = b[i + 1];
 		}
-		ranges = new TreeSet<Range>(l);
+		if (previousHigh < upperBound) {
+			result[size++] = previousHigh;
+			result[size++] = upperBound;
+		}
+		if (size == 0) {
+			return NO_BOUNDS;
+		}
+		return Arrays.copyOf(result, size);
 	}
-	
+
+	public Set<Integer> discretize() {
+		Set<Integer> values = new HashSet<Integer>();
+		for (int i = 0; i < bounds.length; i += 2) {
+			for (int value = bounds[i]; value < bounds[i + 1]; value++) {
+				values.add(value);
+			}
+		}
+
+		return values;
+	}
+
 	public int sampleRangeSet() {
-		if (ranges.isEmpty()) {
+		if (bounds.length == 0) {
 			throw new IllegalStateException("Cannot sample from empty range set.");
 		}
-		Range first = ranges.iterator().next();
-		return first.low;
-		
+		return bounds[0];
+
 	}
-	
+
 	public boolean isEmpty() {
-		return ranges.isEmpty();
+		return bounds.length == 0;
 	}
-	
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == null) {
@@ -130,65 +254,45 @@ public class RangeSet implements Iterable<Range> {
 	    if (!(o instanceof RangeSet)) {
 	    	return false;
 	    }
-	    
+
 	    RangeSet rs = (RangeSet) o;
 	    /* TODO are two Range sets with different bounds, but equal ranges, equal?*/
-	    if (ranges.size() != rs.ranges.size()) {
-	    	return false;
-	    }
-	    
-	    Iterator<Range> i0 = ranges.iterator();
-	    Iterator<Range> i1 = rs.ranges.iterator();
-	    while (i0.hasNext()) {
-	    	Range r0 = i0.next();
-	    	Range r1 = i1.next();
-	    	if (!r0.equals(r1)) {
-	    		return false;
-	    	}
-	    }
-	    return true;
+	    return Arrays.equals(bounds, rs.bounds);
 	}
-	
+
 	@Override
 	public int hashCode() {
-		return 17 * rangesLowerBound + 33 * rangesUpperBound + ranges.hashCode();
+		/* the sum of the hash codes of the ranges, as for the set of ranges this class used to keep */
+		int rangesHashCode = 0;
+		for (int i = 0; i < bounds.length; i += 2) {
+			rangesHashCode += 5 * bounds[i] + 7 * bounds[i + 1];
+		}
+		return 17 * rangesLowerBound + 33 * rangesUpperBound + rangesHashCode;
 	}
-	
+
 	public boolean contains(int num) {
-		Range numRange = new Range(num);
-		for (Range r : ranges) {
-			if (r.overlaps(numRange)) {
+		/* the lows are at the even positions of the sorted bounds */
+		int low = 0;
+		int high = bounds.length / 2 - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (num < bounds[2 * middle]) {
+				high = middle - 1;
+			} else if (num >= bounds[2 * middle + 1]) {
+				low = middle + 1;
+			} else {
 				return true;
 			}
 		}
 		return false;
 	}
-	
-	/*
-	@Override
-	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		int previous = rangesLowerBound;
-		for (Range r : ranges) {
-			for (int i = previous; i < r.low; i++) {
-				sb.append(i + ",");
-			}
-			sb.append(r + ",");
-			previous = r.high;
-		}
-		for (int i = previous; i < rangesUpperBound; i++) {
-			sb.append(i + ",");
-		}
-		return sb.toString();
-	}
-	*/
-	
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for (Range r : ranges) {
-			sb.append("[" + r.low + "," + r.high + ") ");
-			
+		for (int i = 0; i < bounds.length; i += 2) {
+			sb.append("[" + bounds[i] + "," + bounds[i + 1] + ") ");
+
 		}
 		return sb.toString();
 	}
@@ -196,7 +300,7 @@ public class RangeSet implements Iterable<Range> {
 	public class Range implements Comparable<Range> {
 		public final int low; /* inclusive */
 		public final int high; /* exclusive */
-		
+
 		public Range(int low, int high) {
 			if (low < rangesLowerBound || high > rangesUpperBound + 1) {
 				throw new IllegalArgumentException("Range exceeds bounds.");
@@ -215,68 +319,26 @@ public class RangeSet implements Iterable<Range> {
 			this.low = num;
 			this.high = num + 1;
 		}
-		
+
 		public boolean overlaps(Range r) {
 			return low < r.high && r.low < high;
 		}
-		
+
 		public boolean overlapsAdjacent(Range r) {
 			return low <= r.high && r.low <= high;
 		}
-		
-		
-		
+
+
+
 		public Range merge(Range r) {
-			int newLow = 0;
-			int newHigh = 0;
 			if (!overlapsAdjacent(r)) {
 				throw new RuntimeException("Cannot merge non-overlapping ranges");
 			}
-			
-			if (low <= r.low) {
-				newLow = low;
-			} else {
-				newLow = r.low;
-			}
-			
-			if (high >= r.high) {
-				newHigh = high;
-			} else {
-				newHigh = r.high;
-			}
-			
-			return new Range(newLow, newHigh);
+			return new Range(Math.min(low, r.low), Math.max(high, r.high));
 		}
-		
+
 		public RangeSet complement() {
-			if (low == rangesLowerBound && high == rangesUpperBound + 1) {
-				/* empty range set */
-				return new RangeSet(rangesLowerBound, rangesUpperBound);
-			}
-			if (low == rangesLowerBound) {
-				/* only one range */
-				Range rComplement = new Range(high, rangesUpperBound + 1);
-				RangeSet rs = new RangeSet(rangesLowerBound, rangesUpperBound);
-				rs.union(rComplement);
-				return rs;
-			}
-			if (high == rangesUpperBound + 1) {
-				/* only one range */
-				Range rComplement = new Range(rangesLowerBound, low);
-				RangeSet rs = new RangeSet(rangesLowerBound, rangesUpperBound);
-				rs.union(rComplement);
-				return rs;
-			}
-			
-			Range r1 = new Range(rangesLowerBound, low);
-			Range r2 = new Range(high, rangesUpperBound + 1);
-			/* TODO there might be a better way to do this... */
-			RangeSet comp1 = new RangeSet(rangesLowerBound, rangesUpperBound);
-			comp1.union(r1);
-			RangeSet comp2 = new RangeSet(rangesLowerBound, rangesUpperBound);
-			comp2.union(r2);
-			comp1.union(comp2);
-			return comp1;
+			return new RangeSet(rangesLowerBound, rangesUpperBound, complementBounds(new int[] {low, high}, rangesLowerBound, rangesUpperBound + 1));
 		}
 
 		@Override
@@ -286,12 +348,12 @@ public class RangeSet implements Iterable<Range> {
 			}
 			return high - r.high;
 		}
-		
+
 		@Override
 		public String toString() {
 			return "[" + low + ", " + (high - 1) + "]";
 		}
-		
+
 		@Override
 		public boolean equals(Object o) {
 			if (o == null) {
@@ -303,18 +365,18 @@ public class RangeSet implements Iterable<Range> {
 		    if (!(o instanceof Range)) {
 		    	return false;
 		    }
-		    
+
 		    Range r = (Range) o;
 		    return low == r.low && high == r.high;
 		}
-		
+
 		@Override
 		public int hashCode() {
 			return 5 * low + 7 * high;
 		}
 	}
 
-	
+
 	public static void main(String [] args) {
 		RangeSet rs1 =  new RangeSet(0, 256);
 		Range r11 = rs1.createRange(0, 10);
@@ -323,7 +385,7 @@ public class RangeSet implements Iterable<Range> {
 		rs1.union(r12);
 		Range r13 = rs1.createRange(40, 50);
 		rs1.union(r13);
-		
+
 		RangeSet rs2 =  new RangeSet(0, 256);
 		Range r21 = rs2.createRange(10, 20);
 		rs2.union(r21);
@@ -331,14 +393,14 @@ public class RangeSet implements Iterable<Range> {
 		rs1.union(r22);
 		Range r23 = rs2.createRange(50, 60);
 		rs2.union(r23);
-		
+
 		//rs1.union(rs2);
-		
+
 		System.out.println(rs1);
 		System.out.println(rs2);
 		rs1.intersection(rs2);
 		System.out.println(rs1);
-		
+
 		RangeSet rs3 =  new RangeSet(0, 256);
 		Range r31 = rs3.createRange(0, 256);
 		rs3.union(r31);
@@ -351,7 +413,25 @@ public class RangeSet implements Iterable<Range> {
 
 	@Override
 	public Iterator<Range> iterator() {
-		return ranges.iterator();
+		final int[] iteratedBounds = bounds;
+		return new Iterator<Range>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < iteratedBounds.length;
+			}
+
+			@Override
+			public Range next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Range r = new Range(iteratedBounds[next], iteratedBounds[next + 1]);
+				next += 2;
+				return r;
+			}
+		};
 	}
 
 }
@@ -0,0 +1,160 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Numbers subsets of {0, ..., n - 1} densely, in the order they are first
+ * interned. The subsets are stored as bit sets of a fixed number of 64 bit
+ * words, one after the other in a single array, and looked up through an
+ * open addressing hash table with linear probing, so that a subset is only
+ * copied the first time it is seen and equal subsets share one number.
+ */
+public class SubsetInterner {
+
+	public static final int NOT_FOUND = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/* the table is grown when it is more than half full */
+	private static final int MAX_LOAD_DIVISOR = 2;
+
+	private final int numWords;
+
+	/* the words of subset i start at i * numWords */
+	private long[] words;
+	private int[] hashes;
+	private int size;
+
+	/* the number of the subset in each slot, NOT_FOUND for empty slots */
+	private int[] table;
+	private int mask;
+
+	public SubsetInterner(int universeSize) {
+		numWords = wordsFor(universeSize);
+		words = new long[DEFAULT_CAPACITY * numWords];
+		hashes = new int[DEFAULT_CAPACITY];
+		allocateTable(DEFAULT_CAPACITY * MAX_LOAD_DIVISOR);
+	}
+
+	/**
+	 * @return The number of words in the bit set of a subset of {0, ..., universeSize - 1}.
+	 */
+	public static int wordsFor(int universeSize) {
+		return (universeSize + 63) >>> 6;
+	}
+
+	private void allocateTable(int capacity) {
+		table = new int[capacity];
+		Arrays.fill(table, NOT_FOUND);
+		mask = capacity - 1;
+	}
+
+	public int getNumWords() {
+		return numWords;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of the subset, numbering it if it was not interned before.
+	 */
+	public int intern(long[] subset) {
+		int hash = hashOf(subset);
+		int slot = hash & mask;
+		while (table[slot] != NOT_FOUND) {
+			int subsetNumber = table[slot];
+			if (hashes[subsetNumber] == hash && equalsSubset(subsetNumber, subset)) {
+				return subsetNumber;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int subsetNumber = size;
+		if (subsetNumber == hashes.length) {
+			hashes = Arrays.copyOf(hashes, hashes.length << 1);
+			words = Arrays.copyOf(words, hashes.length * numWords);
+		}
+		System.arraycopy(subset, 0, words, subsetNumber * numWords, numWords);
+		hashes[subsetNumber] = hash;
+		table[slot] = subsetNumber;
+		size++;
+		if (size * MAX_LOAD_DIVISOR > table.length) {
+			rehash();
+		}
+		return subsetNumber;
+	}
+
+	/**
+	 * @return Whether the element is in the subset with the given number.
+	 */
+	public boolean contains(int subsetNumber, int element) {
+		return (words[subsetNumber * numWords + (element >>> 6)] & (1L << element)) != 0;
+	}
+
+	/**
+	 * @return The smallest element of the subset with the given number that is at least from, or -1 if there is none.
+	 */
+	public int nextElement(int subsetNumber, int from) {
+		int offset = subsetNumber * numWords;
+		int word = from >>> 6;
+		if (word >= numWords) {
+			return -1;
+		}
+		long bits = words[offset + word] & (-1L << from);
+		while (true) {
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			word++;
+			if (word == numWords) {
+				return -1;
+			}
+			bits = words[offset + word];
+		}
+	}
+
+	/**
+	 * @return Whether the subset with the given number shares an element with the other subset.
+	 */
+	public boolean intersects(int subsetNumber, long[] other) {
+		int offset = subsetNumber * numWords;
+		for (int i = 0; i < numWords; i++) {
+			if ((words[offset + i] & other[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean equalsSubset(int subsetNumber, long[] subset) {
+		int offset = subsetNumber * numWords;
+		for (int i = 0; i < numWords; i++) {
+			if (words[offset + i] != subset[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		allocateTable(table.length << 1);
+		for (int subsetNumber = 0; subsetNumber < size; subsetNumber++) {
+			int slot = hashes[subsetNumber] & mask;
+			while (table[slot] != NOT_FOUND) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = subsetNumber;
+		}
+	}
+
+	private int hashOf(long[] subset) {
+		long h = 1;
+		for (int i = 0; i < numWords; i++) {
+			h = 31 * h + subset[i];
+		}
+		/* so that the low bits used for the slot depend on every word */
+		return (int) Hashing.mix(h);
+	}
+
+}